@@ -1,13 +1,22 @@
 plugins {
     id("java")
 
-    id("com.github.johnrengelman.shadow") version "7.0.0"
+    id("com.github.johnrengelman.shadow") version "8.1.1"
     id("jacoco")
+    // Benchmarks de src/jmh (./gradlew jmh)
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.docker"
 version = "1.0-SNAPSHOT"
 
+java {
+    toolchain {
+        // Java 21: hilos virtuales para atender a los clientes (server.mode=virtual)
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
 repositories {
     mavenCentral()
 }
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.Statement;
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.server.repositories.funko.FunkoRowMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste por fila de un findAll de 100.000 funkos: SELECT * con el mapeo por nombre de columna y
+ * Modelo.valueOf que tenía cada método de FunkoRepositoryImpl, frente a las columnas explícitas
+ * y FunkoRowMapper. Se lanza con ./gradlew jmh
+ * @author daniel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunkoRowMapperBenchmark {
+
+    private static final int ROWS = 100_000;
+
+    private Connection connection;
+
+    @Setup
+    public void setUp() {
+        connection = Mono.from(ConnectionFactories.get("r2dbc:h2:mem:///bench?options=DB_CLOSE_DELAY=-1").create()).block();
+        Flux.from(connection.createStatement("""
+                CREATE TABLE IF NOT EXISTS funkos(
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    cod UUID not null,
+                    myId LONG,
+                    name VARCHAR(255),
+                    model VARCHAR(20),
+                    price REAL,
+                    release_date DATE,
+                    created_at TIMESTAMP DEFAULT  CURRENT_TIMESTAMP NOT NULL,
+                    updated_at TIMESTAMP DEFAULT  CURRENT_TIMESTAMP NOT NULL
+                )""").execute()).blockLast();
+        Modelo[] modelos = Modelo.values();
+        Statement insert = connection.createStatement("INSERT INTO funkos (cod, myId, name, model, price, release_date) VALUES(?,?,?,?,?,?)");
+        for (int i = 0; i < ROWS; i++) {
+            if (i > 0) {
+                insert.add();
+            }
+            insert.bind(0, UUID.randomUUID())
+                    .bind(1, (long) i)
+                    .bind(2, "Funko " + i)
+                    .bind(3, modelos[i % modelos.length].toString())
+                    .bind(4, 10.0 + i % 100)
+                    .bind(5, LocalDate.of(2000 + i % 24, 1 + i % 12, 1 + i % 28));
+        }
+        Flux.from(insert.execute()).blockLast();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Mono.from(connection.close()).block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void selectAllByName(Blackhole blackhole) {
+        Flux.from(connection.createStatement("SELECT * FROM funkos").execute())
+                .flatMap(result -> Flux.from(result.map((row, rowMetadata) -> new Funko(
+                        row.get("id", Integer.class),
+                        row.get("cod", UUID.class),
+                        row.get("myId", Long.class),
+                        row.get("name", String.class),
+                        Modelo.valueOf(row.get("model", String.class)),
+                        row.get("price", Float.class).doubleValue(),
+                        row.get("release_date", LocalDate.class),
+                        row.get("created_at", LocalDateTime.class),
+                        row.get("updated_at", LocalDateTime.class)
+                ))))
+                .doOnNext(blackhole::consume)
+                .blockLast();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void selectColumnsByIndex(Blackhole blackhole) {
+        Flux.from(connection.createStatement("SELECT " + FunkoRowMapper.COLUMNS + " FROM funkos").execute())
+                .flatMap(result -> Flux.from(result.map(FunkoRowMapper::map)))
+                .doOnNext(blackhole::consume)
+                .blockLast();
+    }
+}
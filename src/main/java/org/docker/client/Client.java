@@ -2,11 +2,16 @@ package org.docker.client;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
 import org.docker.common.models.Login;
 import org.docker.common.models.Request;
 import org.docker.common.models.Response;
+import org.docker.common.protocol.Frame;
+import org.docker.common.protocol.FrameCodec;
+import org.docker.common.protocol.FrameType;
+import org.docker.common.protocol.Reply;
 import org.docker.common.utils.PropertiesReader;
 import org.docker.common.utils.adapters.LocalDateAdapter;
 import org.docker.common.utils.adapters.LocalDateTimeAdapter;
@@ -18,15 +23,18 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.*;
+import java.lang.reflect.Type;
 import java.math.BigInteger;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.docker.common.models.Request.Type.GETALL;
 
@@ -38,10 +46,19 @@ public class Client {
     private PrintWriter out;
     private BufferedReader in;
 
+    // Solo se usan si el servidor acepta el protocolo de tramas binarias
+    private DataOutputStream frameOut;
+    private DataInputStream frameIn;
+    private boolean useBinaryFrames;
+
+    private static final Type FUNKO_LIST_TYPE = new TypeToken<List<Funko>>() {}.getType();
+
     private SSLSocket socket;
 
     String token;
 
+    private final AtomicLong nextRequestId = new AtomicLong(0);
+
     private final Gson gson = new GsonBuilder()
             .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
@@ -57,6 +74,8 @@ public class Client {
         try {
             openConnection();
 
+            negotiateBinaryFrames();
+
             token = sendRequestLogin("pepe", "pepe1234");
 
             Funko funko = new Funko(10, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -65,19 +84,39 @@ public class Client {
 
             sendRequestGetFunkoByCod(UUID.fromString("a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11"), token);
 
+            sendRequestGetFunkosByCods(List.of(
+                    UUID.fromString("a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11"),
+                    UUID.fromString("a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a12")
+            ), token);
+
             sendRequestGetFunkoByModelo(Modelo.ANIME, token);
 
             sendRequestGetFunkoByCreatedAt("2023", token);
 
             sendRequestPostFunko(funko, token);
 
+            sendRequestPostFunkos(List.of(
+                    new Funko(null, UUID.randomUUID(), 2L, "Mi Funko lote 1", Modelo.MARVEL, 20.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now()),
+                    new Funko(null, UUID.randomUUID(), 3L, "Mi Funko lote 2", Modelo.DISNEY, 30.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now())
+            ), token);
+
             funko.setPrecio(100.0);
             funko.setNombre("Mi Funko 2 Actualizado");
             sendRequestUpdateFunko(funko, token);
 
             sendRequestDeleteFunko(2840, token);
 
+            sendRequestGetAllFunkosStreaming(token, 100);
+
+            sendRequestGetAllFunkosPaged(token, 100);
+
+            sendRequestsPipelined(List.of(
+                    new Request(Request.Type.GETBYCOD, "a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11", token, LocalDateTime.now().toString()),
+                    new Request(Request.Type.GETBYMODELO, Modelo.MARVEL.toString(), token, LocalDateTime.now().toString()),
+                    new Request(Request.Type.GETBYCREATEDAT, "2023", token, LocalDateTime.now().toString())
+            ));
 
+            sendRequestStats(token);
 
             sendRequestSalir(token);
         } catch (IOException e) {
@@ -93,10 +132,9 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + Request.Type.LOGIN);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
-
         try {
-            Response response = gson.fromJson(in.readLine(), Response.class);
+            send(request);
+            Response response = receive().response();
 
             logger.debug("Respuesta recibida: " + response);
 
@@ -121,9 +159,9 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + Request.Type.SALIR);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Response response = receive().response();
 
         switch (response.status()) {
             case BYE -> {
@@ -140,9 +178,78 @@ public class Client {
     }
 
 
+    /**
+     * Propone el protocolo de tramas binarias justo después del handshake TLS.
+     * Si el servidor no lo soporta seguimos con líneas JSON
+     */
+    private void negotiateBinaryFrames() throws IOException {
+        if (!useBinaryFrames) {
+            return;
+        }
+        Request hello = new Request(Request.Type.HELLO, FrameCodec.VERSION, null, LocalDateTime.now().toString());
+        logger.debug("Peticion enviada: " + hello);
+        out.println(gson.toJson(hello));
+
+        Response response = gson.fromJson(in.readLine(), Response.class);
+        logger.debug("Respuesta recibida: " + response);
+        if (response.status() == Response.Status.OK && FrameCodec.VERSION.equals(response.content())) {
+            frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            System.out.println("🔵 Usando tramas binarias " + FrameCodec.VERSION);
+        } else {
+            System.out.println("🔵 El servidor no soporta tramas binarias, usando líneas JSON");
+        }
+    }
+
+    /**
+     * Envía una petición como línea JSON o como trama REQUEST
+     * @param request
+     */
+    private void send(Request request) throws IOException {
+        if (frameOut == null) {
+            out.println(gson.toJson(request));
+            return;
+        }
+        FrameCodec.write(frameOut, FrameType.REQUEST, gson.toJson(request).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lee la siguiente respuesta, sea línea JSON o trama
+     */
+    private Reply receive() throws IOException {
+        if (frameIn == null) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("El servidor ha cerrado la conexión");
+            }
+            return new Reply(gson.fromJson(line, Response.class), null);
+        }
+        Frame frame = FrameCodec.read(frameIn);
+        return switch (frame.type()) {
+            case RESPONSE -> new Reply(gson.fromJson(new String(frame.payload(), StandardCharsets.UTF_8), Response.class), null);
+            case FUNKO_LIST -> FrameCodec.decodeFunkoList(frame.payload());
+            default -> throw new IOException("Trama inesperada: " + frame.type());
+        };
+    }
+
+    /**
+     * Funkos de una respuesta: ya decodificados si llegaron en trama o desde el JSON del contenido
+     * @param reply
+     */
+    private List<Funko> funkosOf(Reply reply) {
+        if (reply.funkos() != null) {
+            return reply.funkos();
+        }
+        return gson.fromJson(reply.response().content(), FUNKO_LIST_TYPE);
+    }
+
     private void closeConnection() throws IOException {
         logger.debug("Cerrando la conexión con el servidor: " + HOST + ":" + PORT);
         System.out.println("🔵 Cerrando Cliente");
+        if (frameIn != null)
+            frameIn.close();
+        if (frameOut != null)
+            frameOut.close();
         if (in != null)
             in.close();
         if (out != null)
@@ -156,6 +263,7 @@ public class Client {
         logger.debug("Conectando al servidor: " + HOST + ":" + PORT);
 
         Map<String, String> myConfig = readConfigFile();
+        useBinaryFrames = Boolean.parseBoolean(myConfig.get("binaryFrames"));
 
         logger.debug("Cargando fichero de propiedades");
         // System.setProperty("javax.net.debug", "ssl, keymanager, handshake"); // Debug
@@ -185,16 +293,17 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + GETALL);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Reply reply = receive();
+        Response response = reply.response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
 
         switch (response.status()) {
             case OK -> {
-                System.out.println("🟢 Los Funkos son: " + response.content());
+                System.out.println("🟢 Los Funkos son: " + funkosOf(reply));
             }
             case ERROR -> {
                 System.out.println("🔴 Error: " + response.content());
@@ -205,15 +314,81 @@ public class Client {
 
     }
 
+    /**
+     * Pide todos los funkos por partes y los procesa a medida que llegan,
+     * sin esperar a tener el catálogo entero en memoria
+     * @param token
+     * @param chunkSize funkos por parte
+     */
+    public void sendRequestGetAllFunkosStreaming(String token, int chunkSize) throws IOException {
+        Request request = new Request(GETALL, null, token, LocalDateTime.now().toString()).withChunkSize(chunkSize);
+        System.out.println("Petición enviada de tipo: " + GETALL + " por partes de " + chunkSize);
+        logger.debug("Peticion enviada: " + request);
+
+        send(request);
+
+        long received = 0;
+        while (true) {
+            Reply reply = receive();
+            Response response = reply.response();
+            logger.debug("Respuesta recibida: " + response.status());
+            switch (response.status()) {
+                case CHUNK -> {
+                    List<Funko> funkos = funkosOf(reply);
+                    received += funkos.size();
+                    System.out.println("🟢 Recibidos " + funkos.size() + " funkos (" + received + " en total)");
+                }
+                case END -> {
+                    System.out.println("🟢 Fin de la lista: " + response.content() + " funkos");
+                    return;
+                }
+                default -> {
+                    System.out.println("🔴 Error: " + response.content());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre todos los funkos página a página: cada petición lleva el nextCursor
+     * de la respuesta anterior hasta que llega una página sin cursor
+     * @param token
+     * @param pageSize funkos por página
+     */
+    public void sendRequestGetAllFunkosPaged(String token, int pageSize) throws IOException {
+        String cursor = null;
+        long received = 0;
+        do {
+            Request request = new Request(GETALL, null, token, LocalDateTime.now().toString()).withPage(cursor, pageSize);
+            System.out.println("Petición enviada de tipo: " + GETALL + " página desde: " + cursor);
+            logger.debug("Peticion enviada: " + request);
+
+            send(request);
+
+            Reply reply = receive();
+            Response response = reply.response();
+            logger.debug("Respuesta recibida: " + response.status());
+            if (response.status() != Response.Status.OK) {
+                System.out.println("🔴 Error: " + response.content());
+                return;
+            }
+            List<Funko> funkos = funkosOf(reply);
+            received += funkos.size();
+            System.out.println("🟢 Página de " + funkos.size() + " funkos (" + received + " en total)");
+            cursor = response.nextCursor();
+        } while (cursor != null);
+    }
+
     private void sendRequestGetFunkoByCod(UUID uuid, String token) throws IOException {
 
         Request request = new Request(Request.Type.GETBYCOD, uuid.toString(), token,LocalDateTime.now().toString());
         System.out.println("Petición enviada de tipo: " + Request.Type.GETBYCOD);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Response response = receive().response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
@@ -230,22 +405,53 @@ public class Client {
         }
     }
 
+    /**
+     * Pide varios funkos por cod con una sola petición; los que no existen no se devuelven
+     * @param cods
+     * @param token
+     */
+    public void sendRequestGetFunkosByCods(List<UUID> cods, String token) throws IOException {
+
+        Request request = new Request(Request.Type.GETBYCODS, gson.toJson(cods), token, LocalDateTime.now().toString());
+        System.out.println("Petición enviada de tipo: " + Request.Type.GETBYCODS + " con " + cods.size() + " cods");
+        logger.debug("Peticion enviada: " + request);
+
+        send(request);
+
+        Reply reply = receive();
+        Response response = reply.response();
+
+        logger.debug("Respuesta recibida: " + response);
+        System.out.println("Respuesta recibida con status: " + response.status());
+
+        switch (response.status()) {
+            case OK -> {
+                List<Funko> funkos = funkosOf(reply);
+                System.out.println("🟢 Encontrados " + funkos.size() + " de " + cods.size() + " funkos: " + funkos);
+            }
+            case ERROR -> {
+                System.out.println("🔴 Error: " + response.content());
+            }
+        }
+    }
+
     public void sendRequestGetFunkoByModelo(Modelo modelo, String token) throws IOException {
 
         Request request = new Request(Request.Type.GETBYMODELO, modelo.toString(), token,LocalDateTime.now().toString());
         System.out.println("Petición enviada de tipo: " + Request.Type.GETBYMODELO);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Reply reply = receive();
+        Response response = reply.response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
 
         switch (response.status()) {
             case OK -> {
-                List<Funko> funkos = gson.fromJson(response.content(), List.class);
+                List<Funko> funkos = funkosOf(reply);
                 System.out.println("🟢 Los Funkos son: " + funkos);
 
             }
@@ -261,16 +467,17 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + Request.Type.GETBYCREATEDAT);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Reply reply = receive();
+        Response response = reply.response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
 
         switch (response.status()) {
             case OK -> {
-                List<Funko> funkos = gson.fromJson(response.content(), List.class);
+                List<Funko> funkos = funkosOf(reply);
                 System.out.println("🟢 Los Funkos son: " + funkos);
 
             }
@@ -286,9 +493,9 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + Request.Type.POST);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Response response = receive().response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
@@ -305,15 +512,44 @@ public class Client {
         }
     }
 
+    /**
+     * Inserta varios funkos con una sola petición; el servidor los guarda por lotes
+     * @param funkos
+     * @param token
+     */
+    public void sendRequestPostFunkos(List<Funko> funkos, String token) throws IOException {
+
+        Request request = new Request(Request.Type.POSTALL, gson.toJson(funkos), token, LocalDateTime.now().toString());
+        System.out.println("Petición enviada de tipo: " + Request.Type.POSTALL + " con " + funkos.size() + " funkos");
+        logger.debug("Peticion enviada: " + request);
+
+        send(request);
+
+        Reply reply = receive();
+        Response response = reply.response();
+
+        logger.debug("Respuesta recibida: " + response.status());
+        System.out.println("Respuesta recibida con status: " + response.status());
+
+        switch (response.status()) {
+            case OK -> {
+                System.out.println("🟢 Funkos insertados: " + funkosOf(reply).size());
+            }
+            case ERROR -> {
+                System.out.println("🔴 Error: Los funkos no se pudieron insertar " + response.content());
+            }
+        }
+    }
+
     public void sendRequestUpdateFunko(Funko funko, String token) throws IOException {
 
         Request request = new Request(Request.Type.UPDATE, gson.toJson(funko), token,LocalDateTime.now().toString());
         System.out.println("Petición enviada de tipo: " + Request.Type.UPDATE);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Response response = receive().response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
@@ -336,9 +572,9 @@ public class Client {
         System.out.println("Petición enviada de tipo: " + Request.Type.DELETE);
         logger.debug("Peticion enviada: " + request);
 
-        out.println(gson.toJson(request));
+        send(request);
 
-        Response response = gson.fromJson(in.readLine(), Response.class);
+        Response response = receive().response();
 
         logger.debug("Respuesta recibida: " + response);
         System.out.println("Respuesta recibida con status: " + response.status());
@@ -355,6 +591,95 @@ public class Client {
         }
     }
 
+    /**
+     * Elimina varios funkos por id con una sola petición (solo administradores)
+     * @param ids
+     * @param token
+     */
+    public void sendRequestDeleteFunkosByIds(List<Integer> ids, String token) throws IOException {
+
+        Request request = new Request(Request.Type.DELETEBYIDS, gson.toJson(ids), token, LocalDateTime.now().toString());
+        System.out.println("Petición enviada de tipo: " + Request.Type.DELETEBYIDS + " con " + ids.size() + " ids");
+        logger.debug("Peticion enviada: " + request);
+
+        send(request);
+
+        Reply reply = receive();
+        Response response = reply.response();
+
+        logger.debug("Respuesta recibida: " + response);
+        System.out.println("Respuesta recibida con status: " + response.status());
+
+        switch (response.status()) {
+            case OK -> {
+                List<Funko> funkos = funkosOf(reply);
+                System.out.println("🟢 Eliminados " + funkos.size() + " de " + ids.size() + " funkos: " + funkos);
+            }
+            case ERROR -> {
+                System.out.println("🔴 Error: " + response.content());
+            }
+        }
+    }
+
+    /**
+     * Pide las estadísticas del servidor (solo administradores)
+     * @param token
+     */
+    public void sendRequestStats(String token) throws IOException {
+        Request request = new Request(Request.Type.STATS, null, token, LocalDateTime.now().toString());
+        System.out.println("Petición enviada de tipo: " + Request.Type.STATS);
+        logger.debug("Peticion enviada: " + request);
+
+        send(request);
+
+        Response response = receive().response();
+
+        logger.debug("Respuesta recibida: " + response);
+        System.out.println("Respuesta recibida con status: " + response.status());
+
+        switch (response.status()) {
+            case OK -> System.out.println("🟢 Estadísticas del servidor: " + response.content());
+            case ERROR -> System.out.println("🔴 Error: " + response.content());
+        }
+    }
+
+    /**
+     * Envía varias peticiones seguidas por la misma conexión sin esperar a cada respuesta.
+     * A cada petición se le asigna un requestId y las respuestas, que pueden llegar en
+     * cualquier orden, se emparejan por él
+     * @param requests peticiones a enviar
+     * @return respuestas por requestId
+     */
+    public Map<String, Response> sendRequestsPipelined(List<Request> requests) throws IOException {
+        Map<String, Request> pending = new LinkedHashMap<>();
+        for (Request request : requests) {
+            String requestId = String.valueOf(nextRequestId.incrementAndGet());
+            Request withId = request.withRequestId(requestId);
+            pending.put(requestId, withId);
+            logger.debug("Peticion enviada: " + withId);
+            send(withId);
+        }
+        System.out.println("Peticiones enviadas en bloque: " + requests.size());
+
+        Map<String, Response> responses = new LinkedHashMap<>();
+        while (responses.size() < pending.size()) {
+            Response response = receive().response();
+            logger.debug("Respuesta recibida: " + response);
+            if (response.requestId() == null || !pending.containsKey(response.requestId())) {
+                logger.error("Respuesta sin petición asociada: " + response);
+                continue;
+            }
+            responses.put(response.requestId(), response);
+            Request request = pending.get(response.requestId());
+            switch (response.status()) {
+                case OK -> System.out.println("🟢 " + request.type() + " [" + response.requestId() + "]: " + response.content());
+                case ERROR -> System.out.println("🔴 Error " + request.type() + " [" + response.requestId() + "]: " + response.content());
+                default -> System.out.println(request.type() + " [" + response.requestId() + "]: " + response.status());
+            }
+        }
+        return responses;
+    }
+
     public Map<String, String> readConfigFile() {
         try {
             logger.debug("Leyendo el fichero de configuracion");
@@ -376,6 +701,7 @@ public class Client {
             Map<String, String> configMap = new HashMap<>();
             configMap.put("keyFile", keyFile);
             configMap.put("keyPassword", keyPassword);
+            configMap.put("binaryFrames", properties.getProperty("binaryFrames", "true"));
 
             return configMap;
         } catch (FileNotFoundException e) {
@@ -1,7 +1,33 @@
 package org.docker.common.models;
 
-public record Request(Type type, String content,  String token, String createdAt) {
+/**
+ * Petición del cliente. requestId es opcional: si se indica, la respuesta lo devuelve
+ * para poder enviar varias peticiones seguidas y emparejar las respuestas.
+ * chunkSize es opcional: en las peticiones de listas pide recibir los funkos por partes.
+ * limit es opcional: en las peticiones de listas pide una sola página de como mucho limit funkos,
+ * empezando después de cursor (el nextCursor de la respuesta anterior, o null para la primera).
+ * En GETBYIDS y GETBYCODS content es un array JSON de ids o de cods, y en DELETEBYIDS de ids
+ */
+public record Request(Type type, String content,  String token, String createdAt, String requestId, Integer chunkSize,
+                      String cursor, Integer limit) {
+
+    public Request(Type type, String content, String token, String createdAt) {
+        this(type, content, token, createdAt, null, null, null, null);
+    }
+
+    public Request withRequestId(String requestId) {
+        return new Request(type, content, token, createdAt, requestId, chunkSize, cursor, limit);
+    }
+
+    public Request withChunkSize(Integer chunkSize) {
+        return new Request(type, content, token, createdAt, requestId, chunkSize, cursor, limit);
+    }
+
+    public Request withPage(String cursor, Integer limit) {
+        return new Request(type, content, token, createdAt, requestId, chunkSize, cursor, limit);
+    }
+
     public enum Type {
-        LOGIN, SALIR, GETALL, GETBYCOD, GETBYMODELO, GETBYCREATEDAT, POST, UPDATE, DELETE, DELETEALL
+        HELLO, LOGIN, SALIR, GETALL, GETBYCOD, GETBYIDS, GETBYCODS, GETBYMODELO, GETBYCREATEDAT, POST, POSTALL, UPDATE, DELETE, DELETEBYIDS, DELETEALL, STATS
     }
-}
\ No newline at end of file
+}
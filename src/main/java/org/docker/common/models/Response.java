@@ -1,7 +1,21 @@
 package org.docker.common.models;
 
-public record Response(Status status, String content, String createdAt) {
+/**
+ * Respuesta del servidor. requestId es el de la petición que la originó (o null).
+ * Las listas pedidas por partes llegan como varias respuestas CHUNK seguidas de una END.
+ * En las listas paginadas nextCursor es el cursor de la página siguiente, o null si era la última
+ */
+public record Response(Status status, String content, String createdAt, String requestId, String nextCursor) {
+
+    public Response(Status status, String content, String createdAt) {
+        this(status, content, createdAt, null, null);
+    }
+
+    public Response(Status status, String content, String createdAt, String requestId) {
+        this(status, content, createdAt, requestId, null);
+    }
+
     public enum Status {
-        OK, ERROR, BYE, TOKEN
+        OK, ERROR, BYE, TOKEN, CHUNK, END
     }
-}
\ No newline at end of file
+}
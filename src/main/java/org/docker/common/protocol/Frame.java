@@ -0,0 +1,8 @@
+package org.docker.common.protocol;
+
+/**
+ * Trama del protocolo binario: tipo y carga útil
+ * @see FrameCodec
+ */
+public record Frame(FrameType type, byte[] payload) {
+}
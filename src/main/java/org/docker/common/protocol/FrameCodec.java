@@ -0,0 +1,92 @@
+package org.docker.common.protocol;
+
+import org.docker.common.models.Funko;
+import org.docker.common.models.Response;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protocolo binario de tramas: [longitud int][tipo byte][carga útil].
+ * Se negocia justo después del handshake TLS con una petición HELLO cuyo contenido es VERSION;
+ * si el servidor responde OK con VERSION, ambos lados pasan a usar tramas
+ * @see FrameType
+ */
+public final class FrameCodec {
+
+    /** Versión del protocolo que se negocia en el HELLO */
+    public static final String VERSION = "BIN2";
+
+    /** Tamaño máximo de carga útil aceptado */
+    public static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Escribe una trama y hace flush
+     * @param out destino
+     * @param type tipo de trama
+     * @param payload carga útil
+     */
+    public static void write(DataOutputStream out, FrameType type, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeByte(type.code());
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Lee una trama completa
+     * @param in origen
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("Longitud de trama no válida: " + length);
+        }
+        FrameType type = FrameType.fromCode(in.readByte());
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    /**
+     * Codifica una respuesta con una lista de funkos (carga útil de FUNKO_LIST)
+     * @param header estado, fecha, requestId y nextCursor de la respuesta
+     * @param funkos funkos
+     */
+    public static byte[] encodeFunkoList(Response header, List<Funko> funkos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + funkos.size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(header.status().ordinal());
+        FunkoBinaryCodec.writeNullableString(out, header.createdAt());
+        FunkoBinaryCodec.writeNullableString(out, header.requestId());
+        FunkoBinaryCodec.writeNullableString(out, header.nextCursor());
+        out.writeInt(funkos.size());
+        for (Funko funko : funkos) {
+            FunkoBinaryCodec.write(out, funko);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodifica la carga útil de una trama FUNKO_LIST
+     * @param payload carga útil
+     */
+    public static Reply decodeFunkoList(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Response.Status status = Response.Status.values()[in.readByte()];
+        String createdAt = FunkoBinaryCodec.readNullableString(in);
+        String requestId = FunkoBinaryCodec.readNullableString(in);
+        String nextCursor = FunkoBinaryCodec.readNullableString(in);
+        int size = in.readInt();
+        List<Funko> funkos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            funkos.add(FunkoBinaryCodec.read(in));
+        }
+        return new Reply(new Response(status, null, createdAt, requestId, nextCursor), funkos);
+    }
+}
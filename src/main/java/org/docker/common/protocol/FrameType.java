@@ -0,0 +1,33 @@
+package org.docker.common.protocol;
+
+/**
+ * Tipos de trama del protocolo binario
+ * @see FrameCodec
+ */
+public enum FrameType {
+    /** Request en JSON */
+    REQUEST(1),
+    /** Response en JSON */
+    RESPONSE(2),
+    /** Lista de funkos codificada en binario, sin JSON intermedio */
+    FUNKO_LIST(3);
+
+    private final byte code;
+
+    FrameType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static FrameType fromCode(byte code) {
+        for (FrameType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Tipo de trama desconocido: " + code);
+    }
+}
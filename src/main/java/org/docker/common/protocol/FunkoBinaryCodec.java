@@ -0,0 +1,101 @@
+package org.docker.common.protocol;
+
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Codificación binaria compacta de un Funko, campo a campo y con marca de nulo
+ * @see Funko
+ */
+public final class FunkoBinaryCodec {
+
+    private FunkoBinaryCodec() {
+    }
+
+    /**
+     * Escribe un funko
+     * @param out destino
+     * @param funko funko a codificar
+     */
+    public static void write(DataOutput out, Funko funko) throws IOException {
+        writeNullableInt(out, funko.getId());
+        out.writeBoolean(funko.getCOD() != null);
+        if (funko.getCOD() != null) {
+            out.writeLong(funko.getCOD().getMostSignificantBits());
+            out.writeLong(funko.getCOD().getLeastSignificantBits());
+        }
+        out.writeBoolean(funko.getMyId() != null);
+        if (funko.getMyId() != null) {
+            out.writeLong(funko.getMyId());
+        }
+        writeNullableString(out, funko.getNombre());
+        out.writeByte(funko.getModelo() != null ? funko.getModelo().ordinal() : -1);
+        out.writeDouble(funko.getPrecio());
+        out.writeBoolean(funko.getFecha() != null);
+        if (funko.getFecha() != null) {
+            out.writeLong(funko.getFecha().toEpochDay());
+        }
+        writeNullableDateTime(out, funko.getCreated_at());
+        writeNullableDateTime(out, funko.getUpdated_at());
+    }
+
+    /**
+     * Lee un funko escrito con write
+     * @param in origen
+     */
+    public static Funko read(DataInput in) throws IOException {
+        Integer id = in.readBoolean() ? in.readInt() : null;
+        UUID cod = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+        Long myId = in.readBoolean() ? in.readLong() : null;
+        String nombre = readNullableString(in);
+        byte modelo = in.readByte();
+        double precio = in.readDouble();
+        LocalDate fecha = in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+        LocalDateTime createdAt = readNullableDateTime(in);
+        LocalDateTime updatedAt = readNullableDateTime(in);
+        return new Funko(id, cod, myId, nombre, modelo >= 0 ? Modelo.values()[modelo] : null, precio, fecha, createdAt, updatedAt);
+    }
+
+    static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableInt(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeNullableDateTime(DataOutput out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readNullableDateTime(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
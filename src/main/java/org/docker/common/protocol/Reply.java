@@ -0,0 +1,13 @@
+package org.docker.common.protocol;
+
+import org.docker.common.models.Funko;
+import org.docker.common.models.Response;
+
+import java.util.List;
+
+/**
+ * Respuesta recibida por el cliente. funkos solo viene relleno cuando el servidor
+ * ha enviado una lista de funkos en una trama FUNKO_LIST
+ */
+public record Reply(Response response, List<Funko> funkos) {
+}
@@ -30,4 +30,8 @@ public class PropertiesReader {
             throw new FileNotFoundException("No se encuentra la propiedad " + key + " en el fichero " + fileName);
         }
     }
+
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
 }
\ No newline at end of file
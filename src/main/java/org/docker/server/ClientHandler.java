@@ -2,35 +2,81 @@ package org.docker.server;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import org.docker.common.enums.Modelo;
 import org.docker.common.models.*;
+import org.docker.common.protocol.Frame;
+import org.docker.common.protocol.FrameCodec;
+import org.docker.common.protocol.FrameType;
 import org.docker.common.utils.adapters.LocalDateAdapter;
 import org.docker.common.utils.adapters.LocalDateTimeAdapter;
+import org.docker.server.nio.OutboundFlow;
+import org.docker.server.nio.SslConnection;
+import org.docker.server.repositories.base.Page;
 import org.docker.server.repositories.funko.FunkoRepositoryImpl;
+import org.docker.server.repositories.funko.ReleaseCursor;
 import org.docker.server.repositories.users.UserRepository;
 import org.docker.server.services.Token.TokenService;
+import org.docker.server.services.cache.CacheStats;
 import org.docker.server.services.database.DataBaseManager;
+import org.docker.server.services.database.PoolStats;
 import org.docker.server.services.files.CsvManager;
 import org.docker.server.services.files.JsonManager;
 import org.docker.server.services.funkos.FunkoCacheImpl;
+import org.docker.server.services.funkos.FunkoJsonCache;
 import org.docker.server.services.funkos.FunkoNotificacionImpl;
 import org.docker.server.services.funkos.FunkoServiceImpl;
 import org.docker.server.services.storage.FunkoStorageServImpl;
 import org.mindrot.jbcrypt.BCrypt;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.*;
+import java.lang.reflect.Type;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-
-public class ClientHandler extends Thread {
+import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ClientHandler implements Runnable {
+
+    // Máximo de funkos por respuesta CHUNK
+    private static final int MAX_CHUNK_SIZE = 500;
+    // Funkos como mucho en un POSTALL
+    private static final int MAX_POSTALL_SIZE = 5000;
+    // Ids o cods como mucho en un GETBYIDS o GETBYCODS
+    private static final int MAX_IDS_SIZE = 1000;
+    // Ids como mucho en un DELETEBYIDS, que se borran en una sola transacción
+    private static final int MAX_DELETEBYIDS_SIZE = 5000;
+
+    private static final Type FUNKO_LIST_TYPE = new TypeToken<List<Funko>>() {}.getType();
+    private static final Type ID_LIST_TYPE = new TypeToken<List<Integer>>() {}.getType();
+    private static final Type COD_LIST_TYPE = new TypeToken<List<UUID>>() {}.getType();
+
+    // Peticiones atendidas por tipo, entre todas las conexiones
+    private static final Map<Request.Type, LongAdder> REQUEST_COUNTS = new EnumMap<>(Request.Type.class);
+
+    static {
+        for (Request.Type type : Request.Type.values()) {
+            REQUEST_COUNTS.put(type, new LongAdder());
+        }
+    }
 
     private final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
     private final Socket clientSocket;
@@ -42,28 +88,54 @@ public class ClientHandler extends Thread {
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter()).create();
 
     private BufferedReader in;
-    private PrintWriter out;
+    private DataInputStream frameIn;
+    private ResponseWriter writer;
+    private final OutboundFlow flow;
 
     public ClientHandler(Socket socket, long clientNumber, FunkoServiceImpl service) {
         this.clientSocket = socket;
         this.clientNumber = clientNumber;
         this.service = service;
+        this.flow = OutboundFlow.UNBOUNDED;
+    }
 
+    /**
+     * Constructor para conexiones no bloqueantes (NioServer): no hay socket,
+     * las peticiones llegan por processLine y las respuestas se escriben en out
+     * @param clientNumber
+     * @param service
+     * @param out
+     */
+    public ClientHandler(long clientNumber, FunkoServiceImpl service, PrintWriter out) {
+        this(clientNumber, service, out, OutboundFlow.UNBOUNDED);
+    }
+
+    /**
+     * Constructor para conexiones no bloqueantes con control de flujo: las listas por partes
+     * no piden el siguiente CHUNK a la base de datos hasta que flow lo permite
+     * @param clientNumber
+     * @param service
+     * @param out
+     * @param flow
+     */
+    public ClientHandler(long clientNumber, FunkoServiceImpl service, PrintWriter out, OutboundFlow flow) {
+        this.clientSocket = null;
+        this.clientNumber = clientNumber;
+        this.service = service;
+        this.writer = new ResponseWriter(out, gson, SslConnection.MAX_RESPONSE_BYTES);
+        this.flow = flow;
     }
 
     public void run(){
         try {
             openConnection();
 
-            String inputLine;
-            Request request;
-
             while(!clientSocket.isClosed()){
-                inputLine = in.readLine();
-                logger.debug("Recibido mensaje del cliente nº: " + clientNumber + " : " + inputLine);
-                request = gson.fromJson(inputLine, Request.class);
-
-                handleRequest(request);
+                if (frameIn != null) {
+                    processFrame(FrameCodec.read(frameIn));
+                } else {
+                    processLine(in.readLine());
+                }
             }
 
         }  catch (SQLException e) {
@@ -80,35 +152,87 @@ public class ClientHandler extends Thread {
     private void openConnection() throws IOException {
         logger.debug("Conectando con el cliente nº: " + clientNumber + " : " + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
         in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        out = new PrintWriter(clientSocket.getOutputStream(), true);
+        writer = new ResponseWriter(new PrintWriter(clientSocket.getOutputStream(), true), gson);
     }
 
     private void closeConnection() throws IOException {
+        writer.close();
+        if (clientSocket == null) {
+            logger.debug("Cerrando la conexión con el cliente nº: " + clientNumber);
+            return;
+        }
         logger.debug("Cerrando la conexión con el cliente: " + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
-        out.close();
         in.close();
         clientSocket.close();
     }
 
-    private void responseSalir() throws IOException {
+    /**
+     * Procesa una línea recibida del cliente
+     * @param inputLine petición en JSON
+     */
+    public void processLine(String inputLine) throws IOException, SQLException, ExecutionException, InterruptedException {
+        logger.debug("Recibido mensaje del cliente nº: " + clientNumber + " : " + inputLine);
+        Request request = gson.fromJson(inputLine, Request.class);
+
+        handleRequest(request);
+    }
+
+    /**
+     * Procesa una trama binaria recibida del cliente
+     * @param frame trama REQUEST con la petición en JSON
+     */
+    private void processFrame(Frame frame) throws IOException, SQLException, ExecutionException, InterruptedException {
+        if (frame.type() != FrameType.REQUEST) {
+            logger.error("Trama no soportada del cliente nº: " + clientNumber + " : " + frame.type());
+            writer.send(null, Response.Status.ERROR, "Trama no soportada: " + frame.type());
+            return;
+        }
+        processLine(new String(frame.payload(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Negociación del protocolo binario. Solo se acepta en conexiones con socket propio;
+     * el cliente no debe enviar nada más hasta recibir la respuesta
+     * @param request
+     */
+    private void responseHello(Request request) throws IOException {
+        if (clientSocket == null || !FrameCodec.VERSION.equals(request.content())) {
+            logger.debug("Protocolo " + request.content() + " no soportado para el cliente nº: " + clientNumber);
+            writer.send(request, Response.Status.ERROR, "Protocolo no soportado: " + request.content());
+            return;
+        }
+        logger.debug("Cliente nº: " + clientNumber + " pasa a tramas binarias " + FrameCodec.VERSION);
+        writer.send(request, Response.Status.OK, FrameCodec.VERSION);
+        writer.switchToFrames(new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream())));
+        frameIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+    }
+
+    private void responseSalir(Request request) throws IOException {
         logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + "Adios");
-        out.println(gson.toJson(new Response(Response.Status.BYE, "Adios", LocalDateTime.now().toString())));
+        writer.send(request, Response.Status.BYE, "Adios");
         closeConnection();
     }
 
     private void handleRequest(Request request) throws IOException, SQLException, ExecutionException, InterruptedException {
         logger.debug("Petición para procesar: " + request);
+        REQUEST_COUNTS.get(request.type()).increment();
         switch (request.type()) {
+            case HELLO -> responseHello(request);
             case LOGIN -> responseLogin(request);
-            case SALIR -> responseSalir();
+            case SALIR -> responseSalir(request);
             case GETALL -> responseGetAll(request);
             case GETBYCOD -> responseGetByCod(request);
+            case GETBYIDS -> responseGetByIds(request);
+            case GETBYCODS -> responseGetByCods(request);
             case GETBYMODELO -> responseGetByModel(request);
             case GETBYCREATEDAT -> responseGetByCreateDate(request);
             case POST -> responseCreateFunko(request);
+            case POSTALL -> responseCreateFunkos(request);
             case UPDATE -> responseUpdateFunko(request);
             case DELETE -> responseDeleteFunko(request);
-            default -> new Response(Response.Status.ERROR, "Petición no soportada", LocalDateTime.now().toString());
+            case DELETEBYIDS -> responseDeleteFunkos(request);
+            case STATS -> responseStats(request);
+            default -> writer.send(request, Response.Status.ERROR, "Petición no soportada");
         }
     }
 
@@ -118,15 +242,17 @@ public class ClientHandler extends Thread {
 
         if(user.isEmpty() || !BCrypt.checkpw(login.password(), user.get().password())){
             logger.error("Error al hacer login: " + login);
-            out.println(gson.toJson(new Response(Response.Status.ERROR, "Error al hacer login: " + login, LocalDateTime.now().toString())));
+            writer.send(request, Response.Status.ERROR, "Error al hacer login: " + login);
+            return;
         }
 
         var token = TokenService.getInstance().createToken(user.get(), Server.TOKEN_SECRET, Server.TOKEN_EXPIRATION);
         logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + token);
-        out.println(gson.toJson(new Response(Response.Status.TOKEN, token, LocalDateTime.now().toString())));
+        writer.send(request, Response.Status.TOKEN, token);
     }
 
-    private Optional<User> procesarToken(String token)  {
+    private Optional<User> procesarToken(Request request)  {
+        String token = request.token();
         if (TokenService.getInstance().verifyToken(token, Server.TOKEN_SECRET)) {
             logger.debug("Token válido");
             var claims = TokenService.getInstance().getClaims(token, Server.TOKEN_SECRET);
@@ -134,87 +260,260 @@ public class ClientHandler extends Thread {
             var user = UserRepository.getInstance().findByById(id);
             if (user.isEmpty()) {
                 logger.error("Usuario no autenticado correctamente");
-                out.println(gson.toJson(new Response(Response.Status.ERROR, "Usuario no autenticado correctamente", LocalDateTime.now().toString())));
+                writer.send(request, Response.Status.ERROR, "Usuario no autenticado correctamente");
                 return Optional.empty();
             }
             return user;
         } else {
             logger.error("Token no válido");
-            out.println(gson.toJson(new Response(Response.Status.ERROR, "Token no válido", LocalDateTime.now().toString())));
+            writer.send(request, Response.Status.ERROR, "Token no válido");
             return Optional.empty();
         }
     }
 
     private void responseGetAll(Request request) throws SQLException, ExecutionException, InterruptedException {
-        procesarToken(request.token());
-        service.findAll().collectList().subscribe(
-                funkos -> {
-                    logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funkos);
-                    var resJson = gson.toJson(funkos);
-                    out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
-                },
-                error -> {
-                    logger.error("Error al obtener los funkos: " + error.getMessage());
-                    out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al obtener los funkos: "+ error.getMessage(), LocalDateTime.now().toString())));
-                }
-        );
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
+        if (isPaged(request)) {
+            if (!checkCursor(request, this::cursorOf)) {
+                return;
+            }
+            sendFunkoPage(request, service.findAll(cursorOf(request), request.limit()), "Error al obtener los funkos");
+            return;
+        }
+        sendFunkoList(request, service.findAll(), "Error al obtener los funkos");
     }
 
     private void responseGetByCod(Request request) throws SQLException, ExecutionException, InterruptedException {
-        procesarToken(request.token());
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
         UUID cod = UUID.fromString(request.content());
         service.findByCod(cod).subscribe(
                 funko -> {
                     logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funko);
-                    var resJson = gson.toJson(funko);
-                    out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
+                    writer.sendFunko(request, Response.Status.OK, funko);
                 },
                 error -> {
                     logger.error("Error al obtener el funko con cod: " + cod.toString() + " : " + error.getMessage());
-                    out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al obtener el funko con cod: " + cod.toString() + " : " + error.getMessage(), LocalDateTime.now().toString())));
+                    writer.send(request, Response.Status.ERROR, "Error al obtener el funko con cod: " + cod.toString() + " : " + error.getMessage());
                 }
         );
     }
 
+    /**
+     * Varios funkos por id con una sola petición: content es un array JSON de ids
+     * @param request
+     */
+    private void responseGetByIds(Request request) throws SQLException {
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
+        List<Integer> ids = readList(request, ID_LIST_TYPE, MAX_IDS_SIZE, "Error al obtener los funkos por id");
+        if (ids == null) {
+            return;
+        }
+        sendFunkoList(request, service.findAllByIds(ids), "Error al obtener " + ids.size() + " funkos por id");
+    }
+
+    /**
+     * Varios funkos por cod con una sola petición: content es un array JSON de cods
+     * @param request
+     */
+    private void responseGetByCods(Request request) throws SQLException {
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
+        List<UUID> cods = readList(request, COD_LIST_TYPE, MAX_IDS_SIZE, "Error al obtener los funkos por cod");
+        if (cods == null) {
+            return;
+        }
+        sendFunkoList(request, service.findAllByCods(cods), "Error al obtener " + cods.size() + " funkos por cod");
+    }
+
+    /**
+     * Lee el array JSON de content. Si no es un array válido, tiene algún null o más de maxSize
+     * elementos responde con un error
+     * @param request petición
+     * @param type tipo de la lista
+     * @param maxSize elementos como mucho
+     * @param errorMessage mensaje en caso de error
+     * @return la lista, o null si no es válida
+     */
+    private <T> List<T> readList(Request request, Type type, int maxSize, String errorMessage) {
+        List<T> list;
+        try {
+            list = gson.fromJson(request.content(), type);
+        } catch (JsonParseException e) {
+            list = null;
+        }
+        if (list == null || list.size() > maxSize || list.contains(null)) {
+            logger.error(errorMessage + ": se espera un array JSON de como mucho " + maxSize + " elementos no nulos");
+            writer.send(request, Response.Status.ERROR, errorMessage + ": se espera un array JSON de como mucho " + maxSize + " elementos no nulos");
+            return null;
+        }
+        return list;
+    }
+
     private void responseGetByModel(Request request) throws SQLException, ExecutionException, InterruptedException {
-        procesarToken(request.token());
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
         Modelo modelo = Modelo.valueOf(request.content());
-        service.findAll().collectList()
-                .map(funkos ->
-                        funkos.stream()
-                                .filter(funko -> funko.getModelo().equals(modelo)).toList()
-                )
-                .subscribe(
-                        funkos -> {
-                            logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funkos);
-                            var resJson = gson.toJson(funkos);
-                            out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
-                        },
-                        error -> {
-                            logger.error("Error al obtener los funkos con modelo: " + modelo.toString() + " : " + error.getMessage());
-                            out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al obtener los funkos con modelo: " + modelo.toString() + " : " + error.getMessage(), LocalDateTime.now().toString())));
-                        }
-                );
+        if (isPaged(request)) {
+            if (!checkCursor(request, this::cursorOf)) {
+                return;
+            }
+            sendFunkoPage(request,
+                    service.findByModelo(modelo, cursorOf(request), request.limit()),
+                    "Error al obtener los funkos con modelo: " + modelo.toString());
+            return;
+        }
+        sendFunkoList(request,
+                service.findByModelo(modelo),
+                "Error al obtener los funkos con modelo: " + modelo.toString());
     }
 
     private void responseGetByCreateDate(Request request) throws SQLException, ExecutionException, InterruptedException {
-        procesarToken(request.token());
+        if (procesarToken(request).isEmpty()) {
+            return;
+        }
         int year = Integer.parseInt(request.content());
-        service.findAll().collectList()
-                .map(funkos ->
-                        funkos.stream()
-                                .filter(funko -> funko.getFecha().getYear() == year).toList()
-                ).subscribe(
-                        funkos -> {
-                            logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funkos);
-                            var resJson = gson.toJson(funkos);
-                            out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
-                        },
-                        error -> {
-                            logger.error("Error al obtener los funkos con fecha de lanzamiento: " + year + " : " + error.getMessage());
-                            out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al obtener los funkos con fecha de lanzamiento: " + year + " : " + error.getMessage(), LocalDateTime.now().toString())));
-                        }
-                );
+        if (isPaged(request)) {
+            if (!checkCursor(request, this::releaseCursorOf)) {
+                return;
+            }
+            sendFunkoPage(request,
+                    service.findByReleaseYear(year, releaseCursorOf(request), request.limit()),
+                    "Error al obtener los funkos con fecha de lanzamiento: " + year);
+            return;
+        }
+        sendFunkoList(request,
+                service.findByReleaseYear(year),
+                "Error al obtener los funkos con fecha de lanzamiento: " + year);
+    }
+
+    /**
+     * Envía una lista de funkos. Sin chunkSize se envía entera en una respuesta OK;
+     * con chunkSize se envían respuestas CHUNK de como mucho chunkSize funkos a medida
+     * que llegan de la base de datos y al final una END con el total enviado.
+     * Los CHUNK se piden de uno en uno: el siguiente solo cuando flow indica que la conexión
+     * admite más, así que con un cliente que no lee no se leen más funkos de la base de datos
+     * y no se bloquea ningún hilo
+     * @param request petición
+     * @param funkos funkos a enviar
+     * @param errorMessage mensaje en caso de error
+     */
+    private void sendFunkoList(Request request, Flux<Funko> funkos, String errorMessage) {
+        if (request.chunkSize() == null || request.chunkSize() <= 0) {
+            funkos.collectList().subscribe(
+                    list -> {
+                        logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + list);
+                        writer.sendFunkos(request, list);
+                    },
+                    error -> {
+                        logger.error(errorMessage + " : " + error.getMessage());
+                        writer.send(request, Response.Status.ERROR, errorMessage + " : " + error.getMessage());
+                    }
+            );
+            return;
+        }
+
+        int chunkSize = Math.min(request.chunkSize(), MAX_CHUNK_SIZE);
+        funkos.buffer(chunkSize).subscribe(new BaseSubscriber<List<Funko>>() {
+            private long sent = 0;
+
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(List<Funko> chunk) {
+                logger.debug("Enviando " + chunk.size() + " funkos al cliente nº: " + clientNumber);
+                sent += chunk.size();
+                writer.sendFunkos(request, Response.Status.CHUNK, chunk);
+                flow.whenWritable(() -> request(1), () -> {
+                    logger.debug("Envío por partes cancelado: la conexión con el cliente nº: " + clientNumber + " se ha cerrado");
+                    cancel();
+                });
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                logger.error(errorMessage + " : " + error.getMessage());
+                writer.send(request, Response.Status.ERROR, errorMessage + " : " + error.getMessage());
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                logger.debug("Fin del envío por partes al cliente nº: " + clientNumber + " : " + sent + " funkos");
+                writer.send(request, Response.Status.END, String.valueOf(sent));
+            }
+        });
+    }
+
+    /**
+     * La petición pide una sola página (trae limit)
+     * @param request
+     */
+    private boolean isPaged(Request request) {
+        return request.limit() != null;
+    }
+
+    /**
+     * Cursor de la petición: el id del último funko de la página anterior, o null para la primera
+     * @param request
+     */
+    private Integer cursorOf(Request request) {
+        return request.cursor() == null ? null : Integer.valueOf(request.cursor());
+    }
+
+    /**
+     * Cursor de las páginas por año: la fecha y el id del último funko de la página anterior, o null para la primera
+     * @param request
+     */
+    private ReleaseCursor releaseCursorOf(Request request) {
+        return request.cursor() == null ? null : ReleaseCursor.parse(request.cursor());
+    }
+
+    /**
+     * Comprueba que el cursor de la petición se puede leer; si no se puede responde con un error
+     * @param request
+     * @param cursorOf lee el cursor de la petición
+     * @return si se puede seguir con la petición
+     */
+    private boolean checkCursor(Request request, Function<Request, ?> cursorOf) {
+        try {
+            cursorOf.apply(request);
+            return true;
+        } catch (IllegalArgumentException e) {
+            logger.error("Cursor no válido del cliente nº: " + clientNumber + " : " + request.cursor());
+            writer.send(request, Response.Status.ERROR, "Cursor no válido: " + request.cursor());
+            return false;
+        }
+    }
+
+    /**
+     * Envía una página de funkos en una respuesta OK con el cursor de la página siguiente
+     * (null si es la última). Las páginas ya están acotadas, así que chunkSize no se aplica
+     * @param request petición
+     * @param page página a enviar
+     * @param errorMessage mensaje en caso de error
+     */
+    private void sendFunkoPage(Request request, Mono<? extends Page<Funko, ?>> page, String errorMessage) {
+        page.subscribe(
+                result -> {
+                    logger.debug("Enviando página de " + result.items().size() + " funkos al cliente nº: " + clientNumber);
+                    String nextCursor = result.nextCursor() == null ? null : result.nextCursor().toString();
+                    writer.sendFunkos(request, Response.Status.OK, result.items(), nextCursor);
+                },
+                error -> {
+                    logger.error(errorMessage + " : " + error.getMessage());
+                    writer.send(request, Response.Status.ERROR, errorMessage + " : " + error.getMessage());
+                }
+        );
     }
 
     public void responseCreateFunko(Request request) throws SQLException {
@@ -222,17 +521,49 @@ public class ClientHandler extends Thread {
             service.saveWithoutNotify(funkoToSave).subscribe(
                     funko -> {
                         logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funko);
-                        var resJson = gson.toJson(funko);
-                        out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
+                        writer.sendFunko(request, Response.Status.OK, funko);
                     },
                     error -> {
                         logger.error("Error al insertar el funko: " + funkoToSave + " : " + error.getMessage());
-                        out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al insertar el funko: " + funkoToSave + " : " + error.getMessage(), LocalDateTime.now().toString())));
+                        writer.send(request, Response.Status.ERROR, "Error al insertar el funko: " + funkoToSave + " : " + error.getMessage());
                     }
             );
 
     }
 
+    /**
+     * Inserta por lotes todos los funkos recibidos (content es un array JSON de como mucho
+     * MAX_POSTALL_SIZE funkos) y responde con la lista guardada, ya con sus ids. Solo administradores
+     * @param request
+     */
+    public void responseCreateFunkos(Request request) throws SQLException {
+        var user = procesarToken(request);
+        if (user.isEmpty()) {
+            return;
+        }
+        if(!user.get().role().equals(User.Role.ADMIN)) {
+            logger.error("Error al insertar los funkos: No tienes permisos para realizar esta acción");
+            writer.send(request, Response.Status.ERROR, "Error al insertar los funkos: No tienes permisos para realizar esta acción");
+            return;
+        }
+        List<Funko> funkosToSave = gson.fromJson(request.content(), FUNKO_LIST_TYPE);
+        if (funkosToSave == null || funkosToSave.size() > MAX_POSTALL_SIZE) {
+            logger.error("Error al insertar los funkos: se admiten como mucho " + MAX_POSTALL_SIZE + " funkos por petición");
+            writer.send(request, Response.Status.ERROR, "Error al insertar los funkos: se admiten como mucho " + MAX_POSTALL_SIZE + " funkos por petición");
+            return;
+        }
+        service.saveAllWithoutNotify(Flux.fromIterable(funkosToSave)).collectList().subscribe(
+                funkos -> {
+                    logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funkos.size() + " funkos insertados");
+                    writer.sendFunkos(request, funkos);
+                },
+                error -> {
+                    logger.error("Error al insertar " + funkosToSave.size() + " funkos : " + error.getMessage());
+                    writer.send(request, Response.Status.ERROR, "Error al insertar " + funkosToSave.size() + " funkos : " + error.getMessage());
+                }
+        );
+    }
+
     public void responseUpdateFunko(Request request) throws  SQLException, ExecutionException, InterruptedException {
 
         Funko funkoToUpdate = gson.fromJson(request.content(), Funko.class);
@@ -240,39 +571,122 @@ public class ClientHandler extends Thread {
         service.updateWithoutNotify(funkoToUpdate).subscribe(
                 funko -> {
                     logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funko);
-                    var resJson = gson.toJson(funko);
-                    out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
+                    writer.sendFunko(request, Response.Status.OK, funko);
                 },
                 error -> {
                     logger.error("Error al actualizar el funko: " + funkoToUpdate + " : " + error.getMessage());
-                    out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al actualizar el funko: " + funkoToUpdate + " : " + error.getMessage(), LocalDateTime.now().toString())));
+                    writer.send(request, Response.Status.ERROR, "Error al actualizar el funko: " + funkoToUpdate + " : " + error.getMessage());
                 }
         );
 
 
     }
 
+    /**
+     * Estadísticas del servidor, solo para administradores: caché de funkos,
+     * pool de conexiones, peticiones por tipo y serialización de respuestas
+     * @param request
+     */
+    private void responseStats(Request request) {
+        var user = procesarToken(request);
+        if (user.isEmpty()) {
+            return;
+        }
+        if (!user.get().role().equals(User.Role.ADMIN)) {
+            logger.error("Error al obtener las estadísticas: No tienes permisos para realizar esta acción");
+            writer.send(request, Response.Status.ERROR, "Error al obtener las estadísticas: No tienes permisos para realizar esta acción");
+            return;
+        }
+
+        CacheStats cacheStats = service.cacheStats();
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("hits", cacheStats.hitCount());
+        cache.put("misses", cacheStats.missCount());
+        cache.put("hitRate", cacheStats.hitRate());
+        cache.put("loadSuccess", cacheStats.loadSuccessCount());
+        cache.put("loadFailure", cacheStats.loadFailureCount());
+        cache.put("averageLoadPenaltyNanos", cacheStats.averageLoadPenalty());
+        cache.put("evictions", cacheStats.evictionCount());
+        cache.put("expirations", cacheStats.expirationCount());
+
+        PoolStats poolStats = DataBaseManager.getInstance().getPoolStats();
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("acquired", poolStats.acquiredSize());
+        pool.put("allocated", poolStats.allocatedSize());
+        pool.put("idle", poolStats.idleSize());
+        pool.put("pendingAcquire", poolStats.pendingAcquireSize());
+        pool.put("maxAllocated", poolStats.maxAllocatedSize());
+        pool.put("acquires", poolStats.acquireCount());
+        pool.put("acquireFailures", poolStats.acquireFailureCount());
+        pool.put("averageAcquireNanos", poolStats.averageAcquireLatency());
+        pool.put("maxAcquireNanos", poolStats.maxAcquireTime());
+        pool.put("averageAcquireFailureNanos", poolStats.averageAcquireFailureTime());
+
+        Map<String, Long> requests = new LinkedHashMap<>();
+        REQUEST_COUNTS.forEach((type, count) -> requests.put(type.name(), count.sum()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cache", cache);
+        stats.put("pool", pool);
+        stats.put("requests", requests);
+        stats.put("serialization", FunkoJsonCache.getInstance().stats());
+
+        logger.debug("Enviando estadísticas al cliente nº: " + clientNumber);
+        writer.send(request, Response.Status.OK, gson.toJson(stats));
+    }
+
     public void responseDeleteFunko(Request request) throws SQLException {
-        var user = procesarToken(request.token());
+        var user = procesarToken(request);
         if(user.isPresent() && user.get().role().equals(User.Role.ADMIN)) {
             int id = Integer.parseInt(request.content());
             service.deleteByIdWithoutNotification(id).subscribe(
                     funko -> {
                         logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funko);
                         var resJson = gson.toJson(funko);
-                        out.println(gson.toJson(new Response(Response.Status.OK, resJson, LocalDateTime.now().toString())));
+                        writer.send(request, Response.Status.OK, resJson);
                     },
                     error -> {
                         logger.error("Error al eliminar el funko con id: " + id + " : " + error.getMessage() + " " + error.toString());
-                        out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al eliminar el funko con id: " + id + " : " + error.getMessage(), LocalDateTime.now().toString())));
+                        writer.send(request, Response.Status.ERROR, "Error al eliminar el funko con id: " + id + " : " + error.getMessage());
                     }
             );
         }else{
             logger.error("Error al eliminar el funko: " + request.content() + " : " + "No tienes permisos para realizar esta acción");
-            out.println(gson.toJson(new Response(Response.Status.ERROR,"Error al eliminar el funko: " + request.content() + " : " + "No tienes permisos para realizar esta acción", LocalDateTime.now().toString())));
+            writer.send(request, Response.Status.ERROR, "Error al eliminar el funko: " + request.content() + " : " + "No tienes permisos para realizar esta acción");
         }
 
     }
+
+    /**
+     * Elimina varios funkos por id en una transacción (solo administradores): content es un array JSON
+     * de como mucho MAX_DELETEBYIDS_SIZE ids. Responde con los funkos borrados
+     * @param request
+     */
+    private void responseDeleteFunkos(Request request) throws SQLException {
+        var user = procesarToken(request);
+        if (user.isEmpty()) {
+            return;
+        }
+        if(!user.get().role().equals(User.Role.ADMIN)) {
+            logger.error("Error al eliminar los funkos: " + request.content() + " : " + "No tienes permisos para realizar esta acción");
+            writer.send(request, Response.Status.ERROR, "Error al eliminar los funkos: " + request.content() + " : " + "No tienes permisos para realizar esta acción");
+            return;
+        }
+        List<Integer> ids = readList(request, ID_LIST_TYPE, MAX_DELETEBYIDS_SIZE, "Error al eliminar los funkos");
+        if (ids == null) {
+            return;
+        }
+        service.deleteByIds(ids).collectList().subscribe(
+                funkos -> {
+                    logger.debug("Enviando respuesta al cliente nº: " + clientNumber + " : " + funkos.size() + " funkos eliminados");
+                    writer.sendFunkos(request, funkos);
+                },
+                error -> {
+                    logger.error("Error al eliminar " + ids.size() + " funkos : " + error.getMessage());
+                    writer.send(request, Response.Status.ERROR, "Error al eliminar " + ids.size() + " funkos : " + error.getMessage());
+                }
+        );
+    }
     
 
 
@@ -0,0 +1,219 @@
+package org.docker.server;
+
+import com.google.gson.Gson;
+import org.docker.common.models.Funko;
+import org.docker.common.models.Request;
+import org.docker.common.models.Response;
+import org.docker.common.protocol.FrameCodec;
+import org.docker.common.protocol.FrameType;
+import org.docker.server.services.funkos.FunkoJsonCache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Único punto de escritura de respuestas de una conexión.
+ * Las respuestas se completan en los callbacks de subscribe, que pueden ejecutarse a la vez
+ * en distintos hilos; cada respuesta se escribe entera bajo el cerrojo para que no se mezclen.
+ * Escribe líneas JSON o, si el cliente lo ha negociado, tramas binarias.
+ * Los funkos de las líneas JSON se toman ya serializados de FunkoJsonCache y la Response
+ * que los envuelve se compone a mano, sin serializarla con Gson
+ * @see ClientHandler
+ * @see FrameCodec
+ * @see FunkoJsonCache
+ */
+public class ResponseWriter {
+
+    private final PrintWriter out;
+    private final Gson gson;
+    private final FunkoJsonCache jsonCache;
+    private final long maxResponseBytes;
+
+    private DataOutputStream frameOut;
+
+    private final Lock lock = new ReentrantLock();
+
+    public ResponseWriter(PrintWriter out, Gson gson) {
+        this(out, gson, 0);
+    }
+
+    /**
+     * Constructor con un tamaño máximo por línea JSON: una respuesta más grande se sustituye
+     * por un ERROR que pide la lista por partes o por páginas, en lugar de cerrar la conexión
+     * @param out writer de la conexión
+     * @param gson gson
+     * @param maxResponseBytes bytes como mucho de una respuesta (0 = sin límite)
+     */
+    public ResponseWriter(PrintWriter out, Gson gson, long maxResponseBytes) {
+        this(out, gson, FunkoJsonCache.getInstance(), maxResponseBytes);
+    }
+
+    public ResponseWriter(PrintWriter out, Gson gson, FunkoJsonCache jsonCache) {
+        this(out, gson, jsonCache, 0);
+    }
+
+    public ResponseWriter(PrintWriter out, Gson gson, FunkoJsonCache jsonCache, long maxResponseBytes) {
+        this.out = out;
+        this.gson = gson;
+        this.jsonCache = jsonCache;
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    /**
+     * A partir de ahora las respuestas se envían como tramas binarias
+     * @param frameOut stream de salida del socket
+     */
+    public void switchToFrames(DataOutputStream frameOut) {
+        lock.lock();
+        try {
+            out.flush();
+            this.frameOut = frameOut;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envía una respuesta a la petición indicada, devolviendo su requestId
+     * @param request petición que se responde (puede ser null)
+     * @param status estado de la respuesta
+     * @param content contenido
+     */
+    public void send(Request request, Response.Status status, String content) {
+        write(new Response(status, content, LocalDateTime.now().toString(), requestIdOf(request)));
+    }
+
+    /**
+     * Envía un funko como contenido de la respuesta
+     * @param request petición que se responde
+     * @param status estado de la respuesta
+     * @param funko funko
+     */
+    public void sendFunko(Request request, Response.Status status, Funko funko) {
+        Response header = new Response(status, null, LocalDateTime.now().toString(), requestIdOf(request));
+        write(envelope(header, jsonCache.escaped(funko)), header.requestId());
+    }
+
+    private void write(Response response) {
+        write(gson.toJson(response), response.requestId());
+    }
+
+    private void write(String json, String requestId) {
+        lock.lock();
+        try {
+            if (frameOut != null) {
+                FrameCodec.write(frameOut, FrameType.RESPONSE, json.getBytes(StandardCharsets.UTF_8));
+            } else if (tooLarge(json)) {
+                out.println(gson.toJson(new Response(Response.Status.ERROR,
+                        "La respuesta ocupa más de " + maxResponseBytes + " bytes: pide la lista por partes (chunkSize) o por páginas (limit)",
+                        LocalDateTime.now().toString(), requestId)));
+            } else {
+                out.println(json);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envía una lista de funkos en una respuesta OK
+     * @param request petición que se responde
+     * @param funkos funkos
+     */
+    public void sendFunkos(Request request, List<Funko> funkos) {
+        sendFunkos(request, Response.Status.OK, funkos);
+    }
+
+    /**
+     * Envía una lista de funkos: en tramas binarias va codificada directamente (FUNKO_LIST),
+     * en líneas JSON va como contenido de la Response
+     * @param request petición que se responde
+     * @param status OK para la lista completa o CHUNK para una parte
+     * @param funkos funkos
+     */
+    public void sendFunkos(Request request, Response.Status status, List<Funko> funkos) {
+        sendFunkos(request, status, funkos, null);
+    }
+
+    /**
+     * Envía una página de funkos junto con el cursor de la página siguiente
+     * @param request petición que se responde
+     * @param status estado de la respuesta
+     * @param funkos funkos de la página
+     * @param nextCursor cursor de la página siguiente (null si es la última)
+     */
+    public void sendFunkos(Request request, Response.Status status, List<Funko> funkos, String nextCursor) {
+        Response header = new Response(status, null, LocalDateTime.now().toString(), requestIdOf(request), nextCursor);
+        if (frameOut == null) {
+            write(envelope(header, jsonCache.escaped(funkos)), header.requestId());
+            return;
+        }
+        lock.lock();
+        try {
+            FrameCodec.write(frameOut, FrameType.FUNKO_LIST, FrameCodec.encodeFunkoList(header, funkos));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cierra el writer de la conexión
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+            if (frameOut != null) {
+                frameOut.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compone el JSON de una Response igual que Gson (mismos campos, mismo orden, sin los nulos)
+     * con un contenido ya escapado
+     * @param header respuesta sin contenido
+     * @param escapedContent contenido escapado, sin comillas
+     */
+    private String envelope(Response header, String escapedContent) {
+        StringBuilder json = new StringBuilder(escapedContent.length() + 128)
+                .append("{\"status\":\"").append(header.status().name())
+                .append("\",\"content\":\"").append(escapedContent)
+                .append("\",\"createdAt\":").append(jsonCache.quote(header.createdAt()));
+        if (header.requestId() != null) {
+            json.append(",\"requestId\":").append(jsonCache.quote(header.requestId()));
+        }
+        if (header.nextCursor() != null) {
+            json.append(",\"nextCursor\":").append(jsonCache.quote(header.nextCursor()));
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * La línea ocupa más de maxResponseBytes en UTF-8. Solo se codifica si por su longitud puede pasarse
+     * @param json
+     */
+    private boolean tooLarge(String json) {
+        if (maxResponseBytes <= 0 || json.length() * 3L <= maxResponseBytes) {
+            return false;
+        }
+        return json.length() > maxResponseBytes || json.getBytes(StandardCharsets.UTF_8).length > maxResponseBytes;
+    }
+
+    private String requestIdOf(Request request) {
+        return request != null ? request.requestId() : null;
+    }
+}
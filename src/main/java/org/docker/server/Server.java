@@ -1,17 +1,25 @@
 package org.docker.server;
 
 import org.docker.common.utils.PropertiesReader;
+import org.docker.server.nio.NioServer;
 import org.docker.server.repositories.funko.FunkoRepositoryImpl;
 import org.docker.server.services.database.DataBaseManager;
 import org.docker.server.services.files.CsvManager;
 import org.docker.server.services.files.JsonManager;
-import org.docker.server.services.funkos.FunkoCacheImpl;
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.funkos.ConcurrentFunkoCache;
+import org.docker.server.services.funkos.FunkoCache;
+import org.docker.server.services.funkos.FunkoCacheSnapshot;
 import org.docker.server.services.funkos.FunkoNotificacionImpl;
 import org.docker.server.services.funkos.FunkoServiceImpl;
+import org.docker.server.services.funkos.FunkoWriteBehind;
+import org.docker.server.services.funkos.OffHeapFunkoCache;
+import org.docker.server.services.funkos.TieredFunkoCache;
 import org.docker.server.services.storage.FunkoStorageServImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import java.io.FileInputStream;
@@ -20,10 +28,14 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -35,14 +47,19 @@ public class Server {
     public static final String TOKEN_SECRET = "DanielGarridoMurosIESLuisVives";
     public static final long TOKEN_EXPIRATION = 10000;
 
+    private static final int PORT = 3000;
+    private static final String[] PROTOCOLS = new String[]{"TLSv1.3"};
+    private static final String[] CIPHER_SUITES = new String[]{"TLS_AES_128_GCM_SHA256"};
+
     private static final FunkoServiceImpl service = FunkoServiceImpl.getInstance(
             FunkoRepositoryImpl.getInstance(DataBaseManager.getInstance()),
-            new FunkoCacheImpl(15, 1, 1, TimeUnit.MINUTES),
+            createCache(),
             FunkoNotificacionImpl.getInstance(),
             FunkoStorageServImpl.getInstance(
                     new CsvManager(),
                     new JsonManager()
-            )
+            ),
+            createWriteBehind()
     );
 
 
@@ -50,31 +67,194 @@ public class Server {
         try {
 
             var myConfig = readConfigFile();
+            if (myConfig == null) {
+                System.err.println("Error: no se ha podido leer server.properties");
+                return;
+            }
+
+            // Antes de aceptar conexiones se precargan los funkos que más se leían antes de parar
+            FunkoCacheSnapshot snapshot = myConfig.get("snapshotFile").isBlank() ? null : new FunkoCacheSnapshot(Path.of(myConfig.get("snapshotFile")));
+            warmUpCache(snapshot, myConfig);
+            // Al parar el servidor se guardan los funkos más leídos y las actualizaciones que aún estén pendientes
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                saveCacheSnapshot(snapshot, Integer.parseInt(myConfig.get("snapshotMaxKeys")));
+                service.shutdown();
+            }));
 
             logger.debug("Configurando TSL");
             // System.setProperty("javax.net.debug", "ssl, keymanager, handshake"); // Depuramos
             System.setProperty("javax.net.ssl.keyStore", myConfig.get("keyFile")); // Llavero
             System.setProperty("javax.net.ssl.keyStorePassword", myConfig.get("keyPassword")); // Clave de acceso
 
+            if (myConfig.get("serverMode").equals("nio")) {
+                startNioServer(myConfig);
+                return;
+            }
+
             // Nos anunciamos como servidor de tipo SSL
             SSLServerSocketFactory serverFactory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
-            SSLServerSocket serverSocket = (SSLServerSocket) serverFactory.createServerSocket(3000);
+            SSLServerSocket serverSocket = (SSLServerSocket) serverFactory.createServerSocket(PORT);
 
             // Opcionalmente podemos forzar el tipo de protocolo -> Poner el mismo que el cliente
             logger.debug("Protocolos soportados: " + Arrays.toString(serverSocket.getSupportedProtocols()));
-            serverSocket.setEnabledCipherSuites(new String[]{"TLS_AES_128_GCM_SHA256"});
-            serverSocket.setEnabledProtocols(new String[]{"TLSv1.3"});
+            serverSocket.setEnabledCipherSuites(CIPHER_SUITES);
+            serverSocket.setEnabledProtocols(PROTOCOLS);
 
-            System.out.println("🚀 Servidor escuchando en el puerto 3000");
+            System.out.println("🚀 Servidor escuchando en el puerto " + PORT);
 
+            ExecutorService clientExecutor = createClientExecutor(myConfig.get("serverMode"));
             while (true) {
-                new ClientHandler(serverSocket.accept(), clientNumber.incrementAndGet(), service).start();
+                clientExecutor.execute(new ClientHandler(serverSocket.accept(), clientNumber.incrementAndGet(), service));
             }
-        } catch (IOException e) {
+        } catch (IOException | NoSuchAlgorithmException e) {
             System.err.println("Error: " + e.getMessage());
         }
     }
 
+    /**
+     * Precarga la caché con los ids guardados en la parada anterior, de más a menos leídos,
+     * en lotes (cache.warmUp.batchSize) y con un tiempo máximo (cache.warmUp.budgetMillis)
+     * @param snapshot fichero de ids o null si no se usa
+     * @param myConfig
+     */
+    private static void warmUpCache(FunkoCacheSnapshot snapshot, Map<String, String> myConfig) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            Map<Integer, Long> hotKeys = snapshot.load();
+            if (hotKeys.isEmpty()) {
+                return;
+            }
+            int batchSize = Integer.parseInt(myConfig.get("warmUpBatchSize"));
+            Duration budget = Duration.ofMillis(Long.parseLong(myConfig.get("warmUpBudgetMillis")));
+            long start = System.nanoTime();
+            Long loaded = service.warmUp(hotKeys.keySet(), batchSize, budget).block();
+            logger.debug("Caché precargada con " + loaded + " de " + hotKeys.size() + " funkos en "
+                    + Duration.ofNanos(System.nanoTime() - start).toMillis() + " ms");
+        } catch (IOException | RuntimeException e) {
+            // Sin precarga el servidor funciona igual, solo que empieza con la caché vacía
+            logger.error("No se ha podido precargar la caché: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda los ids de los funkos más leídos para precargarlos en el próximo arranque
+     * @param snapshot fichero de ids o null si no se usa
+     * @param maxKeys número máximo de ids
+     */
+    private static void saveCacheSnapshot(FunkoCacheSnapshot snapshot, int maxKeys) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.save(service.hotKeys(maxKeys));
+        } catch (IOException e) {
+            logger.error("No se han podido guardar los ids de la caché: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ejecutor de los ClientHandler: un hilo virtual por cliente en modo virtual
+     * (la E/S bloqueante libera el hilo portador) o un hilo de plataforma por cliente
+     * @param serverMode
+     */
+    private static ExecutorService createClientExecutor(String serverMode) {
+        if (serverMode.equals("virtual")) {
+            logger.debug("Atendiendo a cada cliente en un hilo virtual");
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newThreadPerTaskExecutor(Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Arranca el servidor no bloqueante: pocos hilos de E/S con SSLEngine y un pool de workers
+     * que ejecuta las peticiones con el mismo protocolo de líneas JSON que ClientHandler
+     * @param myConfig
+     */
+    private static void startNioServer(Map<String, String> myConfig) throws IOException, NoSuchAlgorithmException {
+        int eventLoops = Integer.parseInt(myConfig.get("nioEventLoops"));
+        int workers = Integer.parseInt(myConfig.get("nioWorkers"));
+
+        NioServer nioServer = new NioServer(PORT, SSLContext.getDefault(), PROTOCOLS, CIPHER_SUITES,
+                eventLoops, workers, clientNumber,
+                (number, out, flow) -> new ClientHandler(number, service, out, flow)::processLine);
+
+        System.out.println("🚀 Servidor NIO escuchando en el puerto " + PORT);
+        nioServer.start();
+    }
+
+    /**
+     * Crea la caché de funkos con la capacidad (cache.maxSize), la política (cache.policy)
+     * y la caducidad (cache.expireAfterWriteSeconds, cache.expireAfterAccessSeconds) de server.properties,
+     * y la de búsquedas fallidas (cache.missing.maxSize, cache.missing.ttlSeconds).
+     * Con cache.offHeap.maxEntries mayor que 0 pone detrás una caché de segundo nivel fuera del heap
+     */
+    private static FunkoCache createCache() {
+        int maxSize = 1000;
+        CachePolicy policy = CachePolicy.TINYLFU;
+        Duration expireAfterWrite = ConcurrentFunkoCache.DEFAULT_EXPIRE_AFTER_WRITE;
+        Duration expireAfterAccess = Duration.ZERO;
+        int missingMaxSize = ConcurrentFunkoCache.DEFAULT_MISSING_MAX_SIZE;
+        Duration missingTtl = ConcurrentFunkoCache.DEFAULT_MISSING_TTL;
+        Duration refreshAfterWrite = Duration.ZERO;
+        int maxConcurrentRefreshes = 4;
+        int offHeapMaxEntries = 0;
+        int offHeapSlotBytes = OffHeapFunkoCache.DEFAULT_SLOT_BYTES;
+        Duration offHeapExpireAfterWrite = Duration.ZERO;
+        try {
+            PropertiesReader properties = new PropertiesReader("server.properties");
+            maxSize = Integer.parseInt(properties.getProperty("cache.maxSize", String.valueOf(maxSize)));
+            policy = CachePolicy.valueOf(properties.getProperty("cache.policy", policy.name()).toUpperCase());
+            expireAfterWrite = Duration.ofSeconds(Long.parseLong(properties.getProperty("cache.expireAfterWriteSeconds", String.valueOf(expireAfterWrite.toSeconds()))));
+            expireAfterAccess = Duration.ofSeconds(Long.parseLong(properties.getProperty("cache.expireAfterAccessSeconds", "0")));
+            missingMaxSize = Integer.parseInt(properties.getProperty("cache.missing.maxSize", String.valueOf(missingMaxSize)));
+            missingTtl = Duration.ofSeconds(Long.parseLong(properties.getProperty("cache.missing.ttlSeconds", String.valueOf(missingTtl.toSeconds()))));
+            refreshAfterWrite = Duration.ofSeconds(Long.parseLong(properties.getProperty("cache.refreshAfterWriteSeconds", "0")));
+            maxConcurrentRefreshes = Integer.parseInt(properties.getProperty("cache.refresh.maxConcurrent", String.valueOf(maxConcurrentRefreshes)));
+            offHeapMaxEntries = Integer.parseInt(properties.getProperty("cache.offHeap.maxEntries", "0"));
+            offHeapSlotBytes = Integer.parseInt(properties.getProperty("cache.offHeap.slotBytes", String.valueOf(offHeapSlotBytes)));
+            offHeapExpireAfterWrite = Duration.ofSeconds(Long.parseLong(properties.getProperty("cache.offHeap.expireAfterWriteSeconds", "0")));
+        } catch (IOException e) {
+            logger.error("Error al leer el fichero de propiedades, usando la caché por defecto: " + e.getLocalizedMessage());
+        }
+        logger.debug("Caché de funkos: " + maxSize + " entradas con política " + policy
+                + ", caducidad tras escritura " + expireAfterWrite + " y tras acceso " + expireAfterAccess
+                + "; búsquedas fallidas: " + missingMaxSize + " durante " + missingTtl
+                + "; refresco tras " + refreshAfterWrite + " con " + maxConcurrentRefreshes + " recargas a la vez");
+        FunkoCache cache = new ConcurrentFunkoCache(maxSize, Runtime.getRuntime().availableProcessors(), policy,
+                expireAfterWrite, expireAfterAccess, missingMaxSize, missingTtl, 1, 1, TimeUnit.SECONDS)
+                .refreshAfterWrite(refreshAfterWrite, maxConcurrentRefreshes);
+        if (offHeapMaxEntries <= 0) {
+            return cache;
+        }
+        logger.debug("Caché de segundo nivel fuera del heap: " + offHeapMaxEntries + " funkos de " + offHeapSlotBytes
+                + " bytes con caducidad tras escritura " + offHeapExpireAfterWrite);
+        return new TieredFunkoCache(cache, new OffHeapFunkoCache(offHeapMaxEntries, offHeapSlotBytes,
+                Runtime.getRuntime().availableProcessors(), offHeapExpireAfterWrite, System::nanoTime));
+    }
+
+    /**
+     * Crea la escritura diferida de actualizaciones si writeBehind.enabled es true en server.properties,
+     * con el tamaño de lote (writeBehind.batchSize) y el intervalo de volcado (writeBehind.flushMillis)
+     * @return la escritura diferida o null para actualizar en el momento
+     */
+    private static FunkoWriteBehind createWriteBehind() {
+        try {
+            PropertiesReader properties = new PropertiesReader("server.properties");
+            if (!properties.getProperty("writeBehind.enabled", "false").equals("true")) {
+                return null;
+            }
+            int batchSize = Integer.parseInt(properties.getProperty("writeBehind.batchSize", "100"));
+            Duration flushInterval = Duration.ofMillis(Long.parseLong(properties.getProperty("writeBehind.flushMillis", "1000")));
+            logger.debug("Escritura diferida de actualizaciones: lotes de " + batchSize + " cada " + flushInterval);
+            return new FunkoWriteBehind(FunkoRepositoryImpl.getInstance(DataBaseManager.getInstance()), batchSize, flushInterval);
+        } catch (IOException e) {
+            logger.error("Error al leer el fichero de propiedades, sin escritura diferida: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
     public static Map<String, String> readConfigFile() {
         try {
             logger.debug("Leyendo el fichero de propiedades");
@@ -84,6 +264,13 @@ public class Server {
             String keyPassword = properties.getProperty("keyPassword");
             String tokenSecret = properties.getProperty("tokenSecret");
             String tokenExpiration = properties.getProperty("tokenExpiration");
+            String serverMode = properties.getProperty("server.mode", "blocking");
+            String nioEventLoops = properties.getProperty("server.nio.eventLoops", "2");
+            String nioWorkers = properties.getProperty("server.nio.workers", "8");
+            String snapshotFile = properties.getProperty("cache.snapshot.file", "");
+            String snapshotMaxKeys = properties.getProperty("cache.snapshot.maxKeys", "1000");
+            String warmUpBatchSize = properties.getProperty("cache.warmUp.batchSize", "50");
+            String warmUpBudgetMillis = properties.getProperty("cache.warmUp.budgetMillis", "5000");
             // Comprobamos que no estén vacías
             if (keyFile.isEmpty() || keyPassword.isEmpty()) {
                 throw new IllegalStateException("Hay errores al procesar el fichero de propiedades o una de ellas está vacía");
@@ -99,6 +286,13 @@ public class Server {
             configMap.put("keyPassword", keyPassword);
             configMap.put("tokenSecret", tokenSecret);
             configMap.put("tokenExpiration", tokenExpiration);
+            configMap.put("serverMode", serverMode);
+            configMap.put("nioEventLoops", nioEventLoops);
+            configMap.put("nioWorkers", nioWorkers);
+            configMap.put("snapshotFile", snapshotFile);
+            configMap.put("snapshotMaxKeys", snapshotMaxKeys);
+            configMap.put("warmUpBatchSize", warmUpBatchSize);
+            configMap.put("warmUpBudgetMillis", warmUpBudgetMillis);
 
             return configMap;
         } catch (FileNotFoundException e) {
@@ -0,0 +1,49 @@
+package org.docker.server.nio;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer que acumula el texto escrito y lo entrega a la SslConnection en cada flush,
+ * permitiendo usar un PrintWriter sobre una conexión no bloqueante
+ * @see SslConnection
+ */
+class ConnectionWriter extends Writer {
+
+    private final SslConnection connection;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    ConnectionWriter(SslConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        synchronized (lock) {
+            buffer.append(cbuf, off, len);
+        }
+    }
+
+    /**
+     * Entrega lo acumulado a la conexión, que lo cifrará y enviará desde su EventLoop
+     */
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            if (buffer.length() > 0) {
+                connection.send(buffer.toString().getBytes(StandardCharsets.UTF_8));
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Envía lo pendiente y cierra la conexión de forma ordenada
+     */
+    @Override
+    public void close() {
+        flush();
+        connection.requestClose();
+    }
+}
@@ -0,0 +1,118 @@
+package org.docker.server.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hilo con un Selector que atiende la E/S de varias SslConnection.
+ * Las demás operaciones sobre sus conexiones se le encargan con execute()
+ * @see SslConnection
+ * @see NioServer
+ */
+public class EventLoop implements Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(EventLoop.class);
+
+    private final Selector selector;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+
+    public EventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Registra una nueva conexión en este EventLoop
+     * @param channel canal aceptado en modo no bloqueante
+     * @param connection conexión asociada al canal
+     */
+    public void register(SocketChannel channel, SslConnection connection) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.start(key);
+            } catch (IOException | RuntimeException e) {
+                connection.abort(e);
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una tarea en el hilo del EventLoop
+     * @param task tarea
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException e) {
+                logger.error("Error en el selector: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Ninguna excepción puede acabar con el hilo: dejaría colgadas todas sus conexiones
+                logger.error("Error inesperado en el EventLoop: " + e.getMessage(), e);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Error al cerrar el selector: " + e.getMessage());
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        SslConnection connection = (SslConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Solo se cierra la conexión que ha fallado
+            connection.abort(e);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Error al ejecutar una tarea en el EventLoop: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Detiene el EventLoop
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,15 @@
+package org.docker.server.nio;
+
+/**
+ * Procesa cada mensaje (una línea JSON) recibido por una conexión no bloqueante
+ * @see SslConnection
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * Procesa un mensaje recibido del cliente
+     * @param message línea recibida sin el salto de línea
+     */
+    void onMessage(String message) throws Exception;
+}
@@ -0,0 +1,20 @@
+package org.docker.server.nio;
+
+import java.io.PrintWriter;
+
+/**
+ * Crea el MessageHandler de cada conexión aceptada por el NioServer
+ * @see MessageHandler
+ * @see NioServer
+ */
+@FunctionalInterface
+public interface MessageHandlerFactory {
+
+    /**
+     * Crea el handler de una conexión
+     * @param clientNumber número de cliente
+     * @param out writer por el que se envían las respuestas al cliente
+     * @param flow control de flujo de las respuestas
+     */
+    MessageHandler create(long clientNumber, PrintWriter out, OutboundFlow flow);
+}
@@ -0,0 +1,110 @@
+package org.docker.server.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor TLS no bloqueante: un hilo acepta conexiones y las reparte entre un número fijo
+ * de EventLoop, mientras que las peticiones se procesan en un pool de workers aparte.
+ * Mantiene el protocolo de líneas JSON de ClientHandler
+ * @see EventLoop
+ * @see SslConnection
+ */
+public class NioServer {
+
+    private final Logger logger = LoggerFactory.getLogger(NioServer.class);
+
+    private final int port;
+    private final SSLContext sslContext;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final MessageHandlerFactory handlerFactory;
+
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+
+    private final AtomicLong clientNumber;
+
+    /**
+     * Constructor
+     * @param port puerto de escucha
+     * @param sslContext contexto TLS con el llavero del servidor
+     * @param protocols protocolos TLS habilitados
+     * @param cipherSuites cifrados habilitados
+     * @param eventLoops número de hilos de E/S
+     * @param workers número de hilos que procesan las peticiones
+     * @param clientNumber contador de clientes compartido con el servidor
+     * @param handlerFactory factoría del handler de cada conexión
+     */
+    public NioServer(int port, SSLContext sslContext, String[] protocols, String[] cipherSuites,
+                     int eventLoops, int workers, AtomicLong clientNumber, MessageHandlerFactory handlerFactory) throws IOException {
+        this.port = port;
+        this.sslContext = sslContext;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.clientNumber = clientNumber;
+        this.handlerFactory = handlerFactory;
+        this.workers = Executors.newFixedThreadPool(workers);
+        this.loops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            loops[i] = new EventLoop();
+        }
+    }
+
+    /**
+     * Arranca los EventLoop y acepta conexiones en el hilo actual
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            logger.debug("Servidor NIO con " + loops.length + " event loops escuchando en el puerto " + port);
+
+            while (serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                long number = clientNumber.incrementAndGet();
+                EventLoop loop = loops[(int) (number % loops.length)];
+                loop.register(channel, new SslConnection(number, channel, createEngine(), loop, workers, handlerFactory));
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(protocols);
+        engine.setEnabledCipherSuites(cipherSuites);
+        return engine;
+    }
+
+    /**
+     * Detiene los EventLoop y el pool de workers
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        workers.shutdown();
+    }
+}
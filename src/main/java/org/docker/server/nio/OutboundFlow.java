@@ -0,0 +1,22 @@
+package org.docker.server.nio;
+
+/**
+ * Control de flujo de las respuestas de una conexión. Quien envía muchas respuestas seguidas
+ * (una lista por partes) no produce la siguiente hasta que la conexión la admite, sin bloquear ningún hilo
+ * @see SslConnection
+ */
+public interface OutboundFlow {
+
+    /**
+     * Sin control de flujo: la conexión siempre admite más (en los sockets bloqueantes la propia escritura espera)
+     */
+    OutboundFlow UNBOUNDED = (resume, abandon) -> resume.run();
+
+    /**
+     * Ejecuta resume en cuanto la conexión admita más respuestas (enseguida si no tiene mucho pendiente),
+     * o abandon si se cierra antes
+     * @param resume continúa con el envío
+     * @param abandon cancela el envío
+     */
+    void whenWritable(Runnable resume, Runnable abandon);
+}
@@ -0,0 +1,409 @@
+package org.docker.server.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conexión TLS no bloqueante sobre un SocketChannel.
+ * Todo el trabajo con el SSLEngine y el canal se hace en el hilo de su EventLoop;
+ * las líneas recibidas se procesan en orden en el pool de workers y las respuestas
+ * pueden enviarse desde cualquier hilo mediante send()
+ * @see EventLoop
+ * @see NioServer
+ */
+public class SslConnection implements OutboundFlow {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * Bytes como mucho de una línea recibida (un POSTALL grande cabe de sobra)
+     */
+    public static final int MAX_LINE_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Bytes como mucho pendientes de enviar: si un cliente no lee y se llega aquí se cierra su conexión
+     */
+    public static final long MAX_OUTBOX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Bytes como mucho de una sola respuesta. Una lista más grande se responde con un ERROR
+     * que pide usar chunkSize o páginas (ver ResponseWriter), así que no llega a llenar el outbox
+     */
+    public static final long MAX_RESPONSE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Con más de estos bytes pendientes de enviar, whenWritable no continúa el envío
+     * hasta que el cliente lea y queden OUTBOX_LOW_WATER o menos
+     */
+    public static final long OUTBOX_HIGH_WATER = 1024 * 1024;
+
+    public static final long OUTBOX_LOW_WATER = 256 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(SslConnection.class);
+
+    private final long clientNumber;
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final EventLoop loop;
+    private final ExecutorService workers;
+
+    private final MessageHandler handler;
+
+    private SelectionKey key;
+
+    private ByteBuffer netIn;
+    private ByteBuffer appIn;
+    private ByteBuffer netOut;
+
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+
+    // Texto plano pendiente de cifrar y enviar
+    private final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong outboxBytes = new AtomicLong();
+
+    // Envíos parados hasta que el cliente lea lo pendiente
+    private final Queue<DrainListener> drainListeners = new ConcurrentLinkedQueue<>();
+
+    // Líneas recibidas pendientes de procesar
+    private final Queue<String> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean processing = new AtomicBoolean(false);
+
+    private volatile boolean closeRequested = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor
+     * @param clientNumber número de cliente
+     * @param channel canal ya aceptado y en modo no bloqueante
+     * @param engine SSLEngine en modo servidor
+     * @param loop EventLoop que atenderá la conexión
+     * @param workers pool donde se procesan los mensajes
+     * @param handlerFactory factoría del handler de mensajes
+     */
+    public SslConnection(long clientNumber, SocketChannel channel, SSLEngine engine, EventLoop loop,
+                         ExecutorService workers, MessageHandlerFactory handlerFactory) {
+        this.clientNumber = clientNumber;
+        this.channel = channel;
+        this.engine = engine;
+        this.loop = loop;
+        this.workers = workers;
+
+        var session = engine.getSession();
+        this.netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+
+        this.handler = handlerFactory.create(clientNumber, new PrintWriter(new ConnectionWriter(this), true), this);
+    }
+
+    /**
+     * Comienza el handshake una vez registrada en el selector (hilo del EventLoop)
+     * @param key clave de registro en el selector
+     */
+    void start(SelectionKey key) throws IOException {
+        this.key = key;
+        logger.debug("Conectando con el cliente nº: " + clientNumber + " : " + channel.getRemoteAddress());
+        engine.beginHandshake();
+        pump();
+    }
+
+    /**
+     * El canal tiene datos para leer (hilo del EventLoop)
+     */
+    void onReadable() throws IOException {
+        int read = channel.read(netIn);
+        if (read < 0) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                logger.debug("El cliente nº: " + clientNumber + " cerró sin close_notify");
+            }
+            close();
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * El canal vuelve a admitir escrituras (hilo del EventLoop)
+     */
+    void onWritable() throws IOException {
+        pump();
+    }
+
+    /**
+     * Encola bytes en claro para enviarlos al cliente. Se puede llamar desde cualquier hilo
+     * @param data datos a enviar
+     */
+    public void send(byte[] data) {
+        if (closed) {
+            logger.debug("Descartando respuesta para el cliente nº: " + clientNumber + " : conexión cerrada");
+            return;
+        }
+        if (outboxBytes.addAndGet(data.length) > MAX_OUTBOX_BYTES) {
+            outboxBytes.addAndGet(-data.length);
+            logger.error("El cliente nº: " + clientNumber + " no lee sus respuestas (" + MAX_OUTBOX_BYTES + " bytes pendientes), se cierra la conexión");
+            loop.execute(this::close);
+            return;
+        }
+        outbox.add(ByteBuffer.wrap(data));
+        loop.execute(this::pumpSafely);
+    }
+
+    /**
+     * Con más de OUTBOX_HIGH_WATER bytes pendientes, resume se guarda y se ejecuta en el pool de workers
+     * cuando el cliente los lea y queden OUTBOX_LOW_WATER o menos. Se puede llamar desde cualquier hilo
+     * @param resume continúa con el envío
+     * @param abandon cancela el envío si la conexión se cierra antes
+     */
+    @Override
+    public void whenWritable(Runnable resume, Runnable abandon) {
+        if (closed) {
+            abandon.run();
+            return;
+        }
+        if (outboxBytes.get() <= OUTBOX_HIGH_WATER) {
+            resume.run();
+            return;
+        }
+        drainListeners.add(new DrainListener(resume, abandon));
+        // Puede haberse vaciado o cerrado mientras se añadía
+        if (closed || outboxBytes.get() <= OUTBOX_LOW_WATER) {
+            signalDrained();
+        }
+    }
+
+    private void signalDrained() {
+        DrainListener listener;
+        while ((listener = drainListeners.poll()) != null) {
+            workers.execute(closed ? listener.abandon() : listener.resume());
+        }
+    }
+
+    /**
+     * Solicita el cierre ordenado: se envía lo pendiente, el close_notify y se cierra el canal
+     */
+    public void requestClose() {
+        closeRequested = true;
+        loop.execute(this::pumpSafely);
+    }
+
+    /**
+     * Cierra la conexión inmediatamente tras un error
+     * @param e error producido
+     */
+    void abort(Exception e) {
+        logger.error("Error al leer/escribir en el socket: " + e.getMessage());
+        close();
+    }
+
+    private void pumpSafely() {
+        try {
+            pump();
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+        }
+    }
+
+    /**
+     * Avanza el handshake, el descifrado y el cifrado todo lo posible sin bloquear
+     */
+    private void pump() throws IOException {
+        if (closed || key == null) {
+            return;
+        }
+        boolean progress;
+        do {
+            // Si el socket no admite más datos esperamos a OP_WRITE
+            if (!flushNetOut()) {
+                break;
+            }
+            progress = switch (engine.getHandshakeStatus()) {
+                case NEED_TASK -> runDelegatedTasks();
+                case NEED_WRAP -> wrap(EMPTY);
+                case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> unwrap();
+                default -> unwrap() | wrapPending();
+            };
+        } while (progress && !closed);
+
+        if (closed) {
+            return;
+        }
+        boolean flushed = flushNetOut();
+        if (flushed && engine.isOutboundDone()) {
+            close();
+            return;
+        }
+        key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private boolean runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+        return true;
+    }
+
+    /**
+     * Cifra la siguiente respuesta pendiente o, si se pidió el cierre, el close_notify
+     */
+    private boolean wrapPending() throws IOException {
+        ByteBuffer next = outbox.peek();
+        if (next != null) {
+            boolean progress = wrap(next);
+            if (!next.hasRemaining()) {
+                outbox.poll();
+                if (outboxBytes.addAndGet(-next.limit()) <= OUTBOX_LOW_WATER && !drainListeners.isEmpty()) {
+                    signalDrained();
+                }
+            }
+            return progress;
+        }
+        if (closeRequested && !engine.isOutboundDone()) {
+            engine.closeOutbound();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean wrap(ByteBuffer src) throws IOException {
+        SSLEngineResult result = engine.wrap(src, netOut);
+        return switch (result.getStatus()) {
+            case BUFFER_OVERFLOW -> {
+                netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                yield true;
+            }
+            case CLOSED -> result.bytesProduced() > 0;
+            default -> result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+        };
+    }
+
+    private boolean unwrap() throws IOException {
+        if (netIn.position() == 0) {
+            return false;
+        }
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW -> {
+                appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                return true;
+            }
+            case BUFFER_UNDERFLOW -> {
+                if (!netIn.hasRemaining()) {
+                    netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                }
+                return false;
+            }
+            case CLOSED -> {
+                // El cliente envió close_notify: respondemos con el nuestro
+                closeRequested = true;
+            }
+            default -> {
+            }
+        }
+        deliverLines();
+        return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+    }
+
+    /**
+     * Separa el texto descifrado en líneas y las encola para los workers
+     */
+    private void deliverLines() throws IOException {
+        appIn.flip();
+        while (appIn.hasRemaining()) {
+            byte b = appIn.get();
+            if (b == '\n') {
+                String line = lineBuffer.toString(StandardCharsets.UTF_8);
+                lineBuffer.reset();
+                inbox.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+            } else if (lineBuffer.size() >= MAX_LINE_BYTES) {
+                throw new IOException("Línea de más de " + MAX_LINE_BYTES + " bytes del cliente nº: " + clientNumber);
+            } else {
+                lineBuffer.write(b);
+            }
+        }
+        appIn.clear();
+        if (!inbox.isEmpty() && processing.compareAndSet(false, true)) {
+            workers.execute(this::drainInbox);
+        }
+    }
+
+    /**
+     * Procesa las líneas de una en una y en orden de llegada (hilo del pool de workers)
+     */
+    private void drainInbox() {
+        do {
+            String line;
+            while ((line = inbox.poll()) != null && !closed) {
+                try {
+                    handler.onMessage(line);
+                } catch (Exception e) {
+                    logger.error("Error al ejecutar la operación: " + e.getMessage());
+                    requestClose();
+                }
+            }
+            processing.set(false);
+        } while (!inbox.isEmpty() && !closed && processing.compareAndSet(false, true));
+    }
+
+    private boolean flushNetOut() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        channel.write(netOut);
+        boolean flushed = !netOut.hasRemaining();
+        netOut.compact();
+        return flushed;
+    }
+
+    private ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        signalDrained();
+        logger.debug("Cerrando la conexión con el cliente nº: " + clientNumber);
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error al cerrar el socket: " + e.getMessage());
+        }
+    }
+
+    private record DrainListener(Runnable resume, Runnable abandon) {
+    }
+}
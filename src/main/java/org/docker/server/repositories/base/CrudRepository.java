@@ -30,6 +30,12 @@ public interface CrudRepository<T, ID, EX extends Exception> {
      */
     Flux<T> findAll() throws SQLException;
 
+    /**
+     * Busca como mucho limit T con id mayor que after, ordenados por id (paginación por cursor).
+     * Con after null se empieza desde el principio
+     */
+    Flux<T> findAll(ID after, int limit) throws SQLException;
+
     /**
      * Elimina un T por su id
      */
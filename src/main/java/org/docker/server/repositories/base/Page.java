@@ -0,0 +1,27 @@
+package org.docker.server.repositories.base;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados de una paginación por cursor (keyset).
+ * nextCursor es el id del último elemento de la página, o null si no hay más páginas
+ * @see CrudRepository#findAll(Object, int)
+ */
+public record Page<T, ID>(List<T> items, ID nextCursor) {
+
+    /**
+     * Construye la página a partir de las filas leídas. Se deben pedir limit + 1 filas:
+     * si llega la fila de más es que hay otra página detrás
+     * @param rows filas leídas (como mucho limit + 1)
+     * @param limit tamaño de página
+     * @param idOf obtiene el id (cursor) de un elemento
+     */
+    public static <T, ID> Page<T, ID> of(List<T> rows, int limit, Function<T, ID> idOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new Page<>(items, idOf.apply(items.get(limit - 1)));
+    }
+}
@@ -1,11 +1,14 @@
 package org.docker.server.repositories.funko;
 
+import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
 import org.docker.server.repositories.base.CrudRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -23,10 +26,95 @@ public interface FunkoRepository extends CrudRepository<Funko, Integer, SQLExcep
      */
     Flux<Funko> findByNombre(String name) throws SQLException;
 
+    /**
+     * Guarda varios Funkos insertándolos por lotes en una sola transacción
+     * @param funkos
+     */
+    Flux<Funko> saveAll(Flux<Funko> funkos) throws SQLException;
+
+    /**
+     * Actualiza varios Funkos en un lote y una sola transacción
+     * @param funkos
+     * @return número de filas actualizadas
+     */
+    Mono<Long> updateAll(List<Funko> funkos) throws SQLException;
+
+    /**
+     * Busca una página de Funkos por su nombre
+     * @param name
+     * @param after id del último funko de la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Flux<Funko> findByNombre(String name, Integer after, int limit) throws SQLException;
+
     /**
      * Busca un Funko por su cod
      * @param cod
      */
     Mono<Funko> findByCod(UUID cod) throws SQLException;
 
+    /**
+     * Busca varios Funkos por sus ids con consultas WHERE id IN (...) por tramos.
+     * Solo devuelve los que existen, una vez cada uno y sin un orden concreto
+     * @param ids
+     */
+    Flux<Funko> findAllByIds(List<Integer> ids) throws SQLException;
+
+    /**
+     * Busca varios Funkos por sus cods con consultas WHERE cod IN (...) por tramos.
+     * Solo devuelve los que existen, una vez cada uno y sin un orden concreto
+     * @param cods
+     */
+    Flux<Funko> findAllByCods(List<UUID> cods) throws SQLException;
+
+    /**
+     * Elimina un Funko por su id con una sola consulta
+     * @param id
+     * @return el funko borrado, o vacío si no existía
+     */
+    Mono<Funko> deleteByIdReturning(Integer id) throws SQLException;
+
+    /**
+     * Elimina varios Funkos por sus ids con consultas DELETE ... WHERE id IN (...) por tramos
+     * en una sola transacción
+     * @param ids
+     * @return los funkos borrados, sin un orden concreto
+     */
+    Flux<Funko> deleteByIds(List<Integer> ids) throws SQLException;
+
+    /**
+     * Busca los Funkos de un modelo
+     * @param modelo
+     */
+    Flux<Funko> findByModelo(Modelo modelo) throws SQLException;
+
+    /**
+     * Busca una página de Funkos de un modelo
+     * @param modelo
+     * @param after id del último funko de la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Flux<Funko> findByModelo(Modelo modelo, Integer after, int limit) throws SQLException;
+
+    /**
+     * Busca los Funkos lanzados en un año
+     * @param year
+     */
+    Flux<Funko> findByReleaseYear(int year) throws SQLException;
+
+    /**
+     * Busca una página de Funkos lanzados en un año, ordenados por fecha de lanzamiento e id
+     * @param year
+     * @param after fecha e id del último funko de la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Flux<Funko> findByReleaseYear(int year, ReleaseCursor after, int limit) throws SQLException;
+
+    /**
+     * Busca los Funkos lanzados entre dos fechas (ambas incluidas)
+     * @param from
+     * @param to
+     */
+    Flux<Funko> findByReleaseDateBetween(LocalDate from, LocalDate to) throws SQLException;
+
 }
@@ -4,9 +4,10 @@ package org.docker.server.repositories.funko;
 import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
 import org.docker.server.services.database.DataBaseManager;
-import io.r2dbc.pool.ConnectionPool;
 import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
 import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
@@ -15,6 +16,10 @@ import reactor.core.publisher.Mono;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -28,13 +33,25 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
 
     private static FunkoRepositoryImpl instance;
 
-    private final ConnectionPool connectionFactory;
+    // Valores por consulta en las búsquedas con IN: acota el tamaño de la sentencia y el número de planes distintos
+    private static final int IN_CHUNK_SIZE = 100;
+
+    // Columnas en el orden que lee FunkoRowMapper, en lugar de SELECT *
+    private static final String SELECT_FUNKOS = "SELECT " + FunkoRowMapper.COLUMNS + " FROM funkos";
+
+    // Borra y devuelve las filas borradas en la misma sentencia; falta el WHERE y cerrar el paréntesis
+    private static final String DELETE_FUNKOS_RETURNING = "SELECT " + FunkoRowMapper.COLUMNS + " FROM OLD TABLE (DELETE FROM funkos";
+
+    private final ConnectionFactory connectionFactory;
+
+    private final int batchSize;
 
     private Logger logger = LoggerFactory.getLogger(FunkoRepositoryImpl.class);
 
 
     private FunkoRepositoryImpl(DataBaseManager dataBaseManager){
-        this.connectionFactory = dataBaseManager.getConnectionPool();
+        this.connectionFactory = dataBaseManager.getConnectionFactory();
+        this.batchSize = dataBaseManager.getBatchSize();
     }
 
     /**
@@ -82,6 +99,66 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
         );
     }
 
+    /**
+     * Guarda varios funkos con una sola conexión y una sola transacción. Las filas se agrupan
+     * en lotes de batchSize y cada lote es una única sentencia con varios juegos de parámetros
+     * (Statement.add()); los ids generados se asignan a los funkos en el mismo orden.
+     * Si falla cualquier lote se deshace todo
+     * @param funkos
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> saveAll(Flux<Funko> funkos) throws SQLException {
+        logger.debug("Guardando funkos por lotes de {}", batchSize);
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.beginTransaction())
+                        .thenMany(funkos.buffer(batchSize).concatMap(batch -> saveBatch(connection, batch))),
+                connection -> Mono.from(connection.commitTransaction()).then(Mono.from(connection.close())),
+                (connection, error) -> {
+                    logger.error("Error al guardar los funkos por lotes, deshaciendo: " + error.getMessage());
+                    return Mono.from(connection.rollbackTransaction()).then(Mono.from(connection.close()));
+                },
+                connection -> Mono.from(connection.rollbackTransaction()).then(Mono.from(connection.close()))
+        );
+    }
+
+    /**
+     * Inserta un lote de funkos con una sola sentencia
+     * @param connection conexión con la transacción abierta
+     * @param batch funkos del lote
+     */
+    private Flux<Funko> saveBatch(Connection connection, List<Funko> batch) {
+        logger.debug("Insertando lote de {} funkos", batch.size());
+        String query = "INSERT INTO funkos (cod, myId, name, model, price, release_date) VALUES(?,?,?,?,?,?)";
+        Statement statement = connection.createStatement(query);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            Funko funko = batch.get(i);
+            statement.bind(0, funko.getCOD())
+                    .bind(1, funko.getMyId())
+                    .bind(2, funko.getNombre())
+                    .bind(3, funko.getModelo().toString())
+                    .bind(4, funko.getPrecio())
+                    .bind(5, funko.getFecha());
+        }
+        return Flux.from(statement.returnGeneratedValues("id").execute())
+                .concatMap(result -> result.map((row, rowMetadata) -> row.get("id", Integer.class)))
+                .collectList()
+                .flatMapMany(ids -> {
+                    // Sin un id por funko no se sabe cuál se ha guardado: se falla y saveAll deshace la transacción
+                    if (ids.size() != batch.size()) {
+                        return Flux.error(new SQLException("Se han insertado " + batch.size() + " funkos pero se han obtenido " + ids.size() + " ids"));
+                    }
+                    for (int i = 0; i < ids.size(); i++) {
+                        batch.get(i).setId(ids.get(i));
+                    }
+                    return Flux.fromIterable(batch);
+                });
+    }
+
     /**
      * Actualiza un funko en la base de datos
      * @param funko
@@ -98,14 +175,60 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
 
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
-                        .bind(0, funko.getNombre())
-                        .bind(1, funko.getModelo().toString())
-                        .bind(2, funko.getPrecio())
-                        .bind(3, LocalDateTime.now())
-                        .bind(4, funko.getId())
-                        .execute()
-                ).then(Mono.just(funko)),
+                connection -> {
+                    // Misma precisión que la columna, para que el funko devuelto tenga la misma versión que el guardado
+                    LocalDateTime updatedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+                    return Mono.from(connection.createStatement(query)
+                            .bind(0, funko.getNombre())
+                            .bind(1, funko.getModelo().toString())
+                            .bind(2, funko.getPrecio())
+                            .bind(3, updatedAt)
+                            .bind(4, funko.getId())
+                            .execute()
+                    ).then(Mono.fromSupplier(() -> {
+                        funko.setUpdated_at(updatedAt);
+                        return funko;
+                    }));
+                },
+                Connection::close
+        );
+    }
+
+    /**
+     * Actualiza varios funkos con una sola sentencia (un juego de parámetros por funko)
+     * en una transacción. Guarda el updated_at que ya traen los funkos
+     * @param funkos
+     * @throws SQLException
+     */
+    @Override
+    public Mono<Long> updateAll(List<Funko> funkos) throws SQLException {
+        logger.debug("Actualizando {} funkos en un lote", funkos.size());
+        if (funkos.isEmpty()) {
+            return Mono.just(0L);
+        }
+        String query = "UPDATE funkos SET name = ?, model = ?, price = ?, updated_at = ? WHERE id = ?";
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> {
+                    Statement statement = connection.createStatement(query);
+                    for (int i = 0; i < funkos.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        Funko funko = funkos.get(i);
+                        statement.bind(0, funko.getNombre())
+                                .bind(1, funko.getModelo().toString())
+                                .bind(2, funko.getPrecio())
+                                .bind(3, funko.getUpdated_at())
+                                .bind(4, funko.getId());
+                    }
+                    return Mono.from(connection.beginTransaction())
+                            .thenMany(statement.execute())
+                            .concatMap(Result::getRowsUpdated)
+                            .reduce(0L, Long::sum)
+                            .flatMap(rows -> Mono.from(connection.commitTransaction()).thenReturn(rows))
+                            .onErrorResume(error -> Mono.from(connection.rollbackTransaction()).then(Mono.error(error)));
+                },
                 Connection::close
         );
     }
@@ -119,23 +242,13 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
     @Override
     public Mono<Funko> findById(Integer integer) throws SQLException {
         logger.debug("Buscando funko por id: {}", integer);
-        String query = "SELECT * FROM funkos WHERE id = ?";
+        String query = SELECT_FUNKOS + " WHERE id = ?";
         return Mono.usingWhen(
                 connectionFactory.create(),
                 connection -> Mono.from(connection.createStatement(query)
                         .bind(0, integer)
                         .execute()
-                ).flatMap(result -> Mono.from( result.map((row, rowMetadata) -> new Funko(
-                        row.get("id", Integer.class),
-                        row.get("cod", UUID.class),
-                        row.get("myId", Long.class),
-                        row.get("name", String.class),
-                        Modelo.valueOf(row.get("model", String.class)),
-                        row.get("price", Float.class).doubleValue(),
-                        row.get("release_date", LocalDate.class),
-                        row.get("created_at", LocalDateTime.class),
-                        row.get("updated_at", LocalDateTime.class)
-                )))),
+                ).flatMap(result -> Mono.from( result.map(FunkoRowMapper::map))),
                 Connection::close
         );
     }
@@ -149,23 +262,63 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
     @Override
     public Mono<Funko> findByCod(UUID cod) throws SQLException {
         logger.debug("Buscando funko por id: {}", cod.toString());
-        String query = "SELECT * FROM funkos WHERE cod = ?";
+        String query = SELECT_FUNKOS + " WHERE cod = ?";
         return Mono.usingWhen(
                 connectionFactory.create(),
                 connection -> Mono.from(connection.createStatement(query)
                         .bind(0, cod)
                         .execute()
-                ).flatMap(result -> Mono.from( result.map((row, rowMetadata) -> new Funko(
-                        row.get("id", Integer.class),
-                        row.get("cod", UUID.class),
-                        row.get("myId", Long.class),
-                        row.get("name", String.class),
-                        Modelo.valueOf(row.get("model", String.class)),
-                        row.get("price", Float.class).doubleValue(),
-                        row.get("release_date", LocalDate.class),
-                        row.get("created_at", LocalDateTime.class),
-                        row.get("updated_at", LocalDateTime.class)
-                )))),
+                ).flatMap(result -> Mono.from( result.map(FunkoRowMapper::map))),
+                Connection::close
+        );
+    }
+
+    /**
+     * Busca varios funkos por sus ids con una conexión y una consulta IN por cada tramo de IN_CHUNK_SIZE ids
+     * @param ids
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findAllByIds(List<Integer> ids) throws SQLException {
+        logger.debug("Buscando {} funkos por id", ids.size());
+        return findIn("id", ids);
+    }
+
+    /**
+     * Busca varios funkos por sus cods con una conexión y una consulta IN por cada tramo de IN_CHUNK_SIZE cods
+     * @param cods
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findAllByCods(List<UUID> cods) throws SQLException {
+        logger.debug("Buscando {} funkos por cod", cods.size());
+        return findIn("cod", cods);
+    }
+
+    /**
+     * Busca los funkos cuya columna está entre los valores (sin repetidos ni null), por tramos, con una sola conexión
+     * @param column columna (no viene del cliente)
+     * @param values valores
+     */
+    private Flux<Funko> findIn(String column, List<?> values) {
+        List<?> distinct = values.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> Flux.fromIterable(distinct).buffer(IN_CHUNK_SIZE).concatMap(chunk -> {
+                    // Se rellena hasta una potencia de dos repitiendo el último valor: así solo hay unas pocas
+                    // sentencias distintas y la cache de consultas de la base de datos las reutiliza
+                    int params = Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), IN_CHUNK_SIZE);
+                    String query = SELECT_FUNKOS + " WHERE " + column + " IN (" + String.join(",", Collections.nCopies(params, "?")) + ")";
+                    Statement statement = connection.createStatement(query);
+                    for (int i = 0; i < params; i++) {
+                        statement.bind(i, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    return Flux.from(statement.execute()
+                    ).flatMap(result -> Flux.from( result.map(FunkoRowMapper::map)));
+                }),
                 Connection::close
         );
     }
@@ -178,28 +331,31 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
     @Override
     public Flux<Funko> findAll() throws SQLException {
         logger.debug("Buscando todos los funkos");
-        String query = "SELECT * FROM funkos";
+        String query = SELECT_FUNKOS;
         return Flux.usingWhen(
                 connectionFactory.create(),
                 connection -> Flux.from(connection.createStatement(query)
                         .execute()
-                ).flatMap(result -> Flux.from( result.map((row, rowMetadata) -> new Funko(
-                        row.get("id", Integer.class),
-                        row.get("cod", UUID.class),
-                        row.get("myId", Long.class),
-                        row.get("name", String.class),
-                        Modelo.valueOf(row.get("model", String.class)),
-                        row.get("price", Float.class).doubleValue(),
-                        row.get("release_date", LocalDate.class),
-                        row.get("created_at", LocalDateTime.class),
-                        row.get("updated_at", LocalDateTime.class)
-                )))),
+                ).flatMap(result -> Flux.from( result.map(FunkoRowMapper::map))),
                 Connection::close
         );
     }
 
     /**
-     * Elimina un funko por su id
+     * Busca una página de funkos ordenados por id. Se continúa desde el id indicado
+     * (WHERE id > ?) en lugar de saltar filas con OFFSET, así cualquier página cuesta lo mismo
+     * @param after id del último funko de la página anterior (null para la primera)
+     * @param limit tamaño de página
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findAll(Integer after, int limit) throws SQLException {
+        logger.debug("Buscando {} funkos a partir del id: {}", limit, after);
+        return findMany(SELECT_FUNKOS + " WHERE id > ? ORDER BY id LIMIT ?", cursorOf(after), limit);
+    }
+
+    /**
+     * Elimina un funko por su id con una sola sentencia: existía si se ha borrado alguna fila
      * @param integer
      * @throws SQLException
      * @throws SQLException
@@ -207,21 +363,71 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
     @Override
     public Mono<Boolean> deleteById(Integer integer) throws SQLException {
         logger.debug("Eliminando funko por id: {}", integer);
-        if(findById(integer).block() == null){
-            return Mono.just(false);
-        }
         String query = "DELETE FROM funkos WHERE id = ?";
         return Mono.usingWhen(
                 connectionFactory.create(),
-                connection -> Mono.from(connection.createStatement(query)
+                connection -> Flux.from(connection.createStatement(query)
                                 .bind(0, integer)
                                 .execute()
-                        ).flatMapMany(Result::getRowsUpdated)
-                        .hasElements(),
+                        ).flatMap(Result::getRowsUpdated)
+                        .reduce(0L, Long::sum)
+                        .map(rows -> rows > 0),
+                Connection::close
+        );
+    }
+
+    /**
+     * Elimina un funko por su id y lo devuelve tal como estaba, con una sola sentencia
+     * (SELECT sobre OLD TABLE del DELETE)
+     * @param id
+     * @throws SQLException
+     */
+    @Override
+    public Mono<Funko> deleteByIdReturning(Integer id) throws SQLException {
+        logger.debug("Eliminando funko por id: {}", id);
+        return Mono.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.createStatement(DELETE_FUNKOS_RETURNING + " WHERE id = ?)")
+                        .bind(0, id)
+                        .execute()
+                ).flatMap(result -> Mono.from( result.map(FunkoRowMapper::map))),
                 Connection::close
         );
     }
 
+    /**
+     * Elimina varios funkos por sus ids con una conexión y una transacción, con un DELETE ... IN
+     * por cada tramo de IN_CHUNK_SIZE ids. Devuelve los funkos borrados; si falla un tramo se deshace todo
+     * @param ids
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> deleteByIds(List<Integer> ids) throws SQLException {
+        logger.debug("Eliminando {} funkos por id", ids.size());
+        List<Integer> distinct = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> Mono.from(connection.beginTransaction())
+                        .thenMany(Flux.fromIterable(distinct).buffer(IN_CHUNK_SIZE).concatMap(chunk -> {
+                            String query = DELETE_FUNKOS_RETURNING + " WHERE id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + "))";
+                            Statement statement = connection.createStatement(query);
+                            for (int i = 0; i < chunk.size(); i++) {
+                                statement.bind(i, chunk.get(i));
+                            }
+                            return Flux.from(statement.execute()).flatMap(result -> Flux.from( result.map(FunkoRowMapper::map)));
+                        })),
+                connection -> Mono.from(connection.commitTransaction()).then(Mono.from(connection.close())),
+                (connection, error) -> {
+                    logger.error("Error al eliminar los funkos por lotes, deshaciendo: " + error.getMessage());
+                    return Mono.from(connection.rollbackTransaction()).then(Mono.from(connection.close()));
+                },
+                connection -> Mono.from(connection.rollbackTransaction()).then(Mono.from(connection.close()))
+        );
+    }
+
     /**
      * Elimina todos los funkos
      * @throws SQLException
@@ -240,6 +446,104 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
         );
     }
 
+    /**
+     * Busca los funkos de un modelo (usa el índice idx_funkos_model_id)
+     * @param modelo
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByModelo(Modelo modelo) throws SQLException {
+        logger.debug("Buscando funkos por modelo: {}", modelo);
+        return findMany(SELECT_FUNKOS + " WHERE model = ?", modelo.toString());
+    }
+
+    /**
+     * Busca una página de funkos de un modelo (usa el índice idx_funkos_model_id)
+     * @param modelo
+     * @param after
+     * @param limit
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByModelo(Modelo modelo, Integer after, int limit) throws SQLException {
+        logger.debug("Buscando {} funkos por modelo: {} a partir del id: {}", limit, modelo, after);
+        return findMany(SELECT_FUNKOS + " WHERE model = ? AND id > ? ORDER BY id LIMIT ?",
+                modelo.toString(), cursorOf(after), limit);
+    }
+
+    /**
+     * Busca los funkos lanzados en un año
+     * @param year
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByReleaseYear(int year) throws SQLException {
+        logger.debug("Buscando funkos por año de lanzamiento: {}", year);
+        return findByReleaseDateBetween(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+
+    /**
+     * Busca una página de funkos lanzados en un año, en el orden del índice idx_funkos_release_date_id.
+     * El rango empieza en la fecha del cursor, así que el índice salta directamente a ella; de esa fecha
+     * solo se descartan los ids que ya se enviaron, y cualquier página cuesta lo mismo que la primera
+     * @param year
+     * @param after
+     * @param limit
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByReleaseYear(int year, ReleaseCursor after, int limit) throws SQLException {
+        logger.debug("Buscando {} funkos por año de lanzamiento: {} a partir de: {}", limit, year, after);
+        LocalDate firstDay = LocalDate.of(year, 1, 1);
+        // Sin cursor se empieza el 1 de enero desde el id 0 (los ids empiezan en 1)
+        LocalDate from = after == null || after.releaseDate().isBefore(firstDay) ? firstDay : after.releaseDate();
+        int afterId = after == null || after.releaseDate().isBefore(firstDay) ? 0 : after.id();
+        return findMany(SELECT_FUNKOS + " WHERE release_date BETWEEN ? AND ? AND (release_date > ? OR id > ?)"
+                        + " ORDER BY release_date, id LIMIT ?",
+                from, LocalDate.of(year, 12, 31), from, afterId, limit);
+    }
+
+    /**
+     * Busca los funkos lanzados entre dos fechas. Se compara la columna directamente
+     * (sin YEAR(release_date)) para que se use el índice idx_funkos_release_date_id
+     * @param from
+     * @param to
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByReleaseDateBetween(LocalDate from, LocalDate to) throws SQLException {
+        logger.debug("Buscando funkos lanzados entre {} y {}", from, to);
+        return findMany(SELECT_FUNKOS + " WHERE release_date BETWEEN ? AND ?", from, to);
+    }
+
+    /**
+     * Los ids empiezan en 1, así que sin cursor se busca desde 0
+     * @param after
+     */
+    private int cursorOf(Integer after) {
+        return after == null ? 0 : after;
+    }
+
+    /**
+     * Ejecuta una consulta con parámetros y mapea todas las filas a funkos
+     * @param query
+     * @param params
+     */
+    private Flux<Funko> findMany(String query, Object... params) {
+        return Flux.usingWhen(
+                connectionFactory.create(),
+                connection -> {
+                    Statement statement = connection.createStatement(query);
+                    for (int i = 0; i < params.length; i++) {
+                        statement.bind(i, params[i]);
+                    }
+                    return Flux.from(statement.execute()
+                    ).flatMap(result -> Flux.from( result.map(FunkoRowMapper::map)));
+                },
+                Connection::close
+        );
+    }
+
     /**
      * Busca un funko por su nombre
      * @param name
@@ -249,24 +553,27 @@ public class FunkoRepositoryImpl  implements FunkoRepository{
     @Override
     public Flux<Funko> findByNombre(String name) throws SQLException {
         logger.debug("Buscando funko por nombre: {}", name);
-        String query = "SELECT * FROM funkos WHERE name = ?";
+        String query = SELECT_FUNKOS + " WHERE name = ?";
         return Flux.usingWhen(
                 connectionFactory.create(),
                 connection -> Flux.from(connection.createStatement(query)
                         .bind(0, name)
                         .execute()
-                ).flatMap(result -> Flux.from( result.map((row, rowMetadata) -> new Funko(
-                        row.get("id", Integer.class),
-                        row.get("cod", UUID.class),
-                        row.get("myId", Long.class),
-                        row.get("name", String.class),
-                        Modelo.valueOf(row.get("model", String.class)),
-                        row.get("price", Float.class).doubleValue(),
-                        row.get("release_date", LocalDate.class),
-                        row.get("created_at", LocalDateTime.class),
-                        row.get("updated_at", LocalDateTime.class)
-                )))),
+                ).flatMap(result -> Flux.from( result.map(FunkoRowMapper::map))),
                 Connection::close
         );
     }
+
+    /**
+     * Busca una página de funkos por su nombre (usa el índice idx_funkos_name_id)
+     * @param name
+     * @param after
+     * @param limit
+     * @throws SQLException
+     */
+    @Override
+    public Flux<Funko> findByNombre(String name, Integer after, int limit) throws SQLException {
+        logger.debug("Buscando {} funkos por nombre: {} a partir del id: {}", limit, name, after);
+        return findMany(SELECT_FUNKOS + " WHERE name = ? AND id > ? ORDER BY id LIMIT ?", name, cursorOf(after), limit);
+    }
 }
@@ -0,0 +1,77 @@
+package org.docker.server.repositories.funko;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Convierte las filas de la tabla funkos en Funko. Las consultas piden las columnas de COLUMNS
+ * en ese orden y cada valor se lee por su posición, sin buscar la columna por nombre en cada fila
+ * @see FunkoRepositoryImpl
+ * @author daniel
+ */
+public final class FunkoRowMapper {
+
+    /**
+     * Columnas que hay que seleccionar, en el orden en que se leen
+     */
+    public static final String COLUMNS = "id, cod, myId, name, model, price, release_date, created_at, updated_at";
+
+    private static final int ID = 0;
+    private static final int COD = 1;
+    private static final int MY_ID = 2;
+    private static final int NAME = 3;
+    private static final int MODEL = 4;
+    private static final int PRICE = 5;
+    private static final int RELEASE_DATE = 6;
+    private static final int CREATED_AT = 7;
+    private static final int UPDATED_AT = 8;
+
+    // Modelo.valueOf busca en el mapa de constantes de la clase en cada llamada; así se busca solo aquí
+    private static final Map<String, Modelo> MODELOS = new HashMap<>();
+
+    static {
+        for (Modelo modelo : Modelo.values()) {
+            MODELOS.put(modelo.name(), modelo);
+        }
+    }
+
+    private FunkoRowMapper() {
+    }
+
+    /**
+     * Funko de una fila con las columnas de COLUMNS. Se usa como result.map(FunkoRowMapper::map)
+     * @param row
+     * @param rowMetadata
+     */
+    public static Funko map(Row row, RowMetadata rowMetadata) {
+        Float price = row.get(PRICE, Float.class);
+        return new Funko(
+                row.get(ID, Integer.class),
+                row.get(COD, UUID.class),
+                row.get(MY_ID, Long.class),
+                row.get(NAME, String.class),
+                modeloOf(row.get(MODEL, String.class)),
+                price != null ? price.doubleValue() : 0.0,
+                row.get(RELEASE_DATE, LocalDate.class),
+                row.get(CREATED_AT, LocalDateTime.class),
+                row.get(UPDATED_AT, LocalDateTime.class)
+        );
+    }
+
+    private static Modelo modeloOf(String model) {
+        Modelo modelo = model == null ? null : MODELOS.get(model);
+        if (modelo == null) {
+            // Mismo error que daba Modelo.valueOf
+            throw new IllegalArgumentException("Modelo desconocido: " + model);
+        }
+        return modelo;
+    }
+}
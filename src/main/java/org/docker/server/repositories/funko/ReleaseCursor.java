@@ -0,0 +1,36 @@
+package org.docker.server.repositories.funko;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Cursor de las páginas de funkos por año: la fecha de lanzamiento y el id del último funko
+ * de la página anterior. Las páginas van ordenadas por (release_date, id), el orden del
+ * índice idx_funkos_release_date_id. En el protocolo viaja como "fecha:id", p. ej. "2023-05-01:42"
+ * @see FunkoRepository#findByReleaseYear(int, ReleaseCursor, int)
+ */
+public record ReleaseCursor(LocalDate releaseDate, int id) {
+
+    /**
+     * Lee un cursor con el formato de toString
+     * @param cursor
+     * @throws IllegalArgumentException si no tiene el formato "fecha:id"
+     */
+    public static ReleaseCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor);
+        }
+        try {
+            return new ReleaseCursor(LocalDate.parse(cursor.substring(0, separator)),
+                    Integer.parseInt(cursor.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return releaseDate + ":" + id;
+    }
+}
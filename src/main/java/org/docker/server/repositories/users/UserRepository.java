@@ -5,10 +5,14 @@ import org.mindrot.jbcrypt.BCrypt;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class UserRepository {
 
-    private static UserRepository instance;
+    private static volatile UserRepository instance;
+
+    private static final Lock lock = new ReentrantLock();
 
 
     private final List<User> users = List.of(
@@ -29,9 +33,16 @@ public class UserRepository {
     private UserRepository() {
     }
 
-    public synchronized static UserRepository getInstance() {
+    public static UserRepository getInstance() {
         if (instance == null) {
-            instance = new UserRepository();
+            lock.lock();
+            try {
+                if (instance == null) {
+                    instance = new UserRepository();
+                }
+            } finally {
+                lock.unlock();
+            }
         }
         return instance;
     }
@@ -9,17 +9,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TokenService {
-    private static TokenService INSTANCE = null;
+    private static volatile TokenService INSTANCE = null;
+    private static final Lock lock = new ReentrantLock();
     private final Logger logger = LoggerFactory.getLogger(TokenService.class);
 
     private TokenService() {
     }
 
-    public synchronized static TokenService getInstance() {
+    public static TokenService getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new TokenService();
+            lock.lock();
+            try {
+                if (INSTANCE == null) {
+                    INSTANCE = new TokenService();
+                }
+            } finally {
+                lock.unlock();
+            }
         }
         return INSTANCE;
     }
@@ -38,4 +38,21 @@ public interface Cache<K, V> {
      */
     void shutdown();
 
+    /**
+     * Anota una carga desde el origen tras un fallo de la cache que ha encontrado el valor
+     * @param loadNanos tiempo de la carga
+     */
+    void recordLoadSuccess(long loadNanos);
+
+    /**
+     * Anota una carga desde el origen que no ha encontrado el valor o ha fallado
+     * @param loadNanos tiempo de la carga
+     */
+    void recordLoadFailure(long loadNanos);
+
+    /**
+     * Foto de las estadísticas del cache, sin cerrojos
+     */
+    CacheStats stats();
+
 }
@@ -0,0 +1,21 @@
+package org.docker.server.services.cache;
+
+/**
+ * Políticas de expulsión disponibles para StripedCache (propiedad cache.policy)
+ * @see EvictionPolicy
+ */
+public enum CachePolicy {
+    LRU,
+    TINYLFU;
+
+    /**
+     * Crea la política para un tramo
+     * @param capacity capacidad del tramo
+     */
+    public <K> EvictionPolicy<K> create(int capacity) {
+        return switch (this) {
+            case LRU -> new LruPolicy<>(capacity);
+            case TINYLFU -> new TinyLfuPolicy<>(capacity);
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package org.docker.server.services.cache;
+
+/**
+ * Foto de las estadísticas de una cache. Los tiempos van en nanosegundos
+ * @param hitCount lecturas que encontraron el valor
+ * @param missCount lecturas que no lo encontraron
+ * @param loadSuccessCount cargas desde el origen que encontraron el valor
+ * @param loadFailureCount cargas desde el origen que no lo encontraron o fallaron
+ * @param totalLoadTime tiempo total cargando desde el origen
+ * @param evictionCount entradas expulsadas por falta de espacio
+ * @param expirationCount entradas eliminadas por caducar
+ * @see StatsCounter
+ */
+public record CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                         long totalLoadTime, long evictionCount, long expirationCount) {
+
+    /**
+     * Número total de lecturas
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Proporción de lecturas que encontraron el valor (1 si no ha habido ninguna)
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Tiempo medio de una carga desde el origen
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+}
@@ -0,0 +1,45 @@
+package org.docker.server.services.cache;
+
+/**
+ * Política de expulsión de un tramo (stripe) de StripedCache.
+ * No necesita ser thread-safe: el tramo siempre la usa con su cerrojo cogido
+ * @see StripedCache
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * Se ha leído o sobrescrito una clave que ya estaba
+     * @param key - key
+     */
+    void recordAccess(K key);
+
+    /**
+     * Se ha pedido una clave que no estaba. Las políticas por frecuencia también la cuentan
+     * @param key - key
+     */
+    default void recordMiss(K key) {
+    }
+
+    /**
+     * Se ha insertado una clave nueva
+     * @param key - key
+     */
+    void recordInsert(K key);
+
+    /**
+     * Se ha eliminado una clave (delete, caducidad o limpieza)
+     * @param key - key
+     */
+    void recordRemoval(K key);
+
+    /**
+     * Elige la clave a expulsar cuando el tramo supera su capacidad y la olvida.
+     * Puede ser la que se acaba de insertar si la política decide no admitirla
+     */
+    K evict();
+
+    /**
+     * Olvida todas las claves
+     */
+    void clear();
+}
@@ -0,0 +1,103 @@
+package org.docker.server.services.cache;
+
+/**
+ * Count-min sketch de 4 filas con contadores saturados en 15 para estimar con poca memoria
+ * cuántas veces se ha pedido cada clave. Cada cierto número de incrementos se dividen todos
+ * los contadores entre 2 para que las frecuencias antiguas pierdan peso.
+ * No es thread-safe: se usa dentro del cerrojo del tramo
+ * @see TinyLfuPolicy
+ */
+public class FrequencySketch<K> {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb2ab4b6b, 0x5bd1e995, 0x27d4eb2f};
+
+    private final byte[][] table;
+    private final int mask;
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Constructor de FrequencySketch
+     * @param capacity número de entradas de la caché a la que acompaña
+     */
+    public FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(16, capacity * 8) - 1) << 1;
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Frecuencia estimada de una clave (nunca menor que la real desde el último envejecimiento)
+     * @param key - key
+     */
+    public int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table[i][index(hash, i)]);
+        }
+        return min;
+    }
+
+    /**
+     * Anota un acceso a la clave. Solo se incrementan los contadores que están en el mínimo
+     * (actualización conservadora), lo que reduce el error por colisiones
+     * @param key - key
+     */
+    public void increment(K key) {
+        int hash = spread(key.hashCode());
+        int min = frequency(key);
+        if (min == MAX_COUNT) {
+            return;
+        }
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            if (table[i][index] == min) {
+                table[i][index]++;
+            }
+        }
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Borra todas las frecuencias
+     */
+    public void clear() {
+        for (byte[] row : table) {
+            java.util.Arrays.fill(row, (byte) 0);
+        }
+        additions = 0;
+    }
+
+    /**
+     * Envejece el sketch dividiendo todos los contadores entre 2
+     */
+    private void reset() {
+        for (byte[] row : table) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (byte) (row[j] >>> 1);
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= (h >>> 15);
+        return h & mask;
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 17);
+        h *= 0xed5ad4bb;
+        h ^= (h >>> 11);
+        h *= 0xac4c1b51;
+        return h ^ (h >>> 15);
+    }
+}
@@ -0,0 +1,54 @@
+package org.docker.server.services.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Política LRU: expulsa la clave usada hace más tiempo
+ * @see EvictionPolicy
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+    // En orden de acceso: la primera es la usada hace más tiempo
+    private final Map<K, Boolean> order;
+
+    /**
+     * Constructor de LruPolicy
+     * @param capacity capacidad del tramo al que se aplica
+     */
+    public LruPolicy(int capacity) {
+        this.order = new LinkedHashMap<>((int) ((capacity + 1) / 0.75f) + 1, 0.75f, true);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        order.get(key);
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public K evict() {
+        Iterator<K> it = order.keySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        K eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,43 @@
+package org.docker.server.services.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Agrupa las cargas concurrentes de una misma clave: mientras hay una carga en curso,
+ * quien pida la misma clave se suscribe a ella en vez de lanzar otra consulta, y todos
+ * reciben el mismo resultado. La carga se olvida al terminar, así que los errores y los
+ * vacíos no se guardan: la siguiente petición vuelve a cargar
+ * @see Cache
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Carga la clave o se une a la carga en curso de esa clave
+     * @param key - key
+     * @param loader crea la carga; solo se usa si no hay otra en curso
+     */
+    public Mono<V> load(K key, Supplier<? extends Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> {
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> shared = loader.get()
+                    .doFinally(signal -> inFlight.remove(k, self.get()))
+                    .cache();
+            self.set(shared);
+            return shared;
+        }));
+    }
+
+    /**
+     * Número de claves con una carga en curso
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,60 @@
+package org.docker.server.services.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de una cache sin cerrojos: cada hilo suma en su propia celda de LongAdder
+ * y solo al pedir la foto se suman todas
+ * @see CacheStats
+ */
+public class StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    public void recordHit() {
+        hitCount.increment();
+    }
+
+    public void recordMiss() {
+        missCount.increment();
+    }
+
+    /**
+     * @param loadNanos tiempo de la carga
+     */
+    public void recordLoadSuccess(long loadNanos) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadNanos);
+    }
+
+    /**
+     * @param loadNanos tiempo de la carga
+     */
+    public void recordLoadFailure(long loadNanos) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadNanos);
+    }
+
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    public void recordExpiration() {
+        expirationCount.increment();
+    }
+
+    /**
+     * Foto de los contadores. No es atómica respecto a las escrituras concurrentes,
+     * pero cada contador es exacto en el momento de leerlo
+     */
+    public CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), expirationCount.sum());
+    }
+}
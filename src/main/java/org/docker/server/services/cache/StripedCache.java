@@ -0,0 +1,533 @@
+package org.docker.server.services.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Mapa acotado y thread-safe repartido en tramos (stripes). Cada clave cae siempre en el mismo
+ * tramo y cada tramo tiene su propio cerrojo, su propia política de expulsión y una parte de la
+ * capacidad, así que los hilos que usan claves de tramos distintos no se esperan entre sí.
+ * Las capacidades de los tramos suman exactamente maxSize, por lo que nunca se supera.
+ * La política se aplica por tramo: el LRU/LFU resultante es aproximado respecto al global.
+ * Opcionalmente las entradas caducan un tiempo después de escribirse (expireAfterWrite) y/o
+ * de su último acceso (expireAfterAccess); cada tramo lleva los vencimientos en una TimerWheel.
+ * También puede avisar de las entradas que se siguen leyendo tras refreshAfterWrite para recargarlas antes de que caduquen
+ * @see EvictionPolicy
+ * @see TimerWheel
+ */
+public class StripedCache<K, V> {
+
+    private final int maxSize;
+
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    private final LongSupplier ticker;
+    private final long origin;
+
+    private final BiConsumer<K, V> evictionListener;
+
+    // Refresco anticipado (cero = desactivado). Se configura después de construir la caché
+    private volatile long refreshAfterWriteNanos;
+    private volatile BiConsumer<K, V> refreshListener = (key, value) -> {};
+
+    // Expulsiones y caducidades las anota la propia caché; aciertos, fallos y cargas, quien la usa
+    private final StatsCounter stats = new StatsCounter();
+
+    private final Stripe<K, V>[] stripes;
+
+    /**
+     * Constructor de StripedCache sin caducidad
+     * @param maxSize número máximo de entradas
+     * @param stripes número de tramos (se reduce a maxSize si es mayor)
+     * @param policyFactory crea la política de cada tramo a partir de su capacidad
+     */
+    public StripedCache(int maxSize, int stripes, IntFunction<? extends EvictionPolicy<K>> policyFactory) {
+        this(maxSize, stripes, policyFactory, Duration.ZERO, Duration.ZERO, System::nanoTime);
+    }
+
+    /**
+     * Constructor de StripedCache
+     * @param maxSize número máximo de entradas
+     * @param stripes número de tramos (se reduce a maxSize si es mayor)
+     * @param policyFactory crea la política de cada tramo a partir de su capacidad
+     * @param expireAfterWrite tiempo de vida desde que se escribe la entrada (cero para no caducar)
+     * @param expireAfterAccess tiempo de vida desde el último acceso (cero para no caducar)
+     * @param ticker reloj en nanosegundos
+     */
+    public StripedCache(int maxSize, int stripes, IntFunction<? extends EvictionPolicy<K>> policyFactory,
+                        Duration expireAfterWrite, Duration expireAfterAccess, LongSupplier ticker) {
+        this(maxSize, stripes, policyFactory, expireAfterWrite, expireAfterAccess, ticker, (key, value) -> {});
+    }
+
+    /**
+     * Constructor de StripedCache
+     * @param maxSize número máximo de entradas
+     * @param stripes número de tramos (se reduce a maxSize si es mayor)
+     * @param policyFactory crea la política de cada tramo a partir de su capacidad
+     * @param expireAfterWrite tiempo de vida desde que se escribe la entrada (cero para no caducar)
+     * @param expireAfterAccess tiempo de vida desde el último acceso (cero para no caducar)
+     * @param ticker reloj en nanosegundos
+     * @param evictionListener recibe las entradas que salen solas, por capacidad o por caducidad.
+     *                         Se llama con el cerrojo del tramo cogido: debe ser rápido y no usar la caché
+     */
+    @SuppressWarnings("unchecked")
+    public StripedCache(int maxSize, int stripes, IntFunction<? extends EvictionPolicy<K>> policyFactory,
+                        Duration expireAfterWrite, Duration expireAfterAccess, LongSupplier ticker,
+                        BiConsumer<K, V> evictionListener) {
+        if (maxSize <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("maxSize y stripes deben ser mayores que 0");
+        }
+        this.maxSize = maxSize;
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.expireAfterAccessNanos = expireAfterAccess.toNanos();
+        this.ticker = ticker;
+        this.evictionListener = evictionListener;
+        // Los tiempos se miden desde la creación para que siempre sean positivos
+        this.origin = ticker.getAsLong();
+        boolean expires = expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+
+        int count = Math.min(stripes, maxSize);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            // Reparte el resto entre los primeros tramos para que la suma sea maxSize
+            int capacity = maxSize / count + (i < maxSize % count ? 1 : 0);
+            this.stripes[i] = new Stripe<>(this, capacity, policyFactory.apply(capacity), expires ? new TimerWheel<>(0) : null);
+        }
+    }
+
+    /**
+     * Obtiene un valor o null si no está o ha caducado
+     * @param key - key
+     */
+    public V get(K key) {
+        return stripeFor(key).get(key);
+    }
+
+    /**
+     * Activa el refresco anticipado: cada get que encuentra una entrada escrita hace al menos refreshAfterWrite
+     * avisa al listener con el valor que devuelve, para que lo recargue en segundo plano (p. ej. con replace).
+     * El listener se llama fuera del cerrojo, en el hilo del get, y en cada lectura: debe descartar los repetidos
+     * @param refreshAfterWrite tiempo desde la escritura a partir del cual se avisa (cero para desactivarlo)
+     * @param refreshListener recibe la clave y el valor actual
+     */
+    public void refreshAfterWrite(Duration refreshAfterWrite, BiConsumer<K, V> refreshListener) {
+        this.refreshListener = refreshListener;
+        this.refreshAfterWriteNanos = refreshAfterWrite.toNanos();
+    }
+
+    /**
+     * Guarda un valor, expulsando otra entrada del tramo si está lleno
+     * @param key - key
+     * @param value - value
+     * @return el valor anterior o null
+     */
+    public V put(K key, V value) {
+        return stripeFor(key).put(key, value);
+    }
+
+    /**
+     * Sustituye un valor solo si la entrada sigue teniendo exactamente el valor esperado (misma instancia).
+     * Cuenta como una escritura nueva: reinicia su caducidad
+     * @param key - key
+     * @param expected valor que se leyó
+     * @param value valor nuevo
+     * @return si se ha sustituido
+     */
+    public boolean replace(K key, V expected, V value) {
+        return stripeFor(key).replace(key, expected, value);
+    }
+
+    /**
+     * Elimina un valor
+     * @param key - key
+     * @return el valor eliminado o null
+     */
+    public V remove(K key) {
+        return stripeFor(key).remove(key);
+    }
+
+    /**
+     * Elimina un valor solo si la entrada sigue teniendo exactamente el valor esperado (misma instancia)
+     * @param key - key
+     * @param expected valor que se leyó
+     * @return si se ha eliminado
+     */
+    public boolean remove(K key, V expected) {
+        return stripeFor(key).remove(key, expected);
+    }
+
+    /**
+     * Elimina las entradas que cumplen la condición, tramo a tramo
+     * @param predicate condición
+     * @return número de entradas eliminadas
+     */
+    public int removeIf(BiPredicate<? super K, ? super V> predicate) {
+        int removed = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            removed += stripe.removeIf(predicate);
+        }
+        return removed;
+    }
+
+    /**
+     * Elimina las entradas caducadas avanzando la rueda de cada tramo.
+     * Las caducadas tampoco se devuelven nunca en get aunque aún no se haya llamado a este método
+     * @return número de entradas eliminadas
+     */
+    public int cleanUp() {
+        int removed = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            removed += stripe.cleanUp();
+        }
+        return removed;
+    }
+
+    /**
+     * Elimina todas las entradas
+     */
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Número de entradas. Con escrituras concurrentes es aproximado, pero nunca mayor que maxSize
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * Las claves más leídas con su número de lecturas desde que se guardaron, de más a menos leídas
+     * @param limit número máximo de claves
+     */
+    public Map<K, Long> hottest(int limit) {
+        Map<K, Long> hottest = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return hottest;
+        }
+        // Montículo de mínimos con las limit más leídas vistas hasta ahora
+        PriorityQueue<Map.Entry<K, Long>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.forEachAccesses((key, accesses) -> {
+                top.add(Map.entry(key, accesses));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            });
+        }
+        List<Map.Entry<K, Long>> sorted = new ArrayList<>(top);
+        sorted.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+        sorted.forEach(entry -> hottest.put(entry.getKey(), entry.getValue()));
+        return hottest;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Contadores de la caché
+     */
+    public StatsCounter stats() {
+        return stats;
+    }
+
+    private long now() {
+        return ticker.getAsLong() - origin;
+    }
+
+    /**
+     * Solo se consulta el reloj si hace falta para caducar o refrescar
+     */
+    private boolean tracksTime(TimerWheel<K> timers) {
+        return timers != null || refreshAfterWriteNanos > 0;
+    }
+
+    /**
+     * Momento en que caduca una entrada según cuándo se escribió y cuándo se usó por última vez
+     */
+    private long deadline(long writeTime, long accessTime) {
+        long deadline = Long.MAX_VALUE;
+        if (expireAfterWriteNanos > 0) {
+            deadline = writeTime + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            deadline = Math.min(deadline, accessTime + expireAfterAccessNanos);
+        }
+        return deadline;
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int h = key.hashCode();
+        // Mezcla los bits altos para que claves consecutivas no caigan siempre en los mismos tramos
+        h ^= (h >>> 16);
+        return stripes[Math.floorMod(h * 0x9E3779B9, stripes.length)];
+    }
+
+    /**
+     * Entrada de la caché: es a la vez su propio temporizador en la rueda
+     */
+    private static final class Node<K, V> extends TimerWheel.Timer<K> {
+
+        private V value;
+        private long writeTime;
+        private long accesses;
+
+        private Node(K key, V value) {
+            super(key);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Tramo: un HashMap con su política, su rueda de vencimientos y su cerrojo
+     */
+    private static final class Stripe<K, V> {
+
+        private final StripedCache<K, V> owner;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<K, Node<K, V>> map = new HashMap<>();
+        private final EvictionPolicy<K> policy;
+        private final TimerWheel<K> timers;
+        private final int capacity;
+
+        private volatile int size;
+
+        private Stripe(StripedCache<K, V> owner, int capacity, EvictionPolicy<K> policy, TimerWheel<K> timers) {
+            this.owner = owner;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.timers = timers;
+        }
+
+        private V get(K key) {
+            long refreshNanos = owner.refreshAfterWriteNanos;
+            V value;
+            boolean refresh;
+            lock.lock();
+            try {
+                Node<K, V> node = map.get(key);
+                if (node == null) {
+                    policy.recordMiss(key);
+                    return null;
+                }
+                long now = owner.tracksTime(timers) ? owner.now() : 0;
+                if (timers != null) {
+                    if (node.deadline <= now) {
+                        removeNode(node);
+                        owner.stats.recordExpiration();
+                        owner.evictionListener.accept(key, node.value);
+                        policy.recordMiss(key);
+                        return null;
+                    }
+                    if (owner.expireAfterAccessNanos > 0) {
+                        node.deadline = owner.deadline(node.writeTime, now);
+                        timers.reschedule(node);
+                    }
+                }
+                policy.recordAccess(key);
+                node.accesses++;
+                value = node.value;
+                refresh = refreshNanos > 0 && now - node.writeTime >= refreshNanos;
+            } finally {
+                lock.unlock();
+            }
+            if (refresh) {
+                owner.refreshListener.accept(key, value);
+            }
+            return value;
+        }
+
+        private V put(K key, V value) {
+            lock.lock();
+            try {
+                long now = owner.tracksTime(timers) ? owner.now() : 0;
+                Node<K, V> node = map.get(key);
+                if (node != null) {
+                    V previous = node.value;
+                    write(node, value, now);
+                    policy.recordAccess(key);
+                    return previous;
+                }
+                node = new Node<>(key, value);
+                map.put(key, node);
+                node.writeTime = now;
+                if (timers != null) {
+                    node.deadline = owner.deadline(now, now);
+                    timers.schedule(node);
+                }
+                policy.recordInsert(key);
+                while (map.size() > capacity) {
+                    K victim = policy.evict();
+                    if (victim == null) {
+                        break;
+                    }
+                    Node<K, V> evicted = map.remove(victim);
+                    if (evicted != null) {
+                        if (timers != null) {
+                            timers.deschedule(evicted);
+                        }
+                        owner.stats.recordEviction();
+                        owner.evictionListener.accept(victim, evicted.value);
+                    }
+                }
+                size = map.size();
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean replace(K key, V expected, V value) {
+            lock.lock();
+            try {
+                Node<K, V> node = map.get(key);
+                if (node == null || node.value != expected) {
+                    return false;
+                }
+                write(node, value, owner.tracksTime(timers) ? owner.now() : 0);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean remove(K key, V expected) {
+            lock.lock();
+            try {
+                Node<K, V> node = map.get(key);
+                if (node == null || node.value != expected) {
+                    return false;
+                }
+                removeNode(node);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private V remove(K key) {
+            lock.lock();
+            try {
+                Node<K, V> node = map.get(key);
+                if (node == null) {
+                    return null;
+                }
+                removeNode(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int removeIf(BiPredicate<? super K, ? super V> predicate) {
+            lock.lock();
+            try {
+                int removed = 0;
+                Iterator<Node<K, V>> it = map.values().iterator();
+                while (it.hasNext()) {
+                    Node<K, V> node = it.next();
+                    if (predicate.test(node.key(), node.value)) {
+                        it.remove();
+                        if (timers != null) {
+                            timers.deschedule(node);
+                        }
+                        policy.recordRemoval(node.key());
+                        removed++;
+                    }
+                }
+                size = map.size();
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int cleanUp() {
+            if (timers == null) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                int before = map.size();
+                timers.advance(owner.now(), timer -> {
+                    Node<K, V> expired = map.remove(timer.key());
+                    policy.recordRemoval(timer.key());
+                    if (expired != null) {
+                        owner.stats.recordExpiration();
+                        owner.evictionListener.accept(expired.key(), expired.value);
+                    }
+                });
+                size = map.size();
+                return before - size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void forEachAccesses(BiConsumer<K, Long> action) {
+            lock.lock();
+            try {
+                map.values().forEach(node -> action.accept(node.key(), node.accesses));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                policy.clear();
+                if (timers != null) {
+                    timers.clear();
+                }
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Cambia el valor de una entrada existente y reinicia su caducidad (con el cerrojo cogido)
+         */
+        private void write(Node<K, V> node, V value, long now) {
+            node.value = value;
+            node.writeTime = now;
+            if (timers != null) {
+                node.deadline = owner.deadline(now, now);
+                timers.reschedule(node);
+            }
+        }
+
+        /**
+         * Quita una entrada del mapa, de la rueda y de la política (con el cerrojo cogido)
+         */
+        private void removeNode(Node<K, V> node) {
+            map.remove(node.key());
+            if (timers != null) {
+                timers.deschedule(node);
+            }
+            policy.recordRemoval(node.key());
+            size = map.size();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.docker.server.services.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Rueda de temporizadores jerárquica para caducar entradas en tiempo amortizado O(1).
+ * Cada nivel es un array de cubos (listas doblemente enlazadas) que cubre un intervalo cada vez
+ * mayor: ~1 s, ~1 min, ~1 h y ~1 día por cubo. Programar o cancelar un temporizador es
+ * enlazarlo o desenlazarlo de su cubo; al avanzar el reloj solo se recorren los cubos por los
+ * que ha pasado el tiempo, y los temporizadores que aún no han vencido bajan a un nivel más fino.
+ * No es thread-safe: se usa dentro del cerrojo del tramo
+ * @see StripedCache
+ */
+public final class TimerWheel<K> {
+
+    // Duración de un cubo de cada nivel en nanosegundos: 2^30 (~1,07 s), 2^36 (~1,15 min), 2^42 (~1,22 h), 2^48 (~3,3 días)
+    private static final int[] SHIFT = {30, 36, 42, 48};
+    private static final int[] BUCKETS = {64, 64, 64, 64};
+
+    private final Timer<K>[][] wheel;
+
+    private long nanos;
+
+    /**
+     * Constructor de TimerWheel
+     * @param nanos instante actual según el reloj de la caché
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long nanos) {
+        this.nanos = nanos;
+        this.wheel = new Timer[SHIFT.length][];
+        for (int level = 0; level < SHIFT.length; level++) {
+            wheel[level] = new Timer[BUCKETS[level]];
+            for (int bucket = 0; bucket < BUCKETS[level]; bucket++) {
+                wheel[level][bucket] = Timer.sentinel();
+            }
+        }
+    }
+
+    /**
+     * Programa un temporizador para su deadline
+     * @param timer temporizador no programado
+     */
+    public void schedule(Timer<K> timer) {
+        Timer<K> sentinel = bucketFor(timer.deadline);
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * Vuelve a programar un temporizador cuyo deadline ha cambiado
+     * @param timer temporizador
+     */
+    public void reschedule(Timer<K> timer) {
+        deschedule(timer);
+        schedule(timer);
+    }
+
+    /**
+     * Cancela un temporizador (no hace nada si no estaba programado)
+     * @param timer temporizador
+     */
+    public void deschedule(Timer<K> timer) {
+        if (timer.next != null) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.next = null;
+            timer.prev = null;
+        }
+    }
+
+    /**
+     * Avanza el reloj y entrega los temporizadores vencidos
+     * @param now instante actual
+     * @param onExpired recibe cada temporizador vencido, ya desprogramado
+     */
+    public void advance(long now, Consumer<Timer<K>> onExpired) {
+        long previous = nanos;
+        nanos = now;
+        for (int level = 0; level < SHIFT.length; level++) {
+            long previousTicks = previous >>> SHIFT[level];
+            long currentTicks = now >>> SHIFT[level];
+            if (currentTicks <= previousTicks) {
+                // Si este nivel no ha cambiado de cubo, los superiores tampoco
+                break;
+            }
+            expire(level, previousTicks, currentTicks, now, onExpired);
+        }
+    }
+
+    /**
+     * Desprograma todos los temporizadores
+     */
+    public void clear() {
+        for (Timer<K>[] level : wheel) {
+            for (Timer<K> sentinel : level) {
+                Timer<K> timer = sentinel.next;
+                while (timer != sentinel) {
+                    Timer<K> next = timer.next;
+                    timer.next = null;
+                    timer.prev = null;
+                    timer = next;
+                }
+                sentinel.next = sentinel;
+                sentinel.prev = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Recorre los cubos de un nivel por los que ha pasado el reloj
+     */
+    private void expire(int level, long previousTicks, long currentTicks, long now, Consumer<Timer<K>> onExpired) {
+        Timer<K>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        long steps = Math.min(currentTicks - previousTicks + 1, buckets.length);
+        for (long i = 0; i < steps; i++) {
+            Timer<K> sentinel = buckets[(int) ((previousTicks + i) & mask)];
+            // Se separa la lista del cubo antes de recorrerla: los que se reprograman pueden volver a él
+            Timer<K> timer = sentinel.next;
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+            while (timer != sentinel) {
+                Timer<K> next = timer.next;
+                timer.next = null;
+                timer.prev = null;
+                if (timer.deadline <= now) {
+                    onExpired.accept(timer);
+                } else {
+                    schedule(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * Cubo que corresponde a un deadline: el nivel más fino cuyo alcance cubre el tiempo que falta
+     */
+    private Timer<K> bucketFor(long deadline) {
+        // Uno ya vencido va al cubo actual para que salga en el siguiente avance
+        long target = Math.max(deadline, nanos);
+        long delay = target - nanos;
+        for (int level = 0; level < SHIFT.length - 1; level++) {
+            if (delay < (1L << SHIFT[level + 1])) {
+                return wheel[level][(int) ((target >>> SHIFT[level]) & (BUCKETS[level] - 1))];
+            }
+        }
+        int last = SHIFT.length - 1;
+        return wheel[last][(int) ((target >>> SHIFT[last]) & (BUCKETS[last] - 1))];
+    }
+
+    /**
+     * Temporizador de una clave. Las entradas de la caché lo extienden para no crear otro objeto
+     */
+    public static class Timer<K> {
+
+        final K key;
+        long deadline;
+
+        Timer<K> prev;
+        Timer<K> next;
+
+        public Timer(K key) {
+            this.key = key;
+        }
+
+        private static <K> Timer<K> sentinel() {
+            Timer<K> sentinel = new Timer<>(null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        public K key() {
+            return key;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+    }
+}
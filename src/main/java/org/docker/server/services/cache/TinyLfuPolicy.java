@@ -0,0 +1,123 @@
+package org.docker.server.services.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Política W-TinyLFU. Las claves nuevas entran en una ventana LRU pequeña (1% de la capacidad);
+ * las que salen de ella son candidatas a la zona principal (SLRU: probation + protected) y solo
+ * entran si su frecuencia estimada supera a la de la víctima de probation. Así un recorrido
+ * de una sola vez (un GETALL, una importación) no expulsa a los funkos que se piden a menudo
+ * @see FrequencySketch
+ * @see EvictionPolicy
+ */
+public class TinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+    private final int windowMax;
+    private final int protectedMax;
+
+    private final FrequencySketch<K> sketch;
+
+    // En orden de acceso: la primera clave es siempre la usada hace más tiempo
+    private final Map<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, Boolean> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Última clave que pasó de la ventana a probation y aún no ha competido por quedarse
+    private K candidate;
+
+    /**
+     * Constructor de TinyLfuPolicy
+     * @param capacity capacidad del tramo al que se aplica
+     */
+    public TinyLfuPolicy(int capacity) {
+        this.windowMax = Math.max(1, capacity / 100);
+        int mainMax = Math.max(0, capacity - windowMax);
+        this.protectedMax = mainMax * 8 / 10;
+        this.sketch = new FrequencySketch<>(capacity);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        sketch.increment(key);
+        if (window.containsKey(key)) {
+            window.get(key);
+        } else if (probation.remove(key) != null) {
+            // Segundo acceso en la zona principal: pasa a protected
+            if (key.equals(candidate)) {
+                candidate = null;
+            }
+            protectedSegment.put(key, Boolean.TRUE);
+            if (protectedSegment.size() > protectedMax) {
+                K demoted = removeEldest(protectedSegment);
+                probation.put(demoted, Boolean.TRUE);
+            }
+        } else {
+            protectedSegment.get(key);
+        }
+    }
+
+    @Override
+    public void recordMiss(K key) {
+        sketch.increment(key);
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        // La petición que ha provocado la inserción ya se contó en recordMiss
+        window.put(key, Boolean.TRUE);
+        if (window.size() > windowMax) {
+            candidate = removeEldest(window);
+            probation.put(candidate, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+        if (key.equals(candidate)) {
+            candidate = null;
+        }
+    }
+
+    @Override
+    public K evict() {
+        if (probation.isEmpty()) {
+            // Sin zona de prueba se expulsa el más antiguo de protected o de la ventana
+            return !protectedSegment.isEmpty() ? removeEldest(protectedSegment) : removeEldest(window);
+        }
+        K victim = probation.keySet().iterator().next();
+        K challenger = candidate;
+        candidate = null;
+        if (challenger == null || challenger.equals(victim)) {
+            probation.remove(victim);
+            return victim;
+        }
+        // El candidato solo se queda si se ha pedido más veces que la víctima
+        K loser = sketch.frequency(challenger) > sketch.frequency(victim) ? victim : challenger;
+        probation.remove(loser);
+        return loser;
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        sketch.clear();
+        candidate = null;
+    }
+
+    private K removeEldest(Map<K, Boolean> segment) {
+        Iterator<K> it = segment.keySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        K eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+}
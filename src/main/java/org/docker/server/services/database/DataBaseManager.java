@@ -6,6 +6,7 @@ import io.r2dbc.pool.ConnectionPoolConfiguration;
 import io.r2dbc.spi.Connection;
 import io.r2dbc.spi.ConnectionFactories;
 import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
 import io.r2dbc.spi.Statement;
 import org.docker.common.utils.PropertiesReader;
 import org.slf4j.Logger;
@@ -15,6 +16,10 @@ import reactor.core.publisher.Mono;
 import java.io.*;
 import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -25,41 +30,95 @@ import java.util.stream.Collectors;
  */
 public class DataBaseManager {
 
-    private static DataBaseManager instance;
+    private static volatile DataBaseManager instance;
+    // ReentrantLock en vez de synchronized: initTables() bloquea y fijaría el hilo portador de un hilo virtual
+    private static final Lock lock = new ReentrantLock();
     private Connection conn;
 
     private String url;
     private Boolean initCreateTables;
+    private int batchSize;
+    private int queryCacheSize;
+
+    private int poolInitialSize;
+    private int poolMaxSize;
+    private Duration poolMaxIdleTime;
+    private Duration poolMaxAcquireTime;
+    private Duration poolMaxLifeTime;
+    private String poolValidationQuery;
+    private boolean poolWarmUp;
 
     private final ConnectionFactory connectionFactory;
     private final ConnectionPool pool;
+    private final ConnectionFactory timedPool;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireFailureCount = new LongAdder();
+    private final LongAdder totalAcquireTime = new LongAdder();
+    private final LongAccumulator maxAcquireTime = new LongAccumulator(Long::max, 0);
+    private final LongAdder totalAcquireFailureTime = new LongAdder();
     private final Logger logger = LoggerFactory.getLogger(DataBaseManager.class);
 
     private DataBaseManager(){
         initConfig();
 
-        connectionFactory = ConnectionFactories.get(url);
+        connectionFactory = ConnectionFactories.get(withQueryCache(url, queryCacheSize));
 
-        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration
+        ConnectionPoolConfiguration.Builder configuration = ConnectionPoolConfiguration
                 .builder(connectionFactory)
-                .maxIdleTime(Duration.ofMillis(1000))
-                .maxSize(20)
-                .build();
+                .initialSize(poolInitialSize)
+                .maxSize(poolMaxSize)
+                .maxIdleTime(poolMaxIdleTime);
+        // Sin valor (0) se quedan los del pool: sin límite de espera ni de vida y validación con Connection.validate()
+        if (!poolMaxAcquireTime.isZero()) {
+            configuration.maxAcquireTime(poolMaxAcquireTime);
+        }
+        if (!poolMaxLifeTime.isZero()) {
+            configuration.maxLifeTime(poolMaxLifeTime);
+        }
+        if (!poolValidationQuery.isBlank()) {
+            configuration.validationQuery(poolValidationQuery);
+        }
 
-        pool = new ConnectionPool(configuration);
+        pool = new ConnectionPool(configuration.build());
+        timedPool = new TimedConnectionFactory();
 
         if(initCreateTables){
             this.initTables();
         }
+        if (poolWarmUp) {
+            warmUpPool();
+        }
+    }
+
+    /**
+     * Abre al arrancar las initialSize conexiones del pool, para que las primeras peticiones no paguen
+     * el coste de abrirlas. Si falla se sigue: se abrirán cuando se pidan
+     */
+    private void warmUpPool() {
+        Integer opened = pool.warmup()
+                .onErrorResume(e -> {
+                    logger.error("Error al abrir las conexiones iniciales del pool: " + e.getMessage());
+                    return Mono.just(0);
+                })
+                .block();
+        logger.debug("Pool de conexiones precalentado con {} conexiones", opened);
     }
 
     /**
      * Obtenemos instancia de la base de datos
      * @return this
      */
-    public synchronized static DataBaseManager getInstance(){
+    public static DataBaseManager getInstance(){
         if(instance == null){
-            instance = new DataBaseManager();
+            lock.lock();
+            try {
+                if(instance == null){
+                    instance = new DataBaseManager();
+                }
+            } finally {
+                lock.unlock();
+            }
         }
         return instance;
     }
@@ -68,17 +127,22 @@ public class DataBaseManager {
     /**
      * Inicializa las tablas de la base de datos
      */
-    public synchronized void initTables() {
-        logger.debug("Inicializando tablas de la base de datos");
-        executeScript("init.sql").block();
-        logger.debug("Tabla de la base de datos inicializada");
+    public void initTables() {
+        lock.lock();
+        try {
+            logger.debug("Inicializando tablas de la base de datos");
+            executeScript("init.sql").block();
+            logger.debug("Tabla de la base de datos inicializada");
+        } finally {
+            lock.unlock();
+        }
     }
 
 
     /**
      * Carga las propiedades de la base de datos
      */
-    private synchronized void initConfig() {
+    private void initConfig() {
 
         logger.debug("Cargando propiedades(conf) de la base de datos");
         //String propertiesFile = ClassLoader.getSystemResource("config.properties").getFile();
@@ -89,6 +153,15 @@ public class DataBaseManager {
             //props.load(new FileInputStream(propertiesFile));
             url = props.getProperty("database.url");
             initCreateTables = props.getProperty("database.initTables").equals("true");
+            batchSize = Integer.parseInt(props.getProperty("database.batchSize", "500"));
+            queryCacheSize = Integer.parseInt(props.getProperty("database.queryCacheSize", "0"));
+            poolInitialSize = Integer.parseInt(props.getProperty("database.pool.initialSize", "10"));
+            poolMaxSize = Integer.parseInt(props.getProperty("database.pool.maxSize", "20"));
+            poolMaxIdleTime = Duration.ofMillis(Long.parseLong(props.getProperty("database.pool.maxIdleTimeMillis", "1000")));
+            poolMaxAcquireTime = Duration.ofMillis(Long.parseLong(props.getProperty("database.pool.maxAcquireTimeMillis", "0")));
+            poolMaxLifeTime = Duration.ofMillis(Long.parseLong(props.getProperty("database.pool.maxLifeTimeMillis", "0")));
+            poolValidationQuery = props.getProperty("database.pool.validationQuery", "").trim();
+            poolWarmUp = props.getProperty("database.pool.warmUp", "false").trim().equals("true");
             url = props.getProperty("database.url");
 
             System.out.println(url);
@@ -101,6 +174,24 @@ public class DataBaseManager {
     }
 
 
+    /**
+     * Añade a la url la cache de sentencias preparadas de H2 (QUERY_CACHE_SIZE, por sesión).
+     * Ni r2dbc-h2 ni r2dbc-pool guardan las sentencias, así que así una consulta que se repite en
+     * la misma conexión del pool no se vuelve a analizar. Si la url ya la trae se deja como está
+     * @param url
+     * @param size sentencias por conexión (0 deja el valor por defecto de H2)
+     */
+    private static String withQueryCache(String url, int size) {
+        if (size <= 0 || url.contains("QUERY_CACHE_SIZE")) {
+            return url;
+        }
+        int options = url.indexOf("options=");
+        if (options >= 0 && url.indexOf('&', options) < 0) {
+            return url + ";QUERY_CACHE_SIZE=" + size;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "options=QUERY_CACHE_SIZE=" + size;
+    }
+
     /**
      * Ejecuta un script de la base de datos
      * @param scriptSqlFile
@@ -140,6 +231,70 @@ public class DataBaseManager {
         return this.pool;
     }
 
+    /**
+     * Obtiene las conexiones del pool midiendo cuánto se espera por cada una (ver getPoolStats)
+     * @return ConnectionFactory sobre el pool
+     */
+    public ConnectionFactory getConnectionFactory() {
+        return this.timedPool;
+    }
+
+    /**
+     * Estado del pool y esperas de las conexiones pedidas con getConnectionFactory
+     * @return PoolStats
+     */
+    public PoolStats getPoolStats() {
+        int acquired = 0, allocated = 0, idle = 0, pending = 0, maxAllocated = 0;
+        var metrics = pool.getMetrics();
+        if (metrics.isPresent()) {
+            acquired = metrics.get().acquiredSize();
+            allocated = metrics.get().allocatedSize();
+            idle = metrics.get().idleSize();
+            pending = metrics.get().pendingAcquireSize();
+            maxAllocated = metrics.get().getMaxAllocatedSize();
+        }
+        return new PoolStats(acquired, allocated, idle, pending, maxAllocated,
+                acquireCount.sum(), acquireFailureCount.sum(), totalAcquireTime.sum(), maxAcquireTime.get(),
+                totalAcquireFailureTime.sum());
+    }
 
+    /**
+     * Obtiene el número de filas por lote en las inserciones masivas
+     * @return batchSize
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
 
+    /**
+     * Pide las conexiones al pool y anota cuánto tarda en darlas (o en fallar, p. ej. al superar maxAcquireTime)
+     */
+    private class TimedConnectionFactory implements ConnectionFactory {
+
+        @Override
+        public Mono<Connection> create() {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return pool.create()
+                        .doOnSuccess(connection -> recordAcquire(System.nanoTime() - start, connection != null))
+                        .doOnError(e -> recordAcquire(System.nanoTime() - start, false));
+            });
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return pool.getMetadata();
+        }
+
+        private void recordAcquire(long nanos, boolean acquired) {
+            if (acquired) {
+                acquireCount.increment();
+                totalAcquireTime.add(nanos);
+                maxAcquireTime.accumulate(nanos);
+            } else {
+                acquireFailureCount.increment();
+                totalAcquireFailureTime.add(nanos);
+            }
+        }
+    }
 }
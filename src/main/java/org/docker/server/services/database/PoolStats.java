@@ -0,0 +1,35 @@
+package org.docker.server.services.database;
+
+/**
+ * Foto del estado del pool de conexiones. Los tiempos van en nanosegundos
+ * @param acquiredSize conexiones prestadas ahora mismo
+ * @param allocatedSize conexiones abiertas (prestadas y libres)
+ * @param idleSize conexiones libres
+ * @param pendingAcquireSize peticiones esperando una conexión
+ * @param maxAllocatedSize máximo de conexiones abiertas a la vez
+ * @param acquireCount conexiones obtenidas del pool
+ * @param acquireFailureCount peticiones de conexión que fallaron o superaron maxAcquireTime
+ * @param totalAcquireTime tiempo total esperando las conexiones obtenidas
+ * @param maxAcquireTime espera más larga hasta obtener una conexión
+ * @param totalAcquireFailureTime tiempo total de las peticiones que fallaron
+ * @see DataBaseManager
+ */
+public record PoolStats(int acquiredSize, int allocatedSize, int idleSize, int pendingAcquireSize, int maxAllocatedSize,
+                        long acquireCount, long acquireFailureCount, long totalAcquireTime, long maxAcquireTime,
+                        long totalAcquireFailureTime) {
+
+    /**
+     * Tiempo medio esperando una conexión, solo de las que se obtuvieron: un fallo por
+     * maxAcquireTime no debe esconder la espera real
+     */
+    public double averageAcquireLatency() {
+        return acquireCount == 0 ? 0.0 : (double) totalAcquireTime / acquireCount;
+    }
+
+    /**
+     * Tiempo medio hasta que falla una petición de conexión
+     */
+    public double averageAcquireFailureTime() {
+        return acquireFailureCount == 0 ? 0.0 : (double) totalAcquireFailureTime / acquireFailureCount;
+    }
+}
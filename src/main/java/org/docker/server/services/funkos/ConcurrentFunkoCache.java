@@ -0,0 +1,432 @@
+package org.docker.server.services.funkos;
+
+import org.docker.common.models.Funko;
+import org.docker.server.exceptions.cache.CachePutNullKeyException;
+import org.docker.server.exceptions.cache.CachePutNullValueException;
+import org.docker.server.services.cache.Cache;
+import org.docker.server.services.cache.CacheStats;
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.cache.StripedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Implementacion thread-safe de FunkoCache para compartir entre todos los ClientHandler.
+ * Usa un StripedCache (LRU o W-TinyLFU por tramo) en lugar de un LinkedHashMap sin sincronizar,
+ * en el que incluso un get (orden de acceso) modifica la estructura
+ * @see FunkoCache
+ * @see StripedCache
+ * @author daniel
+ */
+public class ConcurrentFunkoCache implements FunkoCache {
+
+    // Caducidad por defecto, la misma que tenía FunkoCacheImpl
+    public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofSeconds(90);
+
+    // Búsquedas fallidas que se recuerdan por defecto y durante cuánto tiempo
+    public static final int DEFAULT_MISSING_MAX_SIZE = 10_000;
+    public static final Duration DEFAULT_MISSING_TTL = Duration.ofSeconds(5);
+
+    private final Logger logger = LoggerFactory.getLogger(ConcurrentFunkoCache.class);
+
+    private final StripedCache<Integer, Funko> cache;
+
+    // Índice secundario cod -> id. Se mantiene en put, delete, expulsión y caducidad,
+    // y getByCod comprueba además que la entrada sigue siendo la de ese cod
+    private final Map<UUID, Integer> codIndex = new ConcurrentHashMap<>();
+
+    // Ids (Integer) y cods (UUID) que se sabe que no existen, con su propio tamaño y caducidad
+    // para que una ráfaga de búsquedas fallidas no expulse funkos. Es null si está desactivada
+    private final StripedCache<Object, Boolean> missing;
+
+    private final ScheduledExecutorService cleaner;
+
+    // Refresco anticipado: recarga de la base de datos, ids que se están recargando y cuántas recargas
+    // pueden ir a la vez, para que muchos funkos calientes no acaparen el pool de conexiones
+    private volatile Function<Integer, Mono<Funko>> refresher;
+    private final Set<Integer> refreshing = ConcurrentHashMap.newKeySet();
+    private volatile Semaphore refreshPermits;
+
+    /**
+     * Constructor de ConcurrentFunkoCache con LRU, un tramo por procesador y caducidad a los 90 segundos de escribirse
+     * @param maxSize
+     * @param initDelay
+     * @param period
+     * @param timeUnit
+     */
+    public ConcurrentFunkoCache(int maxSize, int initDelay, int period, TimeUnit timeUnit) {
+        this(maxSize, Runtime.getRuntime().availableProcessors(), initDelay, period, timeUnit);
+    }
+
+    /**
+     * Constructor de ConcurrentFunkoCache con LRU y caducidad a los 90 segundos de escribirse
+     * @param maxSize
+     * @param stripes número de tramos con cerrojo propio
+     * @param initDelay
+     * @param period
+     * @param timeUnit
+     */
+    public ConcurrentFunkoCache(int maxSize, int stripes, int initDelay, int period, TimeUnit timeUnit) {
+        this(maxSize, stripes, CachePolicy.LRU, DEFAULT_EXPIRE_AFTER_WRITE, Duration.ZERO, initDelay, period, timeUnit);
+    }
+
+    /**
+     * Constructor de ConcurrentFunkoCache
+     * @param maxSize
+     * @param stripes número de tramos con cerrojo propio
+     * @param policy política de expulsión
+     * @param expireAfterWrite tiempo de vida desde que se guarda (cero para no caducar)
+     * @param expireAfterAccess tiempo de vida desde el último acceso (cero para no caducar)
+     * @param initDelay
+     * @param period cada cuánto se eliminan las entradas caducadas
+     * @param timeUnit
+     */
+    public ConcurrentFunkoCache(int maxSize, int stripes, CachePolicy policy, Duration expireAfterWrite, Duration expireAfterAccess,
+                                int initDelay, int period, TimeUnit timeUnit) {
+        this(maxSize, stripes, policy, expireAfterWrite, expireAfterAccess, DEFAULT_MISSING_MAX_SIZE, DEFAULT_MISSING_TTL,
+                initDelay, period, timeUnit);
+    }
+
+    /**
+     * Constructor de ConcurrentFunkoCache
+     * @param maxSize
+     * @param stripes número de tramos con cerrojo propio
+     * @param policy política de expulsión
+     * @param expireAfterWrite tiempo de vida desde que se guarda (cero para no caducar)
+     * @param expireAfterAccess tiempo de vida desde el último acceso (cero para no caducar)
+     * @param missingMaxSize número máximo de búsquedas fallidas recordadas (cero para no recordarlas)
+     * @param missingTtl cuánto se recuerda una búsqueda fallida (cero para no recordarlas)
+     * @param initDelay
+     * @param period cada cuánto se eliminan las entradas caducadas
+     * @param timeUnit
+     */
+    public ConcurrentFunkoCache(int maxSize, int stripes, CachePolicy policy, Duration expireAfterWrite, Duration expireAfterAccess,
+                                int missingMaxSize, Duration missingTtl, int initDelay, int period, TimeUnit timeUnit) {
+        this.cache = new StripedCache<>(maxSize, stripes, policy::create, expireAfterWrite, expireAfterAccess, System::nanoTime,
+                this::unindex);
+        this.missing = missingMaxSize > 0 && missingTtl.isPositive()
+                ? new StripedCache<>(missingMaxSize, stripes, CachePolicy.LRU::create, missingTtl, Duration.ZERO, System::nanoTime)
+                : null;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor();
+        this.cleaner.scheduleAtFixedRate(this::evictExpired, initDelay, period, timeUnit);
+    }
+
+    /**
+     * Activa el refresco anticipado: un funko que se lee cuando lleva en la cache al menos refreshAfterWrite
+     * se recarga en segundo plano con el cargador de refreshWith, mientras se sigue devolviendo el que hay.
+     * Para que sirva debe ser menor que expireAfterWrite. Si ya hay maxConcurrentRefreshes recargas en curso
+     * no se recarga: se intentará en la siguiente lectura o caducará como siempre
+     * @param refreshAfterWrite tiempo desde que se guarda a partir del cual se recarga (cero para desactivarlo)
+     * @param maxConcurrentRefreshes número máximo de recargas a la vez
+     * @return la propia cache
+     */
+    public ConcurrentFunkoCache refreshAfterWrite(Duration refreshAfterWrite, int maxConcurrentRefreshes) {
+        if (maxConcurrentRefreshes <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRefreshes debe ser mayor que 0");
+        }
+        this.refreshPermits = new Semaphore(maxConcurrentRefreshes);
+        cache.refreshAfterWrite(refreshAfterWrite, this::refresh);
+        return this;
+    }
+
+    /**
+     * Cargador con el que se refrescan los funkos
+     * @param loader obtiene el funko actual por id o vacío si ya no existe
+     */
+    @Override
+    public void refreshWith(Function<Integer, Mono<Funko>> loader) {
+        this.refresher = loader;
+    }
+
+    /**
+     * Guarda un funko en la cache
+     * @param key
+     * @param value
+     */
+    @Override
+    public Mono<Void> put(Integer key, Funko value) {
+        logger.debug("Guardando funko: {} en la cache", value);
+        if(key == null){
+            logger.error("No se puede guardar un funko con id null en la cache");
+            return Mono.error(new CachePutNullKeyException("No se puede guardar un funko con id null en la cache"));
+        } else if (value == null) {
+            logger.error("No se puede guardar un funko con value null en la cache");
+            return Mono.error(new CachePutNullValueException("No se puede guardar un funko con value null en la cache"));
+        }
+        return Mono.fromRunnable(() -> {
+            // Primero el índice: si la política no admite la entrada, el listener de expulsión lo deshace
+            if (value.getCOD() != null) {
+                codIndex.put(value.getCOD(), key);
+            }
+            invalidateMissing(key, value.getCOD());
+            Funko previous = cache.put(key, value);
+            if (previous != null && !Objects.equals(previous.getCOD(), value.getCOD())) {
+                unindex(key, previous);
+            }
+        });
+    }
+
+    /**
+     * Obtiene un funko de la cache
+     * @param key
+     */
+    @Override
+    public Mono<Funko> get(Integer key) {
+        logger.debug("Obteniendo funko con id: {} de la cache", key);
+        Funko funko = key == null ? null : cache.get(key);
+        record(funko);
+        return Mono.justOrEmpty(funko);
+    }
+
+    /**
+     * Obtiene un funko de la cache por su cod usando el índice secundario
+     * @param cod
+     */
+    @Override
+    public Mono<Funko> getByCod(UUID cod) {
+        logger.debug("Obteniendo funko con cod: {} de la cache", cod);
+        Integer id = cod == null ? null : codIndex.get(cod);
+        Funko funko = id == null ? null : cache.get(id);
+        if (funko != null && !cod.equals(funko.getCOD())) {
+            // La entrada cambió de cod mientras tanto
+            funko = null;
+        }
+        if (funko == null && id != null) {
+            codIndex.remove(cod, id);
+        }
+        record(funko);
+        return Mono.justOrEmpty(funko);
+    }
+
+    /**
+     * Elimina un funko de la cache
+     * @param key
+     */
+    @Override
+    public Mono<Funko> delete(Integer key) {
+        logger.debug("Eliminando funko con id: {} de la cache", key);
+        Funko removed = key == null ? null : cache.remove(key);
+        if (removed != null) {
+            unindex(key, removed);
+        }
+        return Mono.justOrEmpty(removed);
+    }
+
+    /**
+     * Elimina todos los funkos de la cache
+     */
+    @Override
+    public void clear() {
+        logger.debug("Vaciando la cache");
+        cache.clear();
+        codIndex.clear();
+        if (missing != null) {
+            missing.clear();
+        }
+    }
+
+    /**
+     * Recuerda que no existe ningún funko con ese id
+     * @param id
+     */
+    @Override
+    public void putMissing(Integer id) {
+        if (missing != null && id != null) {
+            missing.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Recuerda que no existe ningún funko con ese cod
+     * @param cod
+     */
+    @Override
+    public void putMissingByCod(UUID cod) {
+        if (missing != null && cod != null) {
+            missing.put(cod, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Indica si se sabe que no existe ningún funko con ese id
+     * @param id
+     */
+    @Override
+    public boolean isMissing(Integer id) {
+        return missing != null && id != null && missing.get(id) != null;
+    }
+
+    /**
+     * Indica si se sabe que no existe ningún funko con ese cod
+     * @param cod
+     */
+    @Override
+    public boolean isMissingByCod(UUID cod) {
+        return missing != null && cod != null && missing.get(cod) != null;
+    }
+
+    /**
+     * Olvida las búsquedas fallidas del id y del cod de un funko recién creado
+     * @param funko
+     */
+    @Override
+    public void invalidateMissing(Funko funko) {
+        if (funko != null) {
+            invalidateMissing(funko.getId(), funko.getCOD());
+        }
+    }
+
+    private void invalidateMissing(Integer id, UUID cod) {
+        if (missing == null) {
+            return;
+        }
+        if (id != null) {
+            missing.remove(id);
+        }
+        if (cod != null) {
+            missing.remove(cod);
+        }
+    }
+
+    /**
+     * Recarga en segundo plano un funko que se sigue leyendo. Solo se guarda el resultado si la entrada
+     * sigue siendo la que se leyó: si entretanto se ha actualizado o borrado, gana esa escritura
+     * @param id
+     * @param stale funko que hay en la cache
+     */
+    private void refresh(Integer id, Funko stale) {
+        Function<Integer, Mono<Funko>> loader = refresher;
+        if (loader == null || !refreshing.add(id)) {
+            return;
+        }
+        if (!refreshPermits.tryAcquire()) {
+            refreshing.remove(id);
+            logger.debug("Demasiadas recargas en curso, no se refresca el funko con id: {}", id);
+            return;
+        }
+        logger.debug("Refrescando funko con id: {} de la cache", id);
+        long start = System.nanoTime();
+        Mono.defer(() -> loader.apply(id))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .doFinally(signal -> {
+                    refreshing.remove(id);
+                    refreshPermits.release();
+                })
+                .subscribe(fresh -> {
+                    if (fresh.isPresent()) {
+                        cache.stats().recordLoadSuccess(System.nanoTime() - start);
+                        replace(id, stale, fresh.get());
+                    } else {
+                        // Ya no existe: se quita si nadie lo ha cambiado
+                        cache.stats().recordLoadFailure(System.nanoTime() - start);
+                        if (cache.remove(id, stale)) {
+                            unindex(id, stale);
+                        }
+                    }
+                }, error -> {
+                    cache.stats().recordLoadFailure(System.nanoTime() - start);
+                    logger.error("Error al refrescar el funko con id: " + id + " de la cache: " + error.getMessage());
+                });
+    }
+
+    private void replace(Integer id, Funko stale, Funko fresh) {
+        if (!cache.replace(id, stale, fresh)) {
+            return;
+        }
+        if (fresh.getCOD() != null) {
+            codIndex.put(fresh.getCOD(), id);
+        }
+        if (!Objects.equals(stale.getCOD(), fresh.getCOD())) {
+            unindex(id, stale);
+        }
+    }
+
+    /**
+     * Elimina los funkos caducados. Solo recorre los cubos de la rueda por los que ha pasado el tiempo
+     */
+    private void evictExpired() {
+        int removed = cache.cleanUp();
+        if (missing != null) {
+            missing.cleanUp();
+        }
+        if (removed > 0) {
+            logger.debug("Autoeliminados por caducidad {} funkos de la cache", removed);
+        }
+    }
+
+    /**
+     * Quita del índice por cod la entrada de un funko que ya no está en la cache
+     * @param id
+     * @param funko
+     */
+    private void unindex(Integer id, Funko funko) {
+        if (funko.getCOD() != null) {
+            codIndex.remove(funko.getCOD(), id);
+        }
+    }
+
+    private void record(Funko funko) {
+        if (funko != null) {
+            cache.stats().recordHit();
+        } else {
+            cache.stats().recordMiss();
+        }
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+        cache.stats().recordLoadSuccess(loadNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+        cache.stats().recordLoadFailure(loadNanos);
+    }
+
+    /**
+     * Estadísticas de la cache de funkos (sin contar las búsquedas fallidas recordadas)
+     */
+    @Override
+    public CacheStats stats() {
+        return cache.stats().snapshot();
+    }
+
+    /**
+     * Ids de los funkos más leídos desde que se guardaron en la cache con su número de lecturas
+     * @param limit
+     */
+    @Override
+    public Map<Integer, Long> hotKeys(int limit) {
+        return cache.hottest(limit);
+    }
+
+    /**
+     * Número de funkos en la cache
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Cierra el cleaner
+     */
+    @Override
+    public void shutdown() {
+        cleaner.shutdown();
+    }
+}
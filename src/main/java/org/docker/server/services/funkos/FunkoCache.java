@@ -3,9 +3,75 @@ package org.docker.server.services.funkos;
 
 import org.docker.common.models.Funko;
 import org.docker.server.services.cache.Cache;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
 
 /**
  * Interfaz para el cache de Funkos
  */
 public interface FunkoCache extends Cache<Integer, Funko> {
+
+    /**
+     * Obtiene un funko de la cache por su cod
+     * @param cod - cod
+     */
+    Mono<Funko> getByCod(UUID cod);
+
+    /**
+     * Recuerda durante un tiempo que no existe ningún funko con ese id.
+     * Por defecto no se recuerdan las búsquedas fallidas
+     * @param id - id
+     */
+    default void putMissing(Integer id) {
+    }
+
+    /**
+     * Recuerda durante un tiempo que no existe ningún funko con ese cod
+     * @param cod - cod
+     */
+    default void putMissingByCod(UUID cod) {
+    }
+
+    /**
+     * Indica si se sabe que no existe ningún funko con ese id
+     * @param id - id
+     */
+    default boolean isMissing(Integer id) {
+        return false;
+    }
+
+    /**
+     * Indica si se sabe que no existe ningún funko con ese cod
+     * @param cod - cod
+     */
+    default boolean isMissingByCod(UUID cod) {
+        return false;
+    }
+
+    /**
+     * Olvida las búsquedas fallidas que coinciden con el id o el cod de un funko que acaba de crearse
+     * @param funko - funko
+     */
+    default void invalidateMissing(Funko funko) {
+    }
+
+    /**
+     * Cargador con el que la cache refresca por su cuenta los funkos que se siguen leyendo antes de que caduquen.
+     * Por defecto no se refrescan
+     * @param loader - obtiene el funko actual por id o vacío si ya no existe
+     */
+    default void refreshWith(Function<Integer, Mono<Funko>> loader) {
+    }
+
+    /**
+     * Ids de los funkos más leídos con su número de lecturas, de más a menos leídos.
+     * Por defecto la cache no los lleva
+     * @param limit - número máximo de ids
+     */
+    default Map<Integer, Long> hotKeys(int limit) {
+        return Map.of();
+    }
 }
@@ -4,6 +4,8 @@ import org.docker.server.exceptions.cache.CachePutNullKeyException;
 import org.docker.server.exceptions.cache.CachePutNullValueException;
 import org.docker.common.models.Funko;
 import org.docker.server.services.cache.Cache;
+import org.docker.server.services.cache.CacheStats;
+import org.docker.server.services.cache.StatsCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
@@ -11,12 +13,15 @@ import reactor.core.publisher.Mono;
 import java.time.LocalDateTime;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Implementacion de la interfaz FunkoCache
+ * Implementacion de la interfaz FunkoCache.
+ * No es thread-safe: para compartirla entre varios clientes usar ConcurrentFunkoCache
+ * @see ConcurrentFunkoCache
  * @see FunkoCache
  * @see Cache
  * @see Funko
@@ -32,6 +37,8 @@ public class FunkoCacheImpl implements FunkoCache {
 
     private final ScheduledExecutorService cleaner;
 
+    private final StatsCounter stats = new StatsCounter();
+
     /**
      * Constructor de FunkoCacheImpl
      * @param maxSize
@@ -44,12 +51,16 @@ public class FunkoCacheImpl implements FunkoCache {
         this.cache =  new LinkedHashMap<>(maxSize, 0.75f, true ){
             @Override
             protected boolean removeEldestEntry(Map.Entry<Integer, Funko> eldest) {
-                return size() > maxSize;
+                boolean full = size() > maxSize;
+                if (full) {
+                    stats.recordEviction();
+                }
+                return full;
             }
 
         };
         this.cleaner = Executors.newSingleThreadScheduledExecutor();
-        this.cleaner.scheduleAtFixedRate(this::clear, initDelay, period, timeUnit);
+        this.cleaner.scheduleAtFixedRate(this::evictExpired, initDelay, period, timeUnit);
     }
 
 
@@ -78,7 +89,20 @@ public class FunkoCacheImpl implements FunkoCache {
     @Override
     public Mono<Funko> get(Integer key) {
         logger.debug("Obteniendo funko con id: {} de la cache", key);
-        return Mono.justOrEmpty(cache.get(key));
+        return Mono.justOrEmpty(record(cache.get(key)));
+    }
+
+    /**
+     * Obtiene un funko de la cache por su cod recorriéndola entera
+     * @param cod
+     */
+    @Override
+    public Mono<Funko> getByCod(UUID cod) {
+        logger.debug("Obteniendo funko con cod: {} de la cache", cod);
+        return Mono.justOrEmpty(record(cache.values().stream()
+                .filter(funko -> funko.getCOD().equals(cod))
+                .findFirst()
+                .orElse(null)));
     }
 
     /**
@@ -96,15 +120,50 @@ public class FunkoCacheImpl implements FunkoCache {
      */
     @Override
     public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Elimina los funkos caducados
+     */
+    private void evictExpired() {
         cache.entrySet().removeIf(entry -> {
             boolean shouldRemove = entry.getValue().getUpdated_at().plusSeconds(90).isBefore(LocalDateTime.now());
             if (shouldRemove) {
+                stats.recordExpiration();
                 logger.debug("Autoeliminando por caducidad alumno de cache con id: " + entry.getKey());
             }
             return shouldRemove;
         });
     }
 
+    private Funko record(Funko funko) {
+        if (funko != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return funko;
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+        stats.recordLoadSuccess(loadNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+        stats.recordLoadFailure(loadNanos);
+    }
+
+    /**
+     * Estadísticas de la cache
+     */
+    @Override
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
     /**
      * Cierra el cleaner
      */
@@ -0,0 +1,81 @@
+package org.docker.server.services.funkos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fichero csv (id,accesos) con los funkos más leídos de la cache, para precargarlos al arrancar
+ * en lugar de empezar con la cache vacía. Solo guarda los ids: los funkos se leen de la base de datos
+ * @author daniel
+ */
+public class FunkoCacheSnapshot {
+
+    private static final String HEADER = "id,accesos";
+
+    private final Logger logger = LoggerFactory.getLogger(FunkoCacheSnapshot.class);
+
+    private final Path file;
+
+    /**
+     * Constructor de FunkoCacheSnapshot
+     * @param file fichero donde se guardan los ids
+     */
+    public FunkoCacheSnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Guarda los ids con sus accesos. Se escribe en un fichero temporal que luego se renombra,
+     * para que una parada a medias no deje el fichero anterior corrupto
+     * @param hotKeys ids y accesos, de más a menos leídos
+     */
+    public void save(Map<Integer, Long> hotKeys) throws IOException {
+        List<String> lines = new ArrayList<>(hotKeys.size() + 1);
+        lines.add(HEADER);
+        hotKeys.forEach((id, accesses) -> lines.add(id + "," + accesses));
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, lines);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Guardados " + hotKeys.size() + " ids de la cache en " + file);
+    }
+
+    /**
+     * Lee los ids con sus accesos, de más a menos leídos. Si no hay fichero no hay nada que precargar,
+     * y las líneas que no se entienden se ignoran
+     */
+    public Map<Integer, Long> load() throws IOException {
+        Map<Integer, Long> hotKeys = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return hotKeys;
+        }
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.equals(HEADER)) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                entries.add(Map.entry(Integer.parseInt(fields[0].trim()), fields.length > 1 ? Long.parseLong(fields[1].trim()) : 0L));
+            } catch (NumberFormatException e) {
+                logger.warn("Línea no válida en " + file + ": " + line);
+            }
+        }
+        entries.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+        entries.forEach(entry -> hotKeys.putIfAbsent(entry.getKey(), entry.getValue()));
+        logger.debug("Leídos " + hotKeys.size() + " ids de la cache de " + file);
+        return hotKeys;
+    }
+}
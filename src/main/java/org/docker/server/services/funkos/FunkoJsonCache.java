@@ -0,0 +1,149 @@
+package org.docker.server.services.funkos;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.docker.common.models.Funko;
+import org.docker.common.utils.adapters.LocalDateAdapter;
+import org.docker.common.utils.adapters.LocalDateTimeAdapter;
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.cache.StripedCache;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache de funkos ya serializados para las respuestas. Cada funko se guarda como el contenido
+ * de una cadena JSON ya escapada (sin las comillas), listo para ir en el campo content de una
+ * Response, junto con la versión con la que se serializó (su updated_at). Si el funko cambia,
+ * cambia su updated_at y se vuelve a serializar.
+ * Como el escapado es carácter a carácter, una lista se escapa juntando los funkos escapados
+ * entre corchetes y comas, sin pasar por Gson
+ * @author daniel
+ */
+public class FunkoJsonCache {
+
+    // Número de funkos serializados que se guardan por defecto
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static FunkoJsonCache instance;
+
+    /**
+     * Funko serializado en una versión concreta
+     */
+    private record Encoded(LocalDateTime version, UUID cod, String escaped) {
+    }
+
+    /**
+     * Estadísticas de serialización
+     * @param hits funkos enviados sin serializar
+     * @param misses funkos serializados
+     * @param encodeNanos tiempo total serializando
+     */
+    public record Stats(long hits, long misses, long encodeNanos) {
+
+        /**
+         * Tiempo medio de serializar un funko
+         */
+        public long averageEncodeNanos() {
+            return misses == 0 ? 0 : encodeNanos / misses;
+        }
+
+        /**
+         * Tiempo de serialización que se ha ahorrado, estimado con el tiempo medio
+         */
+        public long savedNanos() {
+            return hits * averageEncodeNanos();
+        }
+    }
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter()).create();
+
+    // W-TinyLFU para que un GETALL no expulse a los funkos que se piden a menudo
+    private final StripedCache<Integer, Encoded> encoded;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+
+    /**
+     * Constructor de FunkoJsonCache
+     * @param maxSize número máximo de funkos serializados
+     */
+    public FunkoJsonCache(int maxSize) {
+        this.encoded = new StripedCache<>(maxSize, Runtime.getRuntime().availableProcessors(), CachePolicy.TINYLFU::create);
+    }
+
+    /**
+     * Obtiene la instancia compartida por todas las conexiones
+     */
+    public static synchronized FunkoJsonCache getInstance() {
+        if (instance == null) {
+            instance = new FunkoJsonCache(DEFAULT_MAX_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Funko como contenido escapado de una cadena JSON (sin comillas)
+     * @param funko
+     */
+    public String escaped(Funko funko) {
+        Integer id = funko.getId();
+        LocalDateTime version = funko.getUpdated_at();
+        if (id != null && version != null) {
+            Encoded cached = encoded.get(id);
+            if (cached != null && cached.version().equals(version) && Objects.equals(cached.cod(), funko.getCOD())) {
+                hits.increment();
+                return cached.escaped();
+            }
+        }
+        long start = System.nanoTime();
+        String escaped = unquote(gson.toJson(gson.toJson(funko)));
+        encodeNanos.add(System.nanoTime() - start);
+        misses.increment();
+        if (id != null && version != null) {
+            encoded.put(id, new Encoded(version, funko.getCOD(), escaped));
+        }
+        return escaped;
+    }
+
+    /**
+     * Lista de funkos como contenido escapado de una cadena JSON (sin comillas)
+     * @param funkos
+     */
+    public String escaped(List<Funko> funkos) {
+        StringBuilder builder = new StringBuilder(2 + funkos.size() * 256).append('[');
+        for (int i = 0; i < funkos.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(escaped(funkos.get(i)));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Cadena como literal JSON, con comillas
+     * @param value
+     */
+    public String quote(String value) {
+        return gson.toJson(value);
+    }
+
+    private String unquote(String literal) {
+        return literal.substring(1, literal.length() - 1);
+    }
+
+    /**
+     * Estadísticas de serialización
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), encodeNanos.sum());
+    }
+}
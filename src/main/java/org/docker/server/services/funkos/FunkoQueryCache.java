@@ -0,0 +1,116 @@
+package org.docker.server.services.funkos;
+
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.cache.SingleFlight;
+import org.docker.server.services.cache.StripedCache;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Cache de resultados de las consultas de listas de funkos por modelo y por año de lanzamiento.
+ * Cada escritura invalida solo las listas del modelo y del año del funko que cambia.
+ * Una consulta que empezó antes de una escritura no guarda su resultado, y las consultas
+ * iguales que coinciden en el tiempo comparten una sola lectura de la base de datos
+ * @see FunkoServiceImpl
+ * @author daniel
+ */
+public class FunkoQueryCache {
+
+    // Número de listas que se guardan por defecto
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Consulta: por modelo (year null) o por año (modelo null)
+     */
+    private record Query(Modelo modelo, Integer year) {
+    }
+
+    /**
+     * Lectura de una consulta hecha entre dos escrituras
+     */
+    private record Load(Query query, long version) {
+    }
+
+    private final StripedCache<Query, List<Funko>> results;
+
+    private final SingleFlight<Load, List<Funko>> loads = new SingleFlight<>();
+
+    // Número de invalidaciones; protegido por this junto con el guardado de resultados
+    private long version;
+
+    /**
+     * Constructor de FunkoQueryCache
+     * @param maxSize número máximo de listas guardadas
+     */
+    public FunkoQueryCache(int maxSize) {
+        this.results = new StripedCache<>(maxSize, Runtime.getRuntime().availableProcessors(), CachePolicy.LRU::create);
+    }
+
+    /**
+     * Funkos de un modelo, de la cache o leídos de la base de datos
+     * @param modelo
+     * @param fromDatabase consulta a la base de datos; solo se ejecuta si no está en la cache
+     */
+    public Flux<Funko> byModelo(Modelo modelo, Flux<Funko> fromDatabase) {
+        return lookup(new Query(modelo, null), fromDatabase);
+    }
+
+    /**
+     * Funkos lanzados en un año, de la cache o leídos de la base de datos
+     * @param year
+     * @param fromDatabase consulta a la base de datos; solo se ejecuta si no está en la cache
+     */
+    public Flux<Funko> byReleaseYear(int year, Flux<Funko> fromDatabase) {
+        return lookup(new Query(null, year), fromDatabase);
+    }
+
+    private Flux<Funko> lookup(Query query, Flux<Funko> fromDatabase) {
+        return Mono.defer(() -> {
+            List<Funko> cached = results.get(query);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long started = currentVersion();
+            return loads.load(new Load(query, started), () -> fromDatabase.collectList()
+                    .map(List::copyOf)
+                    .doOnNext(list -> store(query, list, started)));
+        }).flatMapIterable(list -> list);
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private synchronized void store(Query query, List<Funko> list, long started) {
+        // Si ha habido una escritura mientras se leía, el resultado puede estar desfasado
+        if (version == started) {
+            results.put(query, list);
+        }
+    }
+
+    /**
+     * Invalida las listas del modelo y del año de lanzamiento de un funko que se ha creado, cambiado o borrado
+     * @param funko
+     */
+    public synchronized void invalidate(Funko funko) {
+        version++;
+        if (funko.getModelo() != null) {
+            results.remove(new Query(funko.getModelo(), null));
+        }
+        if (funko.getFecha() != null) {
+            results.remove(new Query(null, funko.getFecha().getYear()));
+        }
+    }
+
+    /**
+     * Invalida todas las listas
+     */
+    public synchronized void clear() {
+        version++;
+        results.clear();
+    }
+}
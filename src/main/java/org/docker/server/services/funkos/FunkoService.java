@@ -1,12 +1,17 @@
 package org.docker.server.services.funkos;
 
 
+import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
+import org.docker.server.repositories.base.Page;
+import org.docker.server.repositories.funko.ReleaseCursor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.rmi.server.ExportException;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -21,12 +26,27 @@ public interface FunkoService {
      */
     Flux<Funko> findAll() throws SQLException, ExecutionException, InterruptedException;
 
+    /**
+     * Busca una página de funkos ordenados por id
+     * @param after cursor devuelto en la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Mono<Page<Funko, Integer>> findAll(Integer after, int limit) throws SQLException;
+
     /**
      * Busca un funko por su nombre
      * @param nombre
      */
     Flux<Funko> findByNombre(String nombre) throws SQLException, ExecutionException, InterruptedException;
 
+    /**
+     * Busca una página de funkos por su nombre
+     * @param nombre
+     * @param after cursor devuelto en la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Mono<Page<Funko, Integer>> findByNombre(String nombre, Integer after, int limit) throws SQLException;
+
     /**
      * Busca un funko por su id
      * @param id
@@ -39,6 +59,53 @@ public interface FunkoService {
      */
     Mono<Funko> findByCod(UUID cod) throws SQLException, ExecutionException, InterruptedException;
 
+    /**
+     * Busca varios funkos por sus ids. Devuelve los que existen en el orden pedido
+     * @param ids
+     */
+    Flux<Funko> findAllByIds(List<Integer> ids) throws SQLException;
+
+    /**
+     * Busca varios funkos por sus cods. Devuelve los que existen en el orden pedido
+     * @param cods
+     */
+    Flux<Funko> findAllByCods(List<UUID> cods) throws SQLException;
+
+    /**
+     * Busca los funkos de un modelo
+     * @param modelo
+     */
+    Flux<Funko> findByModelo(Modelo modelo) throws SQLException;
+
+    /**
+     * Busca una página de funkos de un modelo
+     * @param modelo
+     * @param after cursor devuelto en la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Mono<Page<Funko, Integer>> findByModelo(Modelo modelo, Integer after, int limit) throws SQLException;
+
+    /**
+     * Busca los funkos lanzados en un año
+     * @param year
+     */
+    Flux<Funko> findByReleaseYear(int year) throws SQLException;
+
+    /**
+     * Busca una página de funkos lanzados en un año
+     * @param year
+     * @param after cursor devuelto en la página anterior (null para la primera)
+     * @param limit tamaño de página
+     */
+    Mono<Page<Funko, ReleaseCursor>> findByReleaseYear(int year, ReleaseCursor after, int limit) throws SQLException;
+
+    /**
+     * Busca los funkos lanzados entre dos fechas (ambas incluidas)
+     * @param from
+     * @param to
+     */
+    Flux<Funko> findByReleaseDateBetween(LocalDate from, LocalDate to) throws SQLException;
+
 
     /**
      * Guarda un funko en la base de datos
@@ -46,6 +113,12 @@ public interface FunkoService {
      */
     Mono<Funko> save(Funko funko) throws Exception;
 
+    /**
+     * Guarda varios funkos en la base de datos por lotes
+     * @param funkos
+     */
+    Flux<Funko> saveAll(Flux<Funko> funkos) throws SQLException;
+
 
     /**
      * Actualiza un funko en la base de datos
@@ -59,6 +132,13 @@ public interface FunkoService {
      */
     Mono<Boolean> deleteById(Integer id) throws SQLException, ExecutionException, InterruptedException;
 
+    /**
+     * Elimina varios funkos por sus ids en una sola transacción
+     * @param ids
+     * @return los funkos borrados (los ids que no existen se ignoran)
+     */
+    Flux<Funko> deleteByIds(List<Integer> ids) throws SQLException;
+
     /**
      * Elimina todos los funkos de la base de datos
      */
@@ -2,9 +2,14 @@ package org.docker.server.services.funkos;
 
 import org.docker.server.exceptions.funko.FunkoNoEncontradoException;
 import org.docker.server.exceptions.funko.FunkoNoGuardado;
+import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
 import org.docker.common.models.Notificacion;
+import org.docker.server.repositories.base.Page;
 import org.docker.server.repositories.funko.FunkoRepository;
+import org.docker.server.repositories.funko.ReleaseCursor;
+import org.docker.server.services.cache.CacheStats;
+import org.docker.server.services.cache.SingleFlight;
 import org.docker.server.services.storage.FunkoStorageServ;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,8 +20,20 @@ import java.io.File;
 import java.nio.file.Path;
 import java.rmi.server.ExportException;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Implementacion de la interfaz FunkoService
@@ -25,6 +42,9 @@ import java.util.concurrent.ExecutionException;
  */
 public class FunkoServiceImpl implements FunkoService{
 
+    // Tamaño máximo de página que se puede pedir
+    public static final int MAX_PAGE_SIZE = 500;
+
     private static FunkoServiceImpl instance;
     private Logger logger = LoggerFactory.getLogger(FunkoServiceImpl.class);
 
@@ -36,11 +56,44 @@ public class FunkoServiceImpl implements FunkoService{
 
     private final FunkoStorageServ storageFunko;
 
-    private FunkoServiceImpl(FunkoRepository repositoryFunko, FunkoCache cache, FunkoNotificacionImpl notificacion,  FunkoStorageServ storageFunko){
+    // Escritura diferida de las actualizaciones; null para actualizar en el momento
+    private final FunkoWriteBehind writeBehind;
+
+    // Cargas desde la base de datos en curso, por id y por cod
+    private final SingleFlight<Integer, Funko> loadsById = new SingleFlight<>();
+    private final SingleFlight<UUID, Funko> loadsByCod = new SingleFlight<>();
+
+    // Listas de funkos por modelo y por año, invalidadas desde las escrituras
+    private final FunkoQueryCache queries = new FunkoQueryCache(FunkoQueryCache.DEFAULT_MAX_SIZE);
+
+    private FunkoServiceImpl(FunkoRepository repositoryFunko, FunkoCache cache, FunkoNotificacionImpl notificacion,  FunkoStorageServ storageFunko,
+                             FunkoWriteBehind writeBehind){
         this.repository = repositoryFunko;
         this.cache = cache;
         this.notificacion = notificacion;
         this.storageFunko = storageFunko;
+        this.writeBehind = writeBehind;
+        // Si la cache tiene refresco anticipado, recarga de la base de datos sin perder actualizaciones pendientes
+        cache.refreshWith(id -> {
+            try {
+                return repository.findById(id).map(this::withPendingUpdate);
+            } catch (SQLException e) {
+                return Mono.error(e);
+            }
+        });
+        if (writeBehind != null) {
+            // Las listas por modelo y año se leen de la base de datos: se invalidan otra vez al guardar
+            writeBehind.onFlushed((previous, latest) -> {
+                queries.invalidate(previous);
+                queries.invalidate(latest);
+            });
+            // Una actualización descartada no está en la base de datos: la caché deja de tenerla
+            writeBehind.onDropped((previous, latest) -> {
+                queries.invalidate(previous);
+                queries.invalidate(latest);
+                cache.delete(latest.getId()).subscribe();
+            });
+        }
     }
 
     /**
@@ -52,8 +105,22 @@ public class FunkoServiceImpl implements FunkoService{
      * @return FunkoServiceImpl
      */
     public static FunkoServiceImpl getInstance(FunkoRepository repositoryFunko, FunkoCache cache, FunkoNotificacionImpl notificacion,  FunkoStorageServ storageFunko){
+        return getInstance(repositoryFunko, cache, notificacion, storageFunko, null);
+    }
+
+    /**
+     * Instancia de la clase con escritura diferida de las actualizaciones
+     * @param repositoryFunko
+     * @param cache
+     * @param notificacion
+     * @param storageFunko
+     * @param writeBehind escritura diferida, o null para actualizar en el momento
+     * @return FunkoServiceImpl
+     */
+    public static FunkoServiceImpl getInstance(FunkoRepository repositoryFunko, FunkoCache cache, FunkoNotificacionImpl notificacion,  FunkoStorageServ storageFunko,
+                                               FunkoWriteBehind writeBehind){
         if(instance == null){
-            instance = new FunkoServiceImpl(repositoryFunko, cache, notificacion, storageFunko);
+            instance = new FunkoServiceImpl(repositoryFunko, cache, notificacion, storageFunko, writeBehind);
         }
         return instance;
     }
@@ -68,6 +135,18 @@ public class FunkoServiceImpl implements FunkoService{
         return repository.findAll();
     }
 
+    /**
+     * Obtiene una página de funkos
+     * @param after
+     * @param limit
+     */
+    @Override
+    public Mono<Page<Funko, Integer>> findAll(Integer after, int limit) throws SQLException {
+        int size = pageSize(limit);
+        logger.debug("Obteniendo {} funkos a partir del id: {}", size, after);
+        return page(repository.findAll(after, size + 1), size);
+    }
+
     /**
      * Obtiene los funkos con nombre
      * @param nombre
@@ -78,6 +157,19 @@ public class FunkoServiceImpl implements FunkoService{
         return repository.findByNombre(nombre);
     }
 
+    /**
+     * Obtiene una página de funkos con nombre
+     * @param nombre
+     * @param after
+     * @param limit
+     */
+    @Override
+    public Mono<Page<Funko, Integer>> findByNombre(String nombre, Integer after, int limit) throws SQLException {
+        int size = pageSize(limit);
+        logger.debug("Obteniendo {} funkos con nombre: {} a partir del id: {}", size, nombre, after);
+        return page(repository.findByNombre(nombre, after, size + 1), size);
+    }
+
     /**
      * Obtiene los funkos con id
      * @param id
@@ -85,7 +177,7 @@ public class FunkoServiceImpl implements FunkoService{
     @Override
     public Mono<Funko> findById(Integer id) throws SQLException, ExecutionException, InterruptedException {
         logger.debug("Buscando funko con id: {}", id);
-        return cache.get(id).switchIfEmpty(repository.findById(id).flatMap(
+        Mono<Funko> fromDatabase = repository.findById(id).map(this::withPendingUpdate).flatMap(
                 funko -> {
                     try {
                         return cache.put(funko.getId(), funko).then(Mono.justOrEmpty(funko));
@@ -93,21 +185,283 @@ public class FunkoServiceImpl implements FunkoService{
                         throw new RuntimeException(e);
                     }
                 }
-        )).switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con id: " + id)));
+        );
+        // Los fallos de caché simultáneos sobre el mismo id comparten una sola consulta,
+        // y si no existe se recuerda un tiempo para no volver a consultarlo
+        return cache.get(id).switchIfEmpty(Mono.defer(() -> cache.isMissing(id)
+                        ? Mono.empty()
+                        : loadsById.load(id, () -> timedLoad(fromDatabase).switchIfEmpty(Mono.fromRunnable(() -> cache.putMissing(id))))))
+                .switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con id: " + id)));
     }
 
+    /**
+     * Obtiene el funko con cod: primero se busca en el índice por cod de la caché
+     * y solo si no está se consulta la base de datos
+     * @param cod
+     */
     @Override
     public Mono<Funko> findByCod(UUID cod) throws SQLException, ExecutionException, InterruptedException {
         logger.debug("Buscando funko con cod: {}", cod);
-        return repository.findByCod(cod).flatMap(
-                funko -> {
+        return cache.getByCod(cod).switchIfEmpty(Mono.defer(() -> cache.isMissingByCod(cod) ? Mono.empty() : loadsByCod.load(cod, () -> {
+            try {
+                return timedLoad(repository.findByCod(cod).map(this::withPendingUpdate).flatMap(
+                        funko -> {
+                            try {
+                                return cache.put(funko.getId(), funko).then(Mono.justOrEmpty(funko));
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                )).switchIfEmpty(Mono.fromRunnable(() -> cache.putMissingByCod(cod)));
+            } catch (SQLException e) {
+                return Mono.error(e);
+            }
+        }))).switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con cod: " + cod)));
+    }
+
+    /**
+     * Obtiene varios funkos por sus ids en el orden pedido. Los que no existen no se devuelven
+     * @param ids
+     */
+    @Override
+    public Flux<Funko> findAllByIds(List<Integer> ids) throws SQLException {
+        logger.debug("Buscando {} funkos por id", ids.size());
+        return findAll(ids, cache::get, cache::isMissing, misses -> {
+            try {
+                return repository.findAllByIds(misses);
+            } catch (SQLException e) {
+                return Flux.error(e);
+            }
+        }, Funko::getId, cache::putMissing);
+    }
+
+    /**
+     * Obtiene varios funkos por sus cods en el orden pedido. Los que no existen no se devuelven
+     * @param cods
+     */
+    @Override
+    public Flux<Funko> findAllByCods(List<UUID> cods) throws SQLException {
+        logger.debug("Buscando {} funkos por cod", cods.size());
+        return findAll(cods, cache::getByCod, cache::isMissingByCod, misses -> {
+            try {
+                return repository.findAllByCods(misses);
+            } catch (SQLException e) {
+                return Flux.error(e);
+            }
+        }, Funko::getCOD, cache::putMissingByCod);
+    }
+
+    /**
+     * Búsqueda múltiple: los aciertos de caché se sirven directamente, los fallos (salvo los que se sabe
+     * que no existen) se piden a la base de datos todos juntos y se guardan en la caché, y los que siguen
+     * sin aparecer se recuerdan como búsquedas fallidas. El resultado sigue el orden de keys
+     * @param keys ids o cods pedidos
+     * @param fromCache búsqueda en la caché
+     * @param knownMissing si se sabe que no existe
+     * @param fromDatabase búsqueda de los fallos en la base de datos
+     * @param keyOf id o cod de un funko
+     * @param putMissing recuerda que no existe
+     */
+    private <K> Flux<Funko> findAll(List<K> keys, Function<K, Mono<Funko>> fromCache, Predicate<K> knownMissing,
+                                    Function<List<K>, Flux<Funko>> fromDatabase, Function<Funko, K> keyOf, Consumer<K> putMissing) {
+        List<K> distinct = keys.stream().filter(Objects::nonNull).distinct().toList();
+        return Flux.fromIterable(distinct)
+                .concatMap(key -> fromCache.apply(key).map(funko -> Map.entry(key, funko)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMap(found -> {
+                    List<K> misses = distinct.stream().filter(key -> !found.containsKey(key) && !knownMissing.test(key)).toList();
+                    if (misses.isEmpty()) {
+                        return Mono.just(found);
+                    }
+                    return timedLoadAll(fromDatabase.apply(misses).map(this::withPendingUpdate))
+                            .concatMap(funko -> {
+                                try {
+                                    return cache.put(funko.getId(), funko).thenReturn(funko);
+                                } catch (Exception e) {
+                                    return Mono.error(e);
+                                }
+                            })
+                            .doOnNext(funko -> found.put(keyOf.apply(funko), funko))
+                            .then(Mono.fromSupplier(() -> {
+                                misses.stream().filter(key -> !found.containsKey(key)).forEach(putMissing);
+                                return found;
+                            }));
+                })
+                .flatMapMany(found -> Flux.fromIterable(keys).mapNotNull(found::get));
+    }
+
+    /**
+     * Con escritura diferida, la última actualización del funko si aún no está en la base de datos
+     * @param fromDatabase funko leído de la base de datos
+     */
+    private Funko withPendingUpdate(Funko fromDatabase) {
+        Funko pendingUpdate = writeBehind != null ? writeBehind.get(fromDatabase.getId()) : null;
+        return pendingUpdate != null ? pendingUpdate : fromDatabase;
+    }
+
+    /**
+     * Anota en las estadísticas de la caché el tiempo de una carga desde la base de datos
+     * y si ha encontrado el funko
+     * @param load
+     */
+    private Mono<Funko> timedLoad(Mono<Funko> load) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return load.doOnSuccess(funko -> {
+                if (funko != null) {
+                    cache.recordLoadSuccess(System.nanoTime() - start);
+                } else {
+                    cache.recordLoadFailure(System.nanoTime() - start);
+                }
+            }).doOnError(error -> cache.recordLoadFailure(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * Como timedLoad para una consulta de varios funkos: una carga con éxito si encuentra alguno
+     * @param load
+     */
+    private Flux<Funko> timedLoadAll(Flux<Funko> load) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean found = new AtomicBoolean();
+            return load.doOnNext(funko -> found.set(true))
+                    .doOnComplete(() -> {
+                        if (found.get()) {
+                            cache.recordLoadSuccess(System.nanoTime() - start);
+                        } else {
+                            cache.recordLoadFailure(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(error -> cache.recordLoadFailure(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * Estadísticas de la caché de funkos
+     */
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Ids de los funkos más leídos de la caché con su número de lecturas, para guardarlos al parar
+     * @param limit número máximo de ids
+     */
+    public Map<Integer, Long> hotKeys(int limit) {
+        return cache.hotKeys(limit);
+    }
+
+    /**
+     * Precarga en la caché los funkos indicados, en el orden dado (de más a menos leídos), con una
+     * consulta WHERE id IN (...) por cada lote de batchSize ids. Al agotar el tiempo se cancela lo que falte:
+     * esos funkos se cargarán bajo demanda. Los que ya no existen se ignoran, y si falla un lote se sigue con el siguiente
+     * @param ids ids de los funkos
+     * @param batchSize ids por consulta
+     * @param budget tiempo máximo de la precarga
+     * @return número de funkos cargados
+     */
+    public Mono<Long> warmUp(Collection<Integer> ids, int batchSize, Duration budget) {
+        logger.debug("Precargando {} funkos en la caché en lotes de {} durante como mucho {}", ids.size(), batchSize, budget);
+        return Flux.fromIterable(ids)
+                .buffer(batchSize)
+                .concatMap(this::warmUp)
+                .take(budget)
+                .count();
+    }
+
+    private Flux<Funko> warmUp(List<Integer> batch) {
+        return Flux.defer(() -> {
+            try {
+                return repository.findAllByIds(batch).map(this::withPendingUpdate).concatMap(funko -> {
                     try {
-                        return cache.put(funko.getId(), funko).then(Mono.justOrEmpty(funko));
+                        return cache.put(funko.getId(), funko).thenReturn(funko);
                     } catch (Exception e) {
-                        throw new RuntimeException(e);
+                        return Mono.error(e);
                     }
-                }
-        ).switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con cod: " + cod)));
+                });
+            } catch (SQLException e) {
+                return Flux.error(e);
+            }
+        }).onErrorResume(e -> {
+            logger.warn("No se ha podido precargar un lote de " + batch.size() + " funkos: " + e.getMessage());
+            return Flux.empty();
+        });
+    }
+
+    /**
+     * Obtiene los funkos de un modelo
+     * @param modelo
+     */
+    @Override
+    public Flux<Funko> findByModelo(Modelo modelo) throws SQLException {
+        logger.debug("Obteniendo funkos con modelo: {}", modelo);
+        return queries.byModelo(modelo, repository.findByModelo(modelo));
+    }
+
+    /**
+     * Obtiene una página de funkos de un modelo
+     * @param modelo
+     * @param after
+     * @param limit
+     */
+    @Override
+    public Mono<Page<Funko, Integer>> findByModelo(Modelo modelo, Integer after, int limit) throws SQLException {
+        int size = pageSize(limit);
+        logger.debug("Obteniendo {} funkos con modelo: {} a partir del id: {}", size, modelo, after);
+        return page(repository.findByModelo(modelo, after, size + 1), size);
+    }
+
+    /**
+     * Obtiene los funkos lanzados en un año
+     * @param year
+     */
+    @Override
+    public Flux<Funko> findByReleaseYear(int year) throws SQLException {
+        logger.debug("Obteniendo funkos lanzados en: {}", year);
+        return queries.byReleaseYear(year, repository.findByReleaseYear(year));
+    }
+
+    /**
+     * Obtiene una página de funkos lanzados en un año
+     * @param year
+     * @param after
+     * @param limit
+     */
+    @Override
+    public Mono<Page<Funko, ReleaseCursor>> findByReleaseYear(int year, ReleaseCursor after, int limit) throws SQLException {
+        int size = pageSize(limit);
+        logger.debug("Obteniendo {} funkos lanzados en: {} a partir de: {}", size, year, after);
+        return repository.findByReleaseYear(year, after, size + 1).collectList()
+                .map(list -> Page.of(list, size, funko -> new ReleaseCursor(funko.getFecha(), funko.getId())));
+    }
+
+    /**
+     * Ajusta el tamaño de página pedido entre 1 y MAX_PAGE_SIZE
+     * @param limit
+     */
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Construye la página a partir de las filas leídas (se piden size + 1 para saber si hay más)
+     * @param rows
+     * @param size
+     */
+    private Mono<Page<Funko, Integer>> page(Flux<Funko> rows, int size) {
+        return rows.collectList().map(list -> Page.of(list, size, Funko::getId));
+    }
+
+    /**
+     * Obtiene los funkos lanzados entre dos fechas
+     * @param from
+     * @param to
+     */
+    @Override
+    public Flux<Funko> findByReleaseDateBetween(LocalDate from, LocalDate to) throws SQLException {
+        logger.debug("Obteniendo funkos lanzados entre {} y {}", from, to);
+        return repository.findByReleaseDateBetween(from, to);
     }
 
     /**
@@ -118,6 +472,9 @@ public class FunkoServiceImpl implements FunkoService{
         logger.debug("Guardando funko: {}", funko);
         return repository.save(funko).doOnSuccess(
         funkoSaved -> {
+            // Puede que su id o su cod se hubiesen buscado antes sin encontrarlos
+            cache.invalidateMissing(funkoSaved);
+            queries.invalidate(funkoSaved);
             try {
                 cache.put(funkoSaved.getId(), funkoSaved);
             } catch (Exception e) {
@@ -142,12 +499,49 @@ public class FunkoServiceImpl implements FunkoService{
         }).switchIfEmpty(Mono.error(new FunkoNoGuardado("No se ha podido guardar el funko con id cod: "+funko.getId())));
     }
 
+    /**
+     * Guarda varios funkos por lotes sin notificar. No se meten en la caché:
+     * en una importación masiva solo la llenarían de funkos que aún nadie ha pedido
+     * @param funkos
+     */
+    public Flux<Funko> saveAllWithoutNotify(Flux<Funko> funkos) throws SQLException {
+        logger.debug("Guardando funkos por lotes");
+        // Las listas se invalidan cuando saveAll termina, es decir, con la transacción ya confirmada:
+        // si se invalidaran antes, una lectura entre medias guardaría la lista sin los funkos nuevos
+        return repository.saveAll(funkos).collectList().flatMapIterable(saved -> {
+            saved.forEach(funkoSaved -> {
+                cache.invalidateMissing(funkoSaved);
+                queries.invalidate(funkoSaved);
+            });
+            return saved;
+        });
+    }
+
+    /**
+     * Guarda varios funkos por lotes y notifica cada uno
+     * @param funkos
+     */
+    @Override
+    public Flux<Funko> saveAll(Flux<Funko> funkos) throws SQLException {
+        return saveAllWithoutNotify(funkos).doOnNext(
+                funkoSaved -> {
+                    try {
+                        notificacion.notify(new Notificacion<>(Notificacion.Tipo.NEW, funkoSaved));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
     /**
      * Actualiza un funko sin notificar
      * @param funko
      */
     public Mono<Funko> updateWithoutNotify(Funko funko) throws SQLException, ExecutionException, InterruptedException {
         logger.debug("Actualizando funko: {}", funko);
+        if (writeBehind != null) {
+            return updateWriteBehind(funko);
+        }
         return this.findById(funko.getId())
                 .switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con id: " + funko.getId())))
                 .flatMap(
@@ -155,6 +549,9 @@ public class FunkoServiceImpl implements FunkoService{
                             try {
                                 return repository.update(funko).flatMap(updatedFunko ->
                                 {
+                                    // Puede haber cambiado de modelo o de año: se invalidan las listas de antes y de ahora
+                                    queries.invalidate(funkoFound);
+                                    queries.invalidate(updatedFunko);
                                     try {
                                         return cache.put(updatedFunko.getId(), updatedFunko).then(Mono.just(updatedFunko)).doOnError(
                                                 error -> logger.error(error.getMessage()));
@@ -169,6 +566,27 @@ public class FunkoServiceImpl implements FunkoService{
                 );
     }
 
+    /**
+     * Actualiza un funko en la caché y deja la escritura en la base de datos pendiente.
+     * Como en repository.update, solo cambian el nombre, el modelo y el precio
+     * @param funko
+     */
+    private Mono<Funko> updateWriteBehind(Funko funko) throws SQLException, ExecutionException, InterruptedException {
+        return this.findById(funko.getId()).flatMap(funkoFound -> {
+            Funko updated = new Funko(funkoFound.getId(), funkoFound.getCOD(), funkoFound.getMyId(), funko.getNombre(), funko.getModelo(),
+                    funko.getPrecio(), funkoFound.getFecha(), funkoFound.getCreated_at(),
+                    LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+            writeBehind.enqueue(funkoFound, updated);
+            queries.invalidate(funkoFound);
+            queries.invalidate(updated);
+            try {
+                return cache.put(updated.getId(), updated).thenReturn(updated);
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
     /**
      * Actualiza un funko y notifica
      * @param funko
@@ -187,22 +605,15 @@ public class FunkoServiceImpl implements FunkoService{
     }
 
     /**
-     * Elimina un funko sin notificar
+     * Elimina un funko sin notificar. Es una sola consulta: el DELETE devuelve la fila borrada,
+     * o nada si no existía
      * @param id
      */
     public Mono<Funko> deleteByIdWithoutNotification(Integer id) throws SQLException {
         logger.debug("Eliminando funko con id: {}", id);
-        return repository.findById(id)
+        return repository.deleteByIdReturning(id)
                 .switchIfEmpty(Mono.error(new FunkoNoEncontradoException("No existe el funko con id: " + id)))
-                .flatMap(funko -> {
-                    try {
-                        return cache.delete(funko.getId())
-                                .then(repository.deleteById(funko.getId()))
-                                .thenReturn(funko);
-                    } catch (SQLException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+                .flatMap(this::forgetDeleted);
     }
 
     /**
@@ -211,15 +622,46 @@ public class FunkoServiceImpl implements FunkoService{
      */
     @Override
     public Mono<Boolean> deleteById(Integer id) throws SQLException, ExecutionException, InterruptedException {
-        return  deleteByIdWithoutNotification(id).doOnSuccess(
-                funkoDeleted -> {
-                    try {
-                        notificacion.notify(new Notificacion<>(Notificacion.Tipo.DELETED, funkoDeleted));
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        ).map(funko -> true);
+        return  deleteByIdWithoutNotification(id).doOnSuccess(this::notifyDeleted).map(funko -> true);
+    }
+
+    /**
+     * Elimina varios funkos en una transacción, sin notificar (como deleteAll). Los ids que no existen se ignoran
+     * @param ids
+     */
+    @Override
+    public Flux<Funko> deleteByIds(List<Integer> ids) throws SQLException {
+        logger.debug("Eliminando {} funkos por id", ids.size());
+        // Se olvidan cuando deleteByIds termina, con la transacción confirmada: si falla un tramo se deshace
+        // todo y las actualizaciones pendientes de los funkos que siguen existiendo no se pierden
+        return repository.deleteByIds(ids).collectList()
+                .flatMapMany(deleted -> Flux.fromIterable(deleted).concatMap(this::forgetDeleted));
+    }
+
+    /**
+     * Quita de la caché, de las listas y de la escritura diferida un funko ya borrado de la base de datos
+     * @param deleted el funko tal como estaba en la base de datos
+     * @return el funko con la actualización que tuviera pendiente
+     */
+    private Mono<Funko> forgetDeleted(Funko deleted) {
+        Funko funko = withPendingUpdate(deleted);
+        if (writeBehind != null) {
+            writeBehind.discard(deleted.getId());
+        }
+        queries.invalidate(funko);
+        if (funko != deleted) {
+            // Con una actualización sin volcar, la base de datos lo tenía con sus datos de antes
+            queries.invalidate(deleted);
+        }
+        return cache.delete(deleted.getId()).thenReturn(funko);
+    }
+
+    private void notifyDeleted(Funko funkoDeleted) {
+        try {
+            notificacion.notify(new Notificacion<>(Notificacion.Tipo.DELETED, funkoDeleted));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -228,8 +670,14 @@ public class FunkoServiceImpl implements FunkoService{
     @Override
     public Mono<Void> deleteAll() throws SQLException, ExecutionException, InterruptedException {
         logger.debug("Eliminando todos los funkos");
-        cache.clear();
-        return repository.deleteAll().then(Mono.empty());
+        // Se vacían después del DELETE: antes, una lectura entre medias volvería a guardar los funkos borrados
+        return repository.deleteAll().then(Mono.fromRunnable(() -> {
+            cache.clear();
+            queries.clear();
+            if (writeBehind != null) {
+                writeBehind.discardAll();
+            }
+        }));
     }
 
     /**
@@ -250,7 +698,7 @@ public class FunkoServiceImpl implements FunkoService{
     }
 
     /**
-     * Importa los funkos desde un csv
+     * Importa los funkos desde un csv, insertándolos por lotes
      */
     @Override
     public Flux<Funko> importCsv() throws ExecutionException, InterruptedException {
@@ -258,14 +706,11 @@ public class FunkoServiceImpl implements FunkoService{
         Path path = Path.of("");
         String path_directory = path.toAbsolutePath().toString() + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "data" + File.separator;
         String file = path_directory + "funkos.csv";
-        return storageFunko.importFromCsvAsync(file).flatMap(
-            funko -> {
-                try {
-                    return save(funko);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-        });
+        try {
+            return saveAll(storageFunko.importFromCsvAsync(file));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -281,4 +726,14 @@ public class FunkoServiceImpl implements FunkoService{
     public void stopCleaner(){
         cache.shutdown();
     }
+
+    /**
+     * Vuelca las actualizaciones pendientes y detiene el cleaner
+     */
+    public void shutdown() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        stopCleaner();
+    }
 }
@@ -0,0 +1,264 @@
+package org.docker.server.services.funkos;
+
+import org.docker.common.models.Funko;
+import org.docker.server.repositories.funko.FunkoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Escritura diferida (write-behind) de las actualizaciones de funkos.
+ * Las actualizaciones se guardan en memoria agrupadas por id (solo queda la última) y se
+ * vuelcan a la base de datos en lotes cada cierto tiempo o al llegar a batchSize ids pendientes.
+ * Los volcados se hacen de uno en uno en un único hilo, así que las escrituras de un mismo id
+ * llegan a la base de datos en el orden en que se hicieron. Si un lote falla se parte en dos hasta
+ * aislar las actualizaciones que fallan, que se vuelven a poner en cola sin pisar las más recientes;
+ * tras MAX_ATTEMPTS intentos una actualización se descarta (ver onDropped). Al cerrar se vuelca todo
+ * lo pendiente y ya no se admiten más actualizaciones.
+ * Mientras una actualización no se ha guardado, get la devuelve para que nadie lea la versión antigua
+ * @see FunkoServiceImpl
+ * @author daniel
+ */
+public class FunkoWriteBehind {
+
+    /**
+     * Intentos de volcar una misma actualización antes de descartarla
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * Actualización pendiente: el funko antes de la primera actualización sin volcar, el último
+     * y cuántas veces ha fallado al volcarlo
+     */
+    private record Pending(Funko previous, Funko latest, int attempts) {
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(FunkoWriteBehind.class);
+
+    private final FunkoRepository repository;
+    private final int batchSize;
+
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    // Lote que se está volcando: se sigue leyendo de aquí hasta que se confirma
+    private final Map<Integer, Pending> flushing = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    private volatile BiConsumer<Funko, Funko> onFlushed = (previous, latest) -> {};
+    private volatile BiConsumer<Funko, Funko> onDropped = (previous, latest) -> {};
+
+    // enqueue lo toma para leer y close para escribir: lo encolado antes de cerrar entra en el último volcado
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /**
+     * Constructor de FunkoWriteBehind
+     * @param repository
+     * @param batchSize número de ids pendientes que provoca un volcado y tamaño máximo de cada lote
+     * @param flushInterval cada cuánto se vuelca lo pendiente
+     */
+    public FunkoWriteBehind(FunkoRepository repository, int batchSize, Duration flushInterval) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize debe ser mayor que 0");
+        }
+        this.repository = repository;
+        this.batchSize = batchSize;
+        long period = flushInterval.toMillis();
+        this.flusher.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Indica qué hacer con cada actualización ya guardada en la base de datos
+     * @param onFlushed recibe el funko antes de las actualizaciones volcadas y el guardado
+     */
+    public void onFlushed(BiConsumer<Funko, Funko> onFlushed) {
+        this.onFlushed = onFlushed;
+    }
+
+    /**
+     * Indica qué hacer con cada actualización que se descarta tras fallar MAX_ATTEMPTS veces
+     * @param onDropped recibe el funko antes de las actualizaciones descartadas y el que no se ha podido guardar
+     */
+    public void onDropped(BiConsumer<Funko, Funko> onDropped) {
+        this.onDropped = onDropped;
+    }
+
+    /**
+     * Deja una actualización pendiente de guardar
+     * @param previous funko antes de actualizarlo
+     * @param latest funko actualizado
+     * @throws IllegalStateException si ya se ha cerrado
+     */
+    public void enqueue(Funko previous, Funko latest) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("La escritura diferida está cerrada, no se guarda el funko con id: " + latest.getId());
+            }
+            // Una actualización nueva empieza sus intentos desde cero
+            pending.merge(latest.getId(), new Pending(previous, latest, 0),
+                    (queued, update) -> new Pending(queued.previous(), update.latest(), 0));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (pending.size() >= batchSize && flushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Ya se está cerrando: close() vuelca lo pendiente
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Última actualización de un funko que aún no está en la base de datos, o null
+     * @param id
+     */
+    public Funko get(Integer id) {
+        Pending queued = pending.get(id);
+        if (queued == null) {
+            queued = flushing.get(id);
+        }
+        return queued == null ? null : queued.latest();
+    }
+
+    /**
+     * Descarta la actualización pendiente de un funko que se va a borrar
+     * @param id
+     * @return el funko antes de las actualizaciones descartadas, o null si no había
+     */
+    public Funko discard(Integer id) {
+        Pending discarded = pending.remove(id);
+        return discarded == null ? null : discarded.previous();
+    }
+
+    /**
+     * Descarta todas las actualizaciones pendientes
+     */
+    public void discardAll() {
+        pending.clear();
+    }
+
+    /**
+     * Número de funkos con actualizaciones sin guardar
+     */
+    public int size() {
+        return pending.size() + flushing.size();
+    }
+
+    /**
+     * Vuelca a la base de datos todo lo pendiente, en lotes de batchSize.
+     * Solo se ejecuta en el hilo del volcador
+     */
+    private void flush() {
+        flushQueued.set(false);
+        while (!pending.isEmpty()) {
+            List<Pending> batch = new ArrayList<>(batchSize);
+            for (Integer id : pending.keySet()) {
+                Pending queued = pending.get(id);
+                if (queued == null) {
+                    continue;
+                }
+                // Primero a flushing y luego fuera de pending, para que get siempre la encuentre.
+                // Si mientras tanto llega otra actualización se queda en pending para el siguiente lote
+                flushing.put(id, queued);
+                pending.remove(id, queued);
+                batch.add(queued);
+                if (batch.size() == batchSize) {
+                    break;
+                }
+            }
+            if (!flushBatch(batch)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Vuelca un lote en una transacción. Si falla y tiene más de una actualización se vuelca cada mitad
+     * por separado, así una fila que falla no impide guardar las demás
+     * @return si se ha guardado todo el lote
+     */
+    private boolean flushBatch(List<Pending> batch) {
+        try {
+            repository.updateAll(batch.stream().map(Pending::latest).toList()).block();
+            logger.debug("Volcadas {} actualizaciones de funkos a la base de datos", batch.size());
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                logger.error("Error al volcar {} actualizaciones de funkos, se vuelcan por partes: {}", batch.size(), e.getMessage());
+                int half = batch.size() / 2;
+                boolean first = flushBatch(batch.subList(0, half));
+                boolean second = flushBatch(batch.subList(half, batch.size()));
+                return first && second;
+            }
+            retryOrDrop(batch.get(0), e);
+            return false;
+        }
+        for (Pending flushed : batch) {
+            flushing.remove(flushed.latest().getId());
+            onFlushed.accept(flushed.previous(), flushed.latest());
+        }
+        return true;
+    }
+
+    /**
+     * Vuelve a poner en cola una actualización que no se ha podido guardar o, si ya ha fallado
+     * MAX_ATTEMPTS veces, la descarta
+     * @param failed
+     * @param error
+     */
+    private void retryOrDrop(Pending failed, Exception error) {
+        Integer id = failed.latest().getId();
+        int attempts = failed.attempts() + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            logger.error("Se descarta la actualización del funko {} tras {} intentos: {}", failed.latest(), attempts, error.getMessage());
+            flushing.remove(id);
+            onDropped.accept(failed.previous(), failed.latest());
+            return;
+        }
+        logger.error("Error al volcar la actualización del funko con id: {}, se reintentará: {}", id, error.getMessage());
+        // Si ha llegado otra actualización mientras tanto, manda la nueva
+        pending.merge(id, new Pending(failed.previous(), failed.latest(), attempts),
+                (newer, old) -> new Pending(old.previous(), newer.latest(), newer.attempts()));
+        flushing.remove(id);
+    }
+
+    /**
+     * Deja de admitir actualizaciones, para los volcados periódicos y vuelca lo que quede pendiente
+     */
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.error("El volcador de actualizaciones no ha terminado a tiempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!pending.isEmpty()) {
+            logger.error("Quedan {} actualizaciones de funkos sin guardar", pending.size());
+        }
+    }
+}
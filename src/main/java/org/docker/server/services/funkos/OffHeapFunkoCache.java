@@ -0,0 +1,472 @@
+package org.docker.server.services.funkos;
+
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.server.exceptions.cache.CachePutNullKeyException;
+import org.docker.server.exceptions.cache.CachePutNullValueException;
+import org.docker.server.services.cache.Cache;
+import org.docker.server.services.cache.CacheStats;
+import org.docker.server.services.cache.StatsCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache de segundo nivel que guarda los funkos codificados en memoria fuera del heap (ByteBuffer directos),
+ * pensada para tener todo el catálogo detrás de la cache del heap. Cada funko ocupa un hueco de tamaño fijo;
+ * los que no caben (nombres muy largos) no se guardan. El índice id -> hueco son arrays de int con direccionamiento
+ * abierto y la expulsión es CLOCK, así que por muchas entradas que haya el GC solo ve unos pocos arrays primitivos.
+ * Está repartida en segmentos con su propio cerrojo, como StripedCache. No tiene índice por cod
+ * @see TieredFunkoCache
+ * @author daniel
+ */
+public class OffHeapFunkoCache implements Cache<Integer, Funko> {
+
+    // Tamaño de hueco por defecto: la parte fija ocupa HEADER_BYTES y el resto es para el nombre en UTF-8
+    public static final int DEFAULT_SLOT_BYTES = 128;
+
+    // Un ByteBuffer se indexa con int: cada segmento ocupa como mucho 1 GB
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final int HEADER_BYTES = 80;
+
+    // Bits de los campos que no son null
+    private static final int HAS_COD = 1;
+    private static final int HAS_MY_ID = 1 << 1;
+    private static final int HAS_NOMBRE = 1 << 2;
+    private static final int HAS_MODELO = 1 << 3;
+    private static final int HAS_FECHA = 1 << 4;
+    private static final int HAS_CREATED_AT = 1 << 5;
+    private static final int HAS_UPDATED_AT = 1 << 6;
+
+    private static final Modelo[] MODELOS = Modelo.values();
+
+    private final Logger logger = LoggerFactory.getLogger(OffHeapFunkoCache.class);
+
+    private final int slotBytes;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier ticker;
+    private final StatsCounter stats = new StatsCounter();
+    private final Segment[] segments;
+
+    /**
+     * Constructor de OffHeapFunkoCache sin caducidad
+     * @param maxEntries número máximo de funkos
+     * @param slotBytes bytes por funko
+     * @param segments número mínimo de segmentos con cerrojo propio
+     */
+    public OffHeapFunkoCache(int maxEntries, int slotBytes, int segments) {
+        this(maxEntries, slotBytes, segments, Duration.ZERO, System::nanoTime);
+    }
+
+    /**
+     * Constructor de OffHeapFunkoCache
+     * @param maxEntries número máximo de funkos
+     * @param slotBytes bytes por funko (al menos la parte fija más unos bytes de nombre)
+     * @param segments número mínimo de segmentos con cerrojo propio; se usan más si no caben en 1 GB cada uno
+     * @param expireAfterWrite tiempo de vida desde que se guarda (cero para no caducar)
+     * @param ticker reloj en nanosegundos
+     */
+    public OffHeapFunkoCache(int maxEntries, int slotBytes, int segments, Duration expireAfterWrite, LongSupplier ticker) {
+        if (maxEntries <= 0 || segments <= 0) {
+            throw new IllegalArgumentException("maxEntries y segments deben ser mayores que 0");
+        }
+        if (slotBytes <= HEADER_BYTES || slotBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("slotBytes debe ser mayor que " + HEADER_BYTES);
+        }
+        this.slotBytes = slotBytes;
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.ticker = ticker;
+        long bytes = (long) maxEntries * slotBytes;
+        int count = (int) Math.min(maxEntries, Math.max(segments, (bytes + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Reparte el resto entre los primeros segmentos para que la suma sea maxEntries
+            int capacity = maxEntries / count + (i < maxEntries % count ? 1 : 0);
+            this.segments[i] = new Segment(capacity, slotBytes);
+        }
+        logger.debug("Cache fuera del heap: " + maxEntries + " funkos de " + slotBytes + " bytes en " + count + " segmentos");
+    }
+
+    /**
+     * Guarda un funko en la cache. Si no cabe en un hueco no se guarda y se olvida el que hubiera con ese id
+     * @param key
+     * @param value
+     */
+    @Override
+    public Mono<Void> put(Integer key, Funko value) {
+        if (key == null) {
+            return Mono.error(new CachePutNullKeyException("No se puede guardar un funko con id null en la cache"));
+        } else if (value == null) {
+            return Mono.error(new CachePutNullValueException("No se puede guardar un funko con value null en la cache"));
+        }
+        return Mono.fromRunnable(() -> {
+            // Se codifica fuera del cerrojo
+            byte[] encoded = encode(key, value);
+            Segment segment = segmentFor(key);
+            if (encoded == null) {
+                logger.debug("El funko con id: {} no cabe en {} bytes, no se guarda fuera del heap", key, slotBytes);
+                segment.remove(key, false);
+                return;
+            }
+            segment.put(key, encoded);
+        });
+    }
+
+    /**
+     * Obtiene un funko de la cache
+     * @param key
+     */
+    @Override
+    public Mono<Funko> get(Integer key) {
+        Funko funko = key == null ? null : segmentFor(key).get(key);
+        if (funko != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return Mono.justOrEmpty(funko);
+    }
+
+    /**
+     * Elimina un funko de la cache
+     * @param key
+     */
+    @Override
+    public Mono<Funko> delete(Integer key) {
+        return Mono.justOrEmpty(key == null ? null : segmentFor(key).remove(key, true));
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * No hay nada que parar. La memoria de los ByteBuffer la libera el GC al dejar de usarse la cache
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+        stats.recordLoadSuccess(loadNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+        stats.recordLoadFailure(loadNanos);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Número de funkos en la cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Bytes reservados fuera del heap
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.data.capacity();
+        }
+        return bytes;
+    }
+
+    private long now() {
+        return ticker.getAsLong();
+    }
+
+    private Segment segmentFor(int key) {
+        return segments[Math.floorMod(mix(key), segments.length)];
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Codifica un funko en un hueco: campos fijos, fechas como números y el nombre en UTF-8 al final
+     * @return los bytes o null si no cabe
+     */
+    private byte[] encode(int key, Funko funko) {
+        byte[] nombre = funko.getNombre() == null ? new byte[0] : funko.getNombre().getBytes(StandardCharsets.UTF_8);
+        if (HEADER_BYTES + nombre.length > slotBytes) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + nombre.length);
+        int flags = (funko.getCOD() != null ? HAS_COD : 0)
+                | (funko.getMyId() != null ? HAS_MY_ID : 0)
+                | (funko.getNombre() != null ? HAS_NOMBRE : 0)
+                | (funko.getModelo() != null ? HAS_MODELO : 0)
+                | (funko.getFecha() != null ? HAS_FECHA : 0)
+                | (funko.getCreated_at() != null ? HAS_CREATED_AT : 0)
+                | (funko.getUpdated_at() != null ? HAS_UPDATED_AT : 0);
+        buffer.putLong(0); // momento de la escritura, lo pone el segmento
+        buffer.put((byte) flags);
+        buffer.putInt(key);
+        buffer.putLong(funko.getCOD() != null ? funko.getCOD().getMostSignificantBits() : 0);
+        buffer.putLong(funko.getCOD() != null ? funko.getCOD().getLeastSignificantBits() : 0);
+        buffer.putLong(funko.getMyId() != null ? funko.getMyId() : 0);
+        buffer.put((byte) (funko.getModelo() != null ? funko.getModelo().ordinal() : 0));
+        buffer.putDouble(funko.getPrecio());
+        buffer.putLong(funko.getFecha() != null ? funko.getFecha().toEpochDay() : 0);
+        putDateTime(buffer, funko.getCreated_at());
+        putDateTime(buffer, funko.getUpdated_at());
+        buffer.putShort((short) nombre.length);
+        buffer.put(nombre);
+        return buffer.array();
+    }
+
+    private static void putDateTime(ByteBuffer buffer, LocalDateTime dateTime) {
+        buffer.putLong(dateTime != null ? dateTime.toEpochSecond(ZoneOffset.UTC) : 0);
+        buffer.putInt(dateTime != null ? dateTime.getNano() : 0);
+    }
+
+    /**
+     * Decodifica el funko del hueco que empieza en offset (con el cerrojo del segmento cogido)
+     */
+    private static Funko decode(ByteBuffer data, int offset) {
+        int position = offset + Long.BYTES;
+        int flags = data.get(position);
+        position += 1;
+        int id = data.getInt(position);
+        position += Integer.BYTES;
+        UUID cod = new UUID(data.getLong(position), data.getLong(position + Long.BYTES));
+        position += 2 * Long.BYTES;
+        long myId = data.getLong(position);
+        position += Long.BYTES;
+        Modelo modelo = MODELOS[data.get(position)];
+        position += 1;
+        double precio = data.getDouble(position);
+        position += Double.BYTES;
+        LocalDate fecha = LocalDate.ofEpochDay(data.getLong(position));
+        position += Long.BYTES;
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(data.getLong(position), data.getInt(position + Long.BYTES), ZoneOffset.UTC);
+        position += Long.BYTES + Integer.BYTES;
+        LocalDateTime updatedAt = LocalDateTime.ofEpochSecond(data.getLong(position), data.getInt(position + Long.BYTES), ZoneOffset.UTC);
+        position += Long.BYTES + Integer.BYTES;
+        byte[] nombre = new byte[data.getShort(position) & 0xFFFF];
+        position += Short.BYTES;
+        data.get(position, nombre);
+        return new Funko(
+                id,
+                (flags & HAS_COD) != 0 ? cod : null,
+                (flags & HAS_MY_ID) != 0 ? myId : null,
+                (flags & HAS_NOMBRE) != 0 ? new String(nombre, StandardCharsets.UTF_8) : null,
+                (flags & HAS_MODELO) != 0 ? modelo : null,
+                precio,
+                (flags & HAS_FECHA) != 0 ? fecha : null,
+                (flags & HAS_CREATED_AT) != 0 ? createdAt : null,
+                (flags & HAS_UPDATED_AT) != 0 ? updatedAt : null
+        );
+    }
+
+    /**
+     * Segmento: un ByteBuffer directo con capacity huecos, una tabla hash de int con sondeo lineal
+     * (guarda hueco + 1, 0 es vacío), el id de cada hueco y su bit de referencia para CLOCK
+     */
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer data;
+        private final int capacity;
+        private final int[] table;
+        private final int mask;
+        private final int[] slotKeys;
+        private final byte[] referenced;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int allocated;
+        private int hand;
+
+        private volatile int size;
+
+        private Segment(int capacity, int slotBytes) {
+            this.capacity = capacity;
+            this.data = ByteBuffer.allocateDirect(capacity * slotBytes);
+            // Como mucho medio llena para que los sondeos sean cortos
+            this.table = new int[Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2];
+            this.mask = table.length - 1;
+            this.slotKeys = new int[capacity];
+            this.referenced = new byte[capacity];
+            this.freeSlots = new int[capacity];
+        }
+
+        private Funko get(int key) {
+            lock.lock();
+            try {
+                int index = find(key);
+                if (index < 0) {
+                    return null;
+                }
+                int slot = table[index] - 1;
+                if (expired(slot)) {
+                    removeAt(index);
+                    stats.recordExpiration();
+                    return null;
+                }
+                referenced[slot] = 1;
+                return decode(data, slot * slotBytes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(int key, byte[] encoded) {
+            lock.lock();
+            try {
+                int index = find(key);
+                int slot;
+                if (index >= 0) {
+                    slot = table[index] - 1;
+                } else {
+                    slot = allocate();
+                    slotKeys[slot] = key;
+                    table[emptyIndex(key)] = slot + 1;
+                    size++;
+                }
+                int offset = slot * slotBytes;
+                data.put(offset, encoded);
+                data.putLong(offset, now());
+                // Una entrada nueva solo tiene segunda oportunidad si se lee
+                referenced[slot] = (byte) (index >= 0 ? 1 : 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Funko remove(int key, boolean decode) {
+            lock.lock();
+            try {
+                int index = find(key);
+                if (index < 0) {
+                    return null;
+                }
+                Funko removed = decode ? decode(data, (table[index] - 1) * slotBytes) : null;
+                removeAt(index);
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                Arrays.fill(table, 0);
+                Arrays.fill(referenced, (byte) 0);
+                freeCount = 0;
+                allocated = 0;
+                hand = 0;
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean expired(int slot) {
+            return expireAfterWriteNanos > 0 && now() - data.getLong(slot * slotBytes) >= expireAfterWriteNanos;
+        }
+
+        /**
+         * Un hueco libre: uno liberado, uno sin estrenar o el que expulse CLOCK
+         */
+        private int allocate() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            if (allocated < capacity) {
+                return allocated++;
+            }
+            // Lleno: todos los huecos están ocupados. Se da una segunda oportunidad a los leídos desde la última vuelta
+            while (true) {
+                int slot = hand;
+                hand = hand + 1 == capacity ? 0 : hand + 1;
+                if (referenced[slot] != 0) {
+                    referenced[slot] = 0;
+                } else {
+                    removeAt(find(slotKeys[slot]));
+                    stats.recordEviction();
+                    return freeSlots[--freeCount];
+                }
+            }
+        }
+
+        private int find(int key) {
+            int index = mix(key) & mask;
+            while (table[index] != 0) {
+                if (slotKeys[table[index] - 1] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int emptyIndex(int key) {
+            int index = mix(key) & mask;
+            while (table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * Quita la entrada de la tabla y libera su hueco. Desplaza hacia atrás las siguientes del mismo
+         * grupo para no dejar huecos en los sondeos (sin marcas de borrado)
+         */
+        private void removeAt(int index) {
+            int slot = table[index] - 1;
+            referenced[slot] = 0;
+            freeSlots[freeCount++] = slot;
+            size--;
+            int i = index;
+            int j = index;
+            while (true) {
+                table[i] = 0;
+                while (true) {
+                    j = (j + 1) & mask;
+                    if (table[j] == 0) {
+                        return;
+                    }
+                    int home = mix(slotKeys[table[j] - 1]) & mask;
+                    // Si su posición ideal está entre i (excluido) y j, sigue siendo alcanzable: no se mueve
+                    boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                    if (!reachable) {
+                        break;
+                    }
+                }
+                table[i] = table[j];
+                i = j;
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.docker.server.services.funkos;
+
+import org.docker.common.models.Funko;
+import org.docker.server.services.cache.Cache;
+import org.docker.server.services.cache.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache de funkos en dos niveles: una cache pequeña en el heap (l1) delante de otra grande (l2),
+ * normalmente OffHeapFunkoCache. Se escribe en las dos, así que l2 tiene también los de l1, y lo que
+ * falta en l1 se busca en l2 y se sube a l1. Las búsquedas por cod, las fallidas, el refresco y las
+ * estadísticas son las de l1
+ * @see OffHeapFunkoCache
+ * @author daniel
+ */
+public class TieredFunkoCache implements FunkoCache {
+
+    private final Logger logger = LoggerFactory.getLogger(TieredFunkoCache.class);
+
+    private final FunkoCache l1;
+    private final Cache<Integer, Funko> l2;
+
+    private static final int STRIPES = 64;
+    // Escrituras empezadas y terminadas por franja de ids. Lo que se sube de l2 a l1 solo se queda
+    // si no había ninguna escritura en curso al leerlo y no ha empezado otra mientras se subía
+    private final AtomicLongArray started = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray finished = new AtomicLongArray(STRIPES);
+
+    /**
+     * Constructor de TieredFunkoCache
+     * @param l1 cache del heap
+     * @param l2 cache de segundo nivel
+     */
+    public TieredFunkoCache(FunkoCache l1, Cache<Integer, Funko> l2) {
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    /**
+     * Guarda un funko en los dos niveles
+     * @param key
+     * @param value
+     */
+    @Override
+    public Mono<Void> put(Integer key, Funko value) throws Exception {
+        return writing(key, () -> {
+            try {
+                return l1.put(key, value).then(l2.put(key, value));
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    /**
+     * Obtiene un funko de l1 o, si no está, de l2 subiéndolo a l1. Si mientras tanto se escribe
+     * ese id, lo subido puede ser una versión anterior o un funko ya borrado y se quita de l1
+     * @param key
+     */
+    @Override
+    public Mono<Funko> get(Integer key) {
+        return l1.get(key).switchIfEmpty(Mono.defer(() -> {
+            int stripe = stripe(key);
+            long before = started.get(stripe);
+            boolean quiet = finished.get(stripe) == before;
+            return l2.get(key).flatMap(funko -> {
+                logger.debug("Funko con id: {} encontrado en la cache de segundo nivel", key);
+                return quiet ? promote(key, funko, stripe, before) : Mono.just(funko);
+            });
+        }));
+    }
+
+    private Mono<Funko> promote(Integer key, Funko funko, int stripe, long before) {
+        try {
+            return l1.put(key, funko).then(Mono.defer(() -> started.get(stripe) == before
+                    ? Mono.just(funko)
+                    : l1.delete(key).thenReturn(funko)));
+        } catch (Exception e) {
+            return Mono.error(e);
+        }
+    }
+
+    /**
+     * Obtiene un funko por su cod de l1: l2 solo está indexada por id
+     * @param cod
+     */
+    @Override
+    public Mono<Funko> getByCod(UUID cod) {
+        return l1.getByCod(cod);
+    }
+
+    /**
+     * Elimina un funko de los dos niveles
+     * @param key
+     */
+    @Override
+    public Mono<Funko> delete(Integer key) {
+        return writing(key, () -> l1.delete(key)
+                .flatMap(funko -> l2.delete(key).thenReturn(funko))
+                .switchIfEmpty(Mono.defer(() -> l2.delete(key))));
+    }
+
+    /**
+     * Ejecuta una escritura de un id anotando en su franja cuándo empieza y cuándo termina
+     * @param key
+     * @param write
+     */
+    private <T> Mono<T> writing(Integer key, Supplier<Mono<T>> write) {
+        int stripe = stripe(key);
+        return Mono.defer(() -> {
+            started.incrementAndGet(stripe);
+            return write.get();
+        }).doFinally(signal -> finished.incrementAndGet(stripe));
+    }
+
+    private static int stripe(Integer key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    @Override
+    public void clear() {
+        l1.clear();
+        l2.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        l1.shutdown();
+        l2.shutdown();
+    }
+
+    @Override
+    public void putMissing(Integer id) {
+        l1.putMissing(id);
+    }
+
+    @Override
+    public void putMissingByCod(UUID cod) {
+        l1.putMissingByCod(cod);
+    }
+
+    @Override
+    public boolean isMissing(Integer id) {
+        return l1.isMissing(id);
+    }
+
+    @Override
+    public boolean isMissingByCod(UUID cod) {
+        return l1.isMissingByCod(cod);
+    }
+
+    @Override
+    public void invalidateMissing(Funko funko) {
+        l1.invalidateMissing(funko);
+    }
+
+    /**
+     * l1 refresca sus funkos por su cuenta y l2 olvida los que se refrescan antes de recargarlos: así no se queda con
+     * una versión anterior, y tampoco pisa una actualización que llegue mientras se recarga
+     * @param loader
+     */
+    @Override
+    public void refreshWith(Function<Integer, Mono<Funko>> loader) {
+        l1.refreshWith(id -> writing(id, () -> l2.delete(id).then(loader.apply(id))));
+    }
+
+    @Override
+    public Map<Integer, Long> hotKeys(int limit) {
+        return l1.hotKeys(limit);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+        l1.recordLoadSuccess(loadNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+        l1.recordLoadFailure(loadNanos);
+    }
+
+    /**
+     * Estadísticas de l1: un acierto en l2 cuenta como fallo de l1
+     */
+    @Override
+    public CacheStats stats() {
+        return l1.stats();
+    }
+
+    /**
+     * Estadísticas de l2
+     */
+    public CacheStats secondLevelStats() {
+        return l2.stats();
+    }
+}
@@ -9,3 +9,8 @@ CREATE TABLE IF NOT EXISTS funkos(
     created_at TIMESTAMP DEFAULT  CURRENT_TIMESTAMP NOT NULL,
     updated_at TIMESTAMP DEFAULT  CURRENT_TIMESTAMP NOT NULL
 );
+
+CREATE INDEX IF NOT EXISTS idx_funkos_model_id ON funkos(model, id);
+CREATE INDEX IF NOT EXISTS idx_funkos_name_id ON funkos(name, id);
+DROP INDEX IF EXISTS idx_funkos_release_date;
+CREATE INDEX IF NOT EXISTS idx_funkos_release_date_id ON funkos(release_date, id);
@@ -3,12 +3,16 @@ package repositories;
 import org.docker.common.enums.Modelo;
 import org.docker.common.models.Funko;
 import org.docker.server.repositories.funko.FunkoRepositoryImpl;
+import org.docker.server.repositories.funko.ReleaseCursor;
 import org.docker.server.services.database.DataBaseManager;
 import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,6 +49,26 @@ public class FunkoRepositoryImplTest {
 
     }
 
+    @Test
+    void findAllPage() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block();
+        }
+
+        var firstPage = repository.findAll(null, 2).collectList().block();
+        var secondPage = repository.findAll(firstPage.get(1).getId(), 2).collectList().block();
+        var lastPage = repository.findAll(secondPage.get(1).getId(), 2).collectList().block();
+
+        assertAll(
+                () -> assertEquals(2, firstPage.size()),
+                () -> assertTrue(firstPage.get(0).getId() < firstPage.get(1).getId()),
+                () -> assertEquals(2, secondPage.size()),
+                () -> assertTrue(firstPage.get(1).getId() < secondPage.get(0).getId()),
+                () -> assertEquals(1, lastPage.size()),
+                () -> assertTrue(repository.findAll(lastPage.get(0).getId(), 2).collectList().block().isEmpty())
+        );
+    }
+
     @Test
     void saveTest() {
         Funko funko = new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -56,6 +80,25 @@ public class FunkoRepositoryImplTest {
 
     }
 
+    @Test
+    void saveAllTest() throws SQLException {
+        List<Funko> funkos = new ArrayList<>();
+        // Más funkos que database.batchSize para que haya varios lotes
+        for (int i = 0; i < 1203; i++) {
+            funkos.add(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now()));
+        }
+
+        var saved = repository.saveAll(Flux.fromIterable(funkos)).collectList().block();
+
+        assertAll(
+                () -> assertEquals(funkos.size(), saved.size()),
+                () -> assertTrue(saved.stream().allMatch(funko -> funko.getId() != null)),
+                () -> assertEquals(funkos.size(), saved.stream().map(Funko::getId).distinct().count()),
+                () -> assertEquals("Mi Funko 1202", repository.findById(saved.get(1202).getId()).block().getNombre()),
+                () -> assertEquals(funkos.size(), repository.findAll().collectList().block().size())
+        );
+    }
+
     @Test
     void updateTest() throws SQLException {
         Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -75,6 +118,78 @@ public class FunkoRepositoryImplTest {
     }
 
 
+    @Test
+    void updateChangesUpdatedAt() throws SQLException {
+        Funko funko = new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        repository.save(funko).block();
+        LocalDateTime before = repository.findById(funko.getId()).block().getUpdated_at();
+
+        Funko funko_updated = repository.update(funko).block();
+
+        assertAll(
+                () -> assertTrue(funko_updated.getUpdated_at().isAfter(before)),
+                () -> assertEquals(repository.findById(funko.getId()).block().getUpdated_at(), funko_updated.getUpdated_at())
+        );
+    }
+
+    @Test
+    void updateAllTest() throws SQLException {
+        List<Funko> funkos = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            funkos.add(repository.save(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 10.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block());
+        }
+        LocalDateTime updatedAt = LocalDateTime.of(2024, 1, 1, 10, 30);
+        funkos.forEach(funko -> {
+            funko.setPrecio(99.0);
+            funko.setUpdated_at(updatedAt);
+        });
+
+        Long rows = repository.updateAll(funkos).block();
+        Funko updated = repository.findById(funkos.get(2).getId()).block();
+
+        assertAll(
+                () -> assertEquals(3L, rows),
+                () -> assertEquals(99.0, updated.getPrecio()),
+                () -> assertEquals(updatedAt, updated.getUpdated_at()),
+                () -> assertEquals(0L, repository.updateAll(List.of()).block())
+        );
+    }
+
+    @Test
+    void findAllByIdsTest() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            ids.add(repository.save(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 10.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block().getId());
+        }
+        List<Integer> requested = new ArrayList<>(ids);
+        requested.add(ids.get(0));
+        requested.add(-1);
+
+        // Más ids que un tramo del IN, con un repetido y uno que no existe
+        var found = repository.findAllByIds(requested).collectList().block();
+
+        assertAll(
+                () -> assertEquals(250, found.size()),
+                () -> assertTrue(found.stream().map(Funko::getId).toList().containsAll(ids)),
+                () -> assertTrue(repository.findAllByIds(List.of()).collectList().block().isEmpty())
+        );
+    }
+
+    @Test
+    void findAllByCodsTest() throws SQLException {
+        Funko funko = repository.save(new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 1", Modelo.ANIME, 10.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block();
+        Funko funko2 = repository.save(new Funko(null, UUID.randomUUID(), 2L,  "Mi Funko 2", Modelo.MARVEL, 20.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block();
+
+        // Tres cods: el IN se rellena hasta cuatro repitiendo el último, sin devolverlo dos veces
+        var found = repository.findAllByCods(List.of(funko2.getCOD(), UUID.randomUUID(), funko.getCOD())).collectList().block();
+
+        assertAll(
+                () -> assertEquals(2, found.size()),
+                () -> assertTrue(found.stream().anyMatch(f -> f.getId().equals(funko.getId()))),
+                () -> assertTrue(found.stream().anyMatch(f -> f.getId().equals(funko2.getId())))
+        );
+    }
+
     @Test
     void findById() throws SQLException {
         Funko funko = new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -115,6 +230,42 @@ public class FunkoRepositoryImplTest {
 
     }
 
+    @Test
+    void deleteByIdReturningTest() throws SQLException {
+        Funko funko = repository.save(new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block();
+
+        Funko deleted = repository.deleteByIdReturning(funko.getId()).block();
+
+        assertAll(
+                () -> assertEquals(funko.getCOD(), deleted.getCOD()),
+                () -> assertEquals("Mi Funko 2", deleted.getNombre()),
+                () -> assertNull(repository.findById(funko.getId()).block()),
+                () -> assertNull(repository.deleteByIdReturning(funko.getId()).block())
+        );
+    }
+
+    @Test
+    void deleteByIdsTest() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            ids.add(repository.save(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 10.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block().getId());
+        }
+        Integer kept = ids.remove(0);
+        List<Integer> requested = new ArrayList<>(ids);
+        requested.add(ids.get(0));
+        requested.add(-1);
+
+        // Más ids que un tramo del IN, con un repetido y uno que no existe
+        var deleted = repository.deleteByIds(requested).collectList().block();
+
+        assertAll(
+                () -> assertEquals(149, deleted.size()),
+                () -> assertTrue(deleted.stream().map(Funko::getId).toList().containsAll(ids)),
+                () -> assertEquals(List.of(kept), repository.findAll().map(Funko::getId).collectList().block()),
+                () -> assertTrue(repository.deleteByIds(List.of()).collectList().block().isEmpty())
+        );
+    }
+
     @Test
     void deleteAllTest() throws SQLException {
         Funko funko = new Funko(1, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -139,7 +290,74 @@ public class FunkoRepositoryImplTest {
         );
     }
 
-}
+    @Test
+    void findByModelo() throws SQLException {
+        Funko funko = new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko2 = new Funko(null, UUID.randomUUID(), 2L,  "Mi Funko 3", Modelo.MARVEL, 25.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
 
+        repository.save(funko).block();
+        repository.save(funko2).block();
+
+        var anime = repository.findByModelo(Modelo.ANIME).collectList().block();
 
+        assertAll(
+                () -> assertTrue(anime.size() == 1),
+                () -> assertEquals(Modelo.ANIME, anime.get(0).getModelo()),
+                () -> assertTrue(repository.findByModelo(Modelo.DISNEY).collectList().block().isEmpty())
+        );
+    }
 
+    @Test
+    void findByReleaseYear() throws SQLException {
+        Funko funko = new Funko(null, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.of(2023, 1, 1),  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko2 = new Funko(null, UUID.randomUUID(), 2L,  "Mi Funko 3", Modelo.ANIME, 55.0, LocalDate.of(2023, 12, 31),  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko3 = new Funko(null, UUID.randomUUID(), 3L,  "Mi Funko 4", Modelo.ANIME, 55.0, LocalDate.of(2022, 12, 31),  LocalDateTime.now(), LocalDateTime.now());
+
+        repository.save(funko).block();
+        repository.save(funko2).block();
+        repository.save(funko3).block();
+
+        assertAll(
+                () -> assertTrue(repository.findByReleaseYear(2023).collectList().block().size() == 2),
+                () -> assertTrue(repository.findByReleaseYear(2022).collectList().block().size() == 1),
+                () -> assertTrue(repository.findByReleaseYear(2020).collectList().block().isEmpty())
+        );
+    }
+
+    @Test
+    void findByReleaseYearPage() throws SQLException {
+        // Se insertan desordenados: las páginas van por fecha y, en la misma fecha, por id
+        LocalDate[] fechas = {LocalDate.of(2023, 12, 1), LocalDate.of(2023, 3, 1), LocalDate.of(2022, 12, 31), LocalDate.of(2023, 3, 1), LocalDate.of(2023, 6, 1)};
+        for (int i = 0; i < fechas.length; i++) {
+            repository.save(new Funko(null, UUID.randomUUID(), (long) i,  "Mi Funko " + i, Modelo.ANIME, 55.0, fechas[i],  LocalDateTime.now(), LocalDateTime.now())).block();
+        }
+
+        var firstPage = repository.findByReleaseYear(2023, null, 2).collectList().block();
+        var last = firstPage.get(1);
+        var secondPage = repository.findByReleaseYear(2023, new ReleaseCursor(last.getFecha(), last.getId()), 2).collectList().block();
+        var lastInSecond = secondPage.get(1);
+        var lastPage = repository.findByReleaseYear(2023, new ReleaseCursor(lastInSecond.getFecha(), lastInSecond.getId()), 2).collectList().block();
+
+        assertAll(
+                () -> assertEquals(LocalDate.of(2023, 3, 1), firstPage.get(0).getFecha()),
+                () -> assertEquals(LocalDate.of(2023, 3, 1), firstPage.get(1).getFecha()),
+                () -> assertTrue(firstPage.get(0).getId() < firstPage.get(1).getId()),
+                () -> assertEquals(LocalDate.of(2023, 6, 1), secondPage.get(0).getFecha()),
+                () -> assertEquals(LocalDate.of(2023, 12, 1), secondPage.get(1).getFecha()),
+                () -> assertTrue(lastPage.isEmpty())
+        );
+    }
+
+    @Test
+    void releaseCursorTest() {
+        var cursor = new ReleaseCursor(LocalDate.of(2023, 5, 1), 42);
+
+        assertAll(
+                () -> assertEquals("2023-05-01:42", cursor.toString()),
+                () -> assertEquals(cursor, ReleaseCursor.parse(cursor.toString())),
+                () -> assertThrows(IllegalArgumentException.class, () -> ReleaseCursor.parse("42")),
+                () -> assertThrows(IllegalArgumentException.class, () -> ReleaseCursor.parse("2023-13-01:42")),
+                () -> assertThrows(IllegalArgumentException.class, () -> ReleaseCursor.parse("2023-05-01:x"))
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.cache.StripedCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reproduce una traza sesgada (Zipf) con recorridos periódicos de claves que no se repiten,
+ * como los de un GETALL o una importación, y compara la tasa de aciertos de LRU y W-TinyLFU
+ */
+public class CachePolicyHitRatioTest {
+
+    private static final int KEYS = 10_000;
+    private static final int REQUESTS = 300_000;
+
+    /**
+     * Traza con semilla fija: 90% de peticiones Zipf(0.9) y cada 20000 peticiones
+     * un recorrido de 2000 claves nuevas
+     */
+    private int[] skewedTraceWithScans() {
+        double[] cdf = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, 0.9);
+            cdf[i] = sum;
+        }
+        Random random = new Random(42);
+        int[] trace = new int[REQUESTS];
+        int scanKey = KEYS;
+        for (int i = 0; i < REQUESTS; i++) {
+            if (i % 20_000 < 2_000) {
+                trace[i] = scanKey++;
+                continue;
+            }
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = index < 0 ? -index - 1 : index;
+        }
+        return trace;
+    }
+
+    private double hitRatio(CachePolicy policy, int[] trace, int maxSize) {
+        StripedCache<Integer, Integer> cache = new StripedCache<>(maxSize, 8, policy::create);
+        int hits = 0;
+        for (int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    @Test
+    void tinyLfuBeatsLruOnSkewedWorkload() {
+        int[] trace = skewedTraceWithScans();
+        for (int maxSize : new int[]{100, 500, 1000}) {
+            double lru = hitRatio(CachePolicy.LRU, trace, maxSize);
+            double tinyLfu = hitRatio(CachePolicy.TINYLFU, trace, maxSize);
+            assertTrue(tinyLfu > lru + 0.05,
+                    String.format("maxSize=%d LRU=%.3f W-TinyLFU=%.3f", maxSize, lru, tinyLfu));
+        }
+    }
+
+    @Test
+    void scanDoesNotEvictHotKeys() {
+        StripedCache<Integer, Integer> cache = new StripedCache<>(100, 1, CachePolicy.TINYLFU::create);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 50; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                }
+            }
+        }
+        // Recorrido de claves que solo se piden una vez
+        for (int key = 1_000; key < 5_000; key++) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        int hot = 0;
+        for (int key = 0; key < 50; key++) {
+            if (cache.get(key) != null) {
+                hot++;
+            }
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(50, hot);
+    }
+}
@@ -0,0 +1,137 @@
+package services;
+
+import com.google.gson.Gson;
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.common.models.Request;
+import org.docker.common.models.Response;
+import org.docker.common.protocol.FrameCodec;
+import org.docker.server.ClientHandler;
+import org.docker.server.Server;
+import org.docker.server.repositories.users.UserRepository;
+import org.docker.server.services.Token.TokenService;
+import org.docker.server.services.funkos.FunkoServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ClientHandlerTest {
+
+    @Mock
+    FunkoServiceImpl service;
+
+    private final Gson gson = new Gson();
+
+    private StringWriter out;
+    private ClientHandler handler;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        out = new StringWriter();
+        handler = new ClientHandler(1, service, new PrintWriter(out, true));
+        token = TokenService.getInstance().createToken(UserRepository.getInstance().findByById(1).get(), Server.TOKEN_SECRET, Server.TOKEN_EXPIRATION);
+    }
+
+    private void send(Request.Type type, String content) throws Exception {
+        handler.processLine(gson.toJson(new Request(type, content, token, LocalDateTime.now().toString())));
+    }
+
+    private List<Response> responses() {
+        return out.toString().lines().map(line -> gson.fromJson(line, Response.class)).toList();
+    }
+
+    @Test
+    void getByIdsTest() throws Exception {
+        Funko funko = new Funko(1, UUID.randomUUID(), 1L,  "Mi Funko", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        when(service.findAllByIds(List.of(1, 2))).thenReturn(Flux.just(funko));
+
+        send(Request.Type.GETBYIDS, "[1, 2]");
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(1, res.size()),
+                () -> assertEquals(Response.Status.OK, res.get(0).status())
+        );
+    }
+
+    @Test
+    void getByIdsWithoutContentTest() throws Exception {
+        send(Request.Type.GETBYIDS, null);
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(1, res.size()),
+                () -> assertEquals(Response.Status.ERROR, res.get(0).status())
+        );
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void getByIdsMalformedTest() throws Exception {
+        send(Request.Type.GETBYIDS, "[1, \"uno\"");
+        send(Request.Type.GETBYIDS, "[1, null]");
+        send(Request.Type.GETBYCODS, "[\"no es un cod\"]");
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(3, res.size()),
+                () -> assertTrue(res.stream().allMatch(r -> r.status() == Response.Status.ERROR))
+        );
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void getByIdsTooManyTest() throws Exception {
+        send(Request.Type.GETBYIDS, gson.toJson(Collections.nCopies(1001, 1)));
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(1, res.size()),
+                () -> assertEquals(Response.Status.ERROR, res.get(0).status())
+        );
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void deleteByIdsInvalidListTest() throws Exception {
+        send(Request.Type.DELETEBYIDS, null);
+        send(Request.Type.DELETEBYIDS, "[1, null]");
+        send(Request.Type.DELETEBYIDS, "{\"id\": 1}");
+        send(Request.Type.DELETEBYIDS, gson.toJson(Collections.nCopies(5001, 1)));
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(4, res.size()),
+                () -> assertTrue(res.stream().allMatch(r -> r.status() == Response.Status.ERROR))
+        );
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void helloIsRejectedWithoutSocket() throws Exception {
+        // Las tramas binarias solo se negocian en conexiones con socket propio, no en NIO
+        send(Request.Type.HELLO, FrameCodec.VERSION);
+
+        var res = responses();
+        assertAll(
+                () -> assertEquals(1, res.size()),
+                () -> assertEquals(Response.Status.ERROR, res.get(0).status())
+        );
+    }
+}
@@ -0,0 +1,544 @@
+package services;
+
+import org.docker.common.models.Funko;
+import org.docker.server.exceptions.cache.CachePutNullKeyException;
+import org.docker.server.exceptions.cache.CachePutNullValueException;
+import org.docker.server.services.cache.CachePolicy;
+import org.docker.server.services.cache.CacheStats;
+import org.docker.server.services.cache.LruPolicy;
+import org.docker.server.services.cache.StripedCache;
+import org.docker.server.services.funkos.ConcurrentFunkoCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static services.TestFunkos.funko;
+
+public class ConcurrentFunkoCacheTest {
+
+    private ConcurrentFunkoCache cache;
+
+    @BeforeEach
+    void setUp(){
+        cache = new ConcurrentFunkoCache(15, 4, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @AfterEach
+    void tearDown(){
+        cache.shutdown();
+    }
+
+    @Test
+    void getTest(){
+        Funko funko = funko(1);
+
+        cache.put(funko.getId(), funko).block();
+
+        assertAll(
+                () -> assertEquals(funko, cache.get(funko.getId()).block()),
+                () -> assertNull(cache.get(20).block())
+        );
+    }
+
+    @Test
+    void putTest(){
+        Funko funko = funko(1);
+
+        assertAll(
+                () -> assertThrowsExactly(CachePutNullKeyException.class, () -> cache.put(null, funko).block()),
+                () -> assertThrowsExactly(CachePutNullValueException.class, () -> cache.put(4,null).block())
+        );
+    }
+
+    @Test
+    void getByCodTest(){
+        Funko funko = funko(1);
+        Funko funko2 = funko(2);
+        cache.put(funko.getId(), funko).block();
+        cache.put(funko2.getId(), funko2).block();
+
+        assertAll(
+                () -> assertEquals(funko, cache.getByCod(funko.getCOD()).block()),
+                () -> assertEquals(funko2, cache.getByCod(funko2.getCOD()).block()),
+                () -> assertNull(cache.getByCod(UUID.randomUUID()).block())
+        );
+
+        // Mismo id con otro cod: el cod antiguo deja de encontrarse
+        Funko replaced = funko(1);
+        cache.put(replaced.getId(), replaced).block();
+        cache.delete(funko2.getId()).block();
+
+        assertAll(
+                () -> assertNull(cache.getByCod(funko.getCOD()).block()),
+                () -> assertEquals(replaced, cache.getByCod(replaced.getCOD()).block()),
+                () -> assertNull(cache.getByCod(funko2.getCOD()).block())
+        );
+    }
+
+    @Test
+    void getByCodAfterEviction(){
+        List<Funko> funkos = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Funko funko = funko(i);
+            funkos.add(funko);
+            cache.put(funko.getId(), funko).block();
+        }
+
+        long byId = funkos.stream().filter(funko -> cache.get(funko.getId()).block() != null).count();
+        long byCod = funkos.stream().filter(funko -> cache.getByCod(funko.getCOD()).block() != null).count();
+
+        assertAll(
+                () -> assertEquals(15, byId),
+                () -> assertEquals(byId, byCod)
+        );
+    }
+
+    @Test
+    void deleteTest(){
+        Funko funko = funko(2);
+        Funko funko2 = funko(10);
+        cache.put(funko.getId(), funko).block();
+        cache.put(funko2.getId(), funko2).block();
+        cache.delete(funko.getId()).block();
+
+        assertAll(
+                () -> assertNull(cache.get(funko.getId()).block()),
+                () -> assertEquals(funko2, cache.get(funko2.getId()).block()),
+                () -> assertEquals(funko2, cache.delete(funko2.getId()).block()),
+                () -> assertNull(cache.delete(4).block())
+        );
+    }
+
+    @Test
+    void statsTest(){
+        Funko funko = funko(1);
+        cache.put(funko.getId(), funko).block();
+
+        cache.get(funko.getId()).block();
+        cache.getByCod(funko.getCOD()).block();
+        cache.get(2).block();
+        cache.getByCod(UUID.randomUUID()).block();
+        cache.recordLoadSuccess(100);
+        cache.recordLoadFailure(300);
+        for (int i = 100; i < 120; i++) {
+            cache.put(i, funko(i)).block();
+        }
+        CacheStats stats = cache.stats();
+
+        assertAll(
+                () -> assertEquals(2, stats.hitCount()),
+                () -> assertEquals(2, stats.missCount()),
+                () -> assertEquals(0.5, stats.hitRate()),
+                () -> assertEquals(1, stats.loadSuccessCount()),
+                () -> assertEquals(1, stats.loadFailureCount()),
+                () -> assertEquals(200.0, stats.averageLoadPenalty()),
+                () -> assertEquals(21 - cache.size(), stats.evictionCount()),
+                () -> assertEquals(0, stats.expirationCount())
+        );
+    }
+
+    @Test
+    void statsCountsExpirations() throws InterruptedException {
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(10, 1, CachePolicy.LRU, Duration.ofMillis(50), Duration.ZERO, 1, 1, TimeUnit.MILLISECONDS);
+        cache.put(1, funko(1)).block();
+        cache.put(2, funko(2)).block();
+
+        Thread.sleep(100);
+
+        assertAll(
+                () -> assertEquals(2, cache.stats().expirationCount()),
+                () -> assertEquals(0, cache.stats().evictionCount())
+        );
+    }
+
+    @Test
+    void missingTest(){
+        Funko funko = funko(3);
+        cache.putMissing(funko.getId());
+        cache.putMissingByCod(funko.getCOD());
+
+        assertAll(
+                () -> assertTrue(cache.isMissing(funko.getId())),
+                () -> assertTrue(cache.isMissingByCod(funko.getCOD())),
+                () -> assertFalse(cache.isMissing(4)),
+                () -> assertFalse(cache.isMissingByCod(UUID.randomUUID())),
+                () -> assertEquals(0, cache.size())
+        );
+
+        cache.invalidateMissing(funko);
+
+        assertAll(
+                () -> assertFalse(cache.isMissing(funko.getId())),
+                () -> assertFalse(cache.isMissingByCod(funko.getCOD()))
+        );
+    }
+
+    @Test
+    void putInvalidatesMissing(){
+        Funko funko = funko(3);
+        cache.putMissing(funko.getId());
+        cache.putMissingByCod(funko.getCOD());
+
+        cache.put(funko.getId(), funko).block();
+
+        assertAll(
+                () -> assertFalse(cache.isMissing(funko.getId())),
+                () -> assertFalse(cache.isMissingByCod(funko.getCOD()))
+        );
+    }
+
+    @Test
+    void missingIsBoundedAndSeparate(){
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ZERO, Duration.ZERO, 10, Duration.ofMinutes(1),
+                1, 1, TimeUnit.MINUTES);
+        Funko funko = funko(1);
+        cache.put(funko.getId(), funko).block();
+        for (int i = 100; i < 200; i++) {
+            cache.putMissing(i);
+        }
+
+        long remembered = IntStream.range(100, 200).filter(cache::isMissing).count();
+
+        assertAll(
+                () -> assertEquals(10, remembered),
+                () -> assertEquals(funko, cache.get(funko.getId()).block())
+        );
+    }
+
+    @Test
+    void missingExpires() throws InterruptedException {
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ZERO, Duration.ZERO, 10, Duration.ofMillis(50),
+                1, 1, TimeUnit.MILLISECONDS);
+        cache.putMissing(7);
+        assertTrue(cache.isMissing(7));
+
+        Thread.sleep(100);
+
+        assertFalse(cache.isMissing(7));
+    }
+
+    @Test
+    void cleannerAutoCache(){
+        Funko funko = funko(2);
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(10, 1, CachePolicy.LRU, Duration.ofMillis(50), Duration.ZERO, 1, 1, TimeUnit.MILLISECONDS);
+        cache.put(funko.getId(), funko).block();
+        assertEquals(funko, cache.get(funko.getId()).block());
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assertNull(cache.get(funko.getId()).block());
+    }
+
+    @Test
+    void clearRemovesEverything(){
+        Funko funko = funko(2);
+        Funko funko2 = funko(10);
+        cache.put(funko.getId(), funko).block();
+        cache.put(funko2.getId(), funko2).block();
+
+        cache.clear();
+
+        assertAll(
+                () -> assertNull(cache.get(funko.getId()).block()),
+                () -> assertNull(cache.get(funko2.getId()).block()),
+                () -> assertEquals(0, cache.size())
+        );
+    }
+
+    @Test
+    void expireAfterWriteWithTimerWheel(){
+        AtomicLong now = new AtomicLong();
+        StripedCache<Integer, String> expiring = new StripedCache<>(100, 2, LruPolicy::new,
+                Duration.ofSeconds(90), Duration.ZERO, now::get);
+        expiring.put(1, "uno");
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+        expiring.put(2, "dos");
+        now.addAndGet(Duration.ofSeconds(40).toNanos());
+
+        // La 1 lleva 100 s y la 2 solo 40 s; leer la 2 no alarga su vida
+        assertAll(
+                () -> assertEquals("dos", expiring.get(2)),
+                () -> assertEquals(1, expiring.cleanUp()),
+                () -> assertNull(expiring.get(1)),
+                () -> assertEquals(1, expiring.size())
+        );
+
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertAll(
+                () -> assertEquals(1, expiring.cleanUp()),
+                () -> assertEquals(0, expiring.size())
+        );
+    }
+
+    @Test
+    void expireAfterAccessWithTimerWheel(){
+        AtomicLong now = new AtomicLong();
+        StripedCache<Integer, String> expiring = new StripedCache<>(100, 1, LruPolicy::new,
+                Duration.ZERO, Duration.ofMinutes(5), now::get);
+        expiring.put(1, "uno");
+        expiring.put(2, "dos");
+        // La 1 se lee cada 4 minutos y no caduca; la 2 no se vuelve a leer
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(Duration.ofMinutes(4).toNanos());
+            assertEquals("uno", expiring.get(1));
+        }
+
+        assertAll(
+                () -> assertEquals(1, expiring.cleanUp()),
+                () -> assertEquals("uno", expiring.get(1)),
+                () -> assertNull(expiring.get(2))
+        );
+
+        now.addAndGet(Duration.ofHours(2).toNanos());
+        assertAll(
+                () -> assertEquals(1, expiring.cleanUp()),
+                () -> assertEquals(0, expiring.size())
+        );
+    }
+
+    @Test
+    void refreshAfterWriteWithTicker(){
+        AtomicLong now = new AtomicLong();
+        List<String> refreshes = new ArrayList<>();
+        StripedCache<Integer, String> refreshing = new StripedCache<>(100, 1, LruPolicy::new,
+                Duration.ofSeconds(90), Duration.ZERO, now::get);
+        refreshing.refreshAfterWrite(Duration.ofSeconds(75), (key, value) -> refreshes.add(value));
+        refreshing.put(1, "uno");
+
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertEquals("uno", refreshing.get(1));
+        assertTrue(refreshes.isEmpty());
+
+        // Pasado refreshAfterWrite se sigue devolviendo el valor y se avisa para recargarlo
+        now.addAndGet(Duration.ofSeconds(20).toNanos());
+        assertEquals("uno", refreshing.get(1));
+        assertEquals(List.of("uno"), refreshes);
+
+        // Solo se sustituye si no ha cambiado, y sustituir reinicia la caducidad
+        assertFalse(refreshing.replace(1, "otro", "uno nuevo"));
+        assertTrue(refreshing.replace(1, "uno", "uno nuevo"));
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertAll(
+                () -> assertEquals("uno nuevo", refreshing.get(1)),
+                () -> assertEquals(1, refreshes.size()),
+                () -> assertEquals(0, refreshing.cleanUp())
+        );
+    }
+
+    @Test
+    void refreshKeepsOldValueUntilReloaded() throws InterruptedException {
+        Funko funko = funko(2);
+        Funko reloaded = funko(2);
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<Funko> database = Sinks.one();
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ofMinutes(1), Duration.ZERO, 1, 1, TimeUnit.MINUTES)
+                .refreshAfterWrite(Duration.ofMillis(50), 4);
+        cache.refreshWith(id -> {
+            loads.incrementAndGet();
+            return database.asMono();
+        });
+        cache.put(funko.getId(), funko).block();
+        Thread.sleep(100);
+
+        // Varias lecturas mientras se recarga: todas reciben el funko anterior y solo se consulta una vez
+        for (int i = 0; i < 5; i++) {
+            assertEquals(funko, cache.get(funko.getId()).block());
+        }
+        assertEquals(1, loads.get());
+
+        database.tryEmitValue(reloaded);
+        assertAll(
+                () -> assertSame(reloaded, cache.get(funko.getId()).block()),
+                () -> assertSame(reloaded, cache.getByCod(reloaded.getCOD()).block()),
+                () -> assertEquals(1, cache.stats().loadSuccessCount())
+        );
+    }
+
+    @Test
+    void refreshDoesNotOverwriteNewerPut() throws InterruptedException {
+        Funko funko = funko(2);
+        Funko updated = funko(2);
+        Sinks.One<Funko> database = Sinks.one();
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ofMinutes(1), Duration.ZERO, 1, 1, TimeUnit.MINUTES)
+                .refreshAfterWrite(Duration.ofMillis(50), 4);
+        cache.refreshWith(id -> database.asMono());
+        cache.put(funko.getId(), funko).block();
+        Thread.sleep(100);
+
+        cache.get(funko.getId()).block();
+        cache.put(updated.getId(), updated).block();
+        database.tryEmitValue(funko(2));
+
+        assertSame(updated, cache.get(funko.getId()).block());
+    }
+
+    @Test
+    void refreshRemovesDeletedFunkos() throws InterruptedException {
+        Funko funko = funko(2);
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ofMinutes(1), Duration.ZERO, 1, 1, TimeUnit.MINUTES)
+                .refreshAfterWrite(Duration.ofMillis(50), 4);
+        cache.refreshWith(id -> Mono.empty());
+        cache.put(funko.getId(), funko).block();
+        Thread.sleep(100);
+
+        assertEquals(funko, cache.get(funko.getId()).block());
+        assertAll(
+                () -> assertNull(cache.get(funko.getId()).block()),
+                () -> assertNull(cache.getByCod(funko.getCOD()).block())
+        );
+    }
+
+    @Test
+    void refreshesAreRateLimited() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        cache.shutdown();
+        cache = new ConcurrentFunkoCache(15, 1, CachePolicy.LRU, Duration.ofMinutes(1), Duration.ZERO, 1, 1, TimeUnit.MINUTES)
+                .refreshAfterWrite(Duration.ofMillis(50), 2);
+        cache.refreshWith(id -> {
+            loads.incrementAndGet();
+            return Mono.never();
+        });
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, funko(i)).block();
+        }
+        Thread.sleep(100);
+
+        // Diez funkos calientes, pero como mucho dos recargas a la vez; los demás siguen sirviéndose
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i).block());
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void hotKeysTest(){
+        for (int i = 1; i <= 5; i++) {
+            cache.put(i, funko(i)).block();
+            for (int j = 0; j < i; j++) {
+                cache.get(i).block();
+            }
+        }
+
+        assertAll(
+                () -> assertEquals(List.of(5, 4, 3), new ArrayList<>(cache.hotKeys(3).keySet())),
+                () -> assertEquals(5L, cache.hotKeys(3).get(5)),
+                () -> assertEquals(5, cache.hotKeys(100).size()),
+                () -> assertTrue(cache.hotKeys(0).isEmpty())
+        );
+    }
+
+    @Test
+    void neverExceedsMaxSize(){
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, funko(i)).block();
+        }
+        // Las capacidades de los tramos suman maxSize: con suficientes claves se llena justo
+        assertEquals(15, cache.size());
+    }
+
+    @Test
+    void lruEvictsLeastRecentlyUsed(){
+        StripedCache<Integer, String> lru = new StripedCache<>(3, 1, LruPolicy::new);
+        lru.put(1, "uno");
+        lru.put(2, "dos");
+        lru.put(3, "tres");
+        lru.get(1);
+        lru.put(4, "cuatro");
+
+        assertAll(
+                () -> assertEquals("uno", lru.get(1)),
+                () -> assertNull(lru.get(2)),
+                () -> assertEquals(3, lru.size())
+        );
+    }
+
+    @Test
+    void stressConcurrentAccess() throws Exception {
+        int maxSize = 100;
+        int threads = 16;
+        int operations = 50_000;
+        ConcurrentFunkoCache shared = new ConcurrentFunkoCache(maxSize, 8, 1, 1, TimeUnit.MINUTES);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger maxSeen = new AtomicInteger();
+        AtomicInteger wrongValues = new AtomicInteger();
+
+        // Vigila el tamaño mientras los demás hilos escriben
+        Future<?> monitor = executor.submit(() -> {
+            while (running.get()) {
+                maxSeen.accumulateAndGet(shared.size(), Math::max);
+            }
+        });
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    int id = random.nextInt(1000);
+                    int op = random.nextInt(10);
+                    if (op < 6) {
+                        Funko found = shared.get(id).block();
+                        if (found != null && found.getId() != id) {
+                            wrongValues.incrementAndGet();
+                        }
+                    } else if (op < 9) {
+                        shared.put(id, funko(id)).block();
+                    } else {
+                        shared.delete(id).block();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        monitor.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        int hits = 0;
+        for (int id = 0; id < 1000; id++) {
+            Funko found = shared.get(id).block();
+            if (found != null) {
+                hits++;
+                assertEquals(id, found.getId());
+            }
+        }
+        int finalHits = hits;
+        assertAll(
+                () -> assertEquals(0, wrongValues.get()),
+                () -> assertTrue(maxSeen.get() <= maxSize, "Tamaño máximo observado: " + maxSeen.get()),
+                () -> assertTrue(shared.size() <= maxSize),
+                () -> assertEquals(shared.size(), finalHits)
+        );
+        shared.shutdown();
+    }
+}
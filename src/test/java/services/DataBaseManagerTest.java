@@ -0,0 +1,34 @@
+package services;
+
+import io.r2dbc.spi.Connection;
+import org.docker.server.services.database.DataBaseManager;
+import org.docker.server.services.database.PoolStats;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataBaseManagerTest {
+
+    private final DataBaseManager db = DataBaseManager.getInstance();
+
+    @Test
+    void poolStatsTest() {
+        PoolStats before = db.getPoolStats();
+
+        Connection connection = Mono.from(db.getConnectionFactory().create()).block();
+        PoolStats acquired = db.getPoolStats();
+        Mono.from(connection.close()).block();
+        PoolStats released = db.getPoolStats();
+
+        // El pool es compartido: otros tests pueden estar usándolo a la vez
+        assertAll(
+                () -> assertTrue(acquired.acquireCount() >= before.acquireCount() + 1),
+                () -> assertTrue(acquired.acquiredSize() >= 1),
+                () -> assertTrue(released.acquireCount() >= acquired.acquireCount()),
+                () -> assertTrue(released.acquireFailureCount() >= before.acquireFailureCount()),
+                () -> assertTrue(acquired.maxAcquireTime() > 0),
+                () -> assertTrue(acquired.averageAcquireLatency() > 0)
+        );
+    }
+}
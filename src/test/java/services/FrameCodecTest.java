@@ -0,0 +1,128 @@
+package services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.common.models.Response;
+import org.docker.common.protocol.Frame;
+import org.docker.common.protocol.FrameCodec;
+import org.docker.common.protocol.FrameType;
+import org.docker.common.protocol.FunkoBinaryCodec;
+import org.docker.common.protocol.Reply;
+import org.docker.common.utils.adapters.LocalDateAdapter;
+import org.docker.common.utils.adapters.LocalDateTimeAdapter;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameCodecTest {
+
+    // Funko no tiene equals: se comparan por su JSON
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter()).create();
+
+    private Frame roundTrip(FrameType type, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.write(new DataOutputStream(bytes), type, payload);
+        return FrameCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private DataInputStream frameHeader(int length, FrameType type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(length);
+        out.writeByte(type.code());
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void frameRoundTrip() throws IOException {
+        byte[] payload = "{\"type\":\"HELLO\",\"content\":\"BIN2\"}".getBytes(StandardCharsets.UTF_8);
+
+        Frame frame = roundTrip(FrameType.REQUEST, payload);
+        Frame empty = roundTrip(FrameType.RESPONSE, new byte[0]);
+
+        assertAll(
+                () -> assertEquals(FrameType.REQUEST, frame.type()),
+                () -> assertArrayEquals(payload, frame.payload()),
+                () -> assertEquals(FrameType.RESPONSE, empty.type()),
+                () -> assertEquals(0, empty.payload().length)
+        );
+    }
+
+    @Test
+    void oversizedOrNegativeLengthIsRejected() throws IOException {
+        DataInputStream oversized = frameHeader(FrameCodec.MAX_PAYLOAD + 1, FrameType.FUNKO_LIST);
+        DataInputStream negative = frameHeader(-1, FrameType.REQUEST);
+
+        assertAll(
+                () -> assertThrows(IOException.class, () -> FrameCodec.read(oversized)),
+                () -> assertThrows(IOException.class, () -> FrameCodec.read(negative))
+        );
+    }
+
+    @Test
+    void unknownFrameTypeIsRejected() {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[]{0, 0, 0, 0, 9}));
+
+        assertThrows(IllegalArgumentException.class, () -> FrameCodec.read(in));
+    }
+
+    @Test
+    void funkoListRoundTrip() throws IOException {
+        List<Funko> funkos = List.of(
+                new Funko(1, UUID.randomUUID(), 10L, "Mi \"Funko\" ñ", Modelo.MARVEL, 12.5, LocalDate.of(2023, 5, 1), LocalDateTime.of(2023, 5, 1, 10, 0, 0, 123456789), LocalDateTime.now()),
+                // Todos los campos que pueden ser nulos
+                new Funko(null, null, null, null, null, 0.0, null, null, null)
+        );
+        Response header = new Response(Response.Status.CHUNK, null, LocalDateTime.now().toString(), "7", "2");
+
+        Reply reply = FrameCodec.decodeFunkoList(FrameCodec.encodeFunkoList(header, funkos));
+
+        assertAll(
+                () -> assertEquals(header, reply.response()),
+                () -> assertEquals(2, reply.funkos().size()),
+                () -> assertEquals(gson.toJson(funkos.get(0)), gson.toJson(reply.funkos().get(0))),
+                () -> assertNull(reply.funkos().get(1).getId()),
+                () -> assertNull(reply.funkos().get(1).getCOD()),
+                () -> assertNull(reply.funkos().get(1).getMyId()),
+                () -> assertNull(reply.funkos().get(1).getNombre()),
+                () -> assertNull(reply.funkos().get(1).getModelo()),
+                () -> assertNull(reply.funkos().get(1).getFecha()),
+                () -> assertNull(reply.funkos().get(1).getCreated_at()),
+                () -> assertNull(reply.funkos().get(1).getUpdated_at())
+        );
+    }
+
+    @Test
+    void emptyFunkoListWithoutCursor() throws IOException {
+        Response header = new Response(Response.Status.OK, null, LocalDateTime.now().toString(), null, null);
+
+        Reply reply = FrameCodec.decodeFunkoList(FrameCodec.encodeFunkoList(header, List.of()));
+
+        assertAll(
+                () -> assertEquals(header, reply.response()),
+                () -> assertTrue(reply.funkos().isEmpty())
+        );
+    }
+
+    @Test
+    void funkoRoundTrip() throws IOException {
+        Funko funko = new Funko(3, UUID.randomUUID(), 3L, "Funko", Modelo.DISNEY, 9.99, LocalDate.of(1999, 12, 31), LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.of(2000, 1, 2, 0, 0));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FunkoBinaryCodec.write(new DataOutputStream(bytes), funko);
+
+        Funko decoded = FunkoBinaryCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(gson.toJson(funko), gson.toJson(decoded));
+    }
+}
@@ -4,6 +4,7 @@ import org.docker.common.enums.Modelo;
 import org.docker.server.exceptions.cache.CachePutNullKeyException;
 import org.docker.server.exceptions.cache.CachePutNullValueException;
 import org.docker.common.models.Funko;
+import org.docker.server.services.cache.CacheStats;
 import org.docker.server.services.funkos.FunkoCacheImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -39,6 +40,38 @@ public class FunkoCacheImplTest {
     }
 
 
+    @Test
+    void getByCodTest(){
+        Funko funko = new Funko(1, UUID.randomUUID(), 123456L,  "Mi Funko", Modelo.MARVEL, 50.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        cache.put(funko.getId(), funko).block();
+
+        assertAll(
+                () -> assertEquals(funko, cache.getByCod(funko.getCOD()).block()),
+                () -> assertNull(cache.getByCod(UUID.randomUUID()).block())
+        );
+    }
+
+    @Test
+    void statsTest(){
+        Funko funko = new Funko(1, UUID.randomUUID(), 123456L,  "Mi Funko", Modelo.MARVEL, 50.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        cache.put(funko.getId(), funko).block();
+
+        cache.get(funko.getId()).block();
+        cache.get(20).block();
+        cache.getByCod(funko.getCOD()).block();
+        for (int i = 100; i < 120; i++) {
+            cache.put(i, new Funko(i, UUID.randomUUID(), 1L,  "Mi Funko " + i, Modelo.MARVEL, 50.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now())).block();
+        }
+        CacheStats stats = cache.stats();
+
+        assertAll(
+                () -> assertEquals(2, stats.hitCount()),
+                () -> assertEquals(1, stats.missCount()),
+                () -> assertEquals(6, stats.evictionCount())
+        );
+    }
+
     @Test
     void putTest(){
         Funko funko = new Funko(null, UUID.randomUUID(), 123456L,  "Mi Funko", Modelo.MARVEL, 50.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
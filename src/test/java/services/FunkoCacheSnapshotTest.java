@@ -0,0 +1,56 @@
+package services;
+
+import org.docker.server.services.funkos.FunkoCacheSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FunkoCacheSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void saveAndLoadTest() throws IOException {
+        FunkoCacheSnapshot snapshot = new FunkoCacheSnapshot(dir.resolve("cache-snapshot.csv"));
+        Map<Integer, Long> hotKeys = new LinkedHashMap<>();
+        hotKeys.put(7, 40L);
+        hotKeys.put(3, 12L);
+        hotKeys.put(9, 1L);
+
+        snapshot.save(hotKeys);
+        Map<Integer, Long> loaded = snapshot.load();
+
+        assertAll(
+                () -> assertEquals(hotKeys, loaded),
+                () -> assertEquals(List.of(7, 3, 9), new ArrayList<>(loaded.keySet())),
+                () -> assertFalse(Files.exists(dir.resolve("cache-snapshot.csv.tmp")))
+        );
+    }
+
+    @Test
+    void missingFileTest() throws IOException {
+        FunkoCacheSnapshot snapshot = new FunkoCacheSnapshot(dir.resolve("no-existe.csv"));
+
+        assertTrue(snapshot.load().isEmpty());
+    }
+
+    @Test
+    void invalidLinesAreSkipped() throws IOException {
+        Path file = dir.resolve("cache-snapshot.csv");
+        Files.write(file, List.of("id,accesos", "2,5", "no es un id", "", "4,50"));
+
+        Map<Integer, Long> loaded = new FunkoCacheSnapshot(file).load();
+
+        assertEquals(List.of(4, 2), new ArrayList<>(loaded.keySet()));
+    }
+}
@@ -0,0 +1,98 @@
+package services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.docker.common.models.Funko;
+import org.docker.common.utils.adapters.LocalDateAdapter;
+import org.docker.common.utils.adapters.LocalDateTimeAdapter;
+import org.docker.server.services.funkos.FunkoJsonCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static services.TestFunkos.funko;
+
+public class FunkoJsonCacheTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter()).create();
+
+    private final FunkoJsonCache cache = new FunkoJsonCache(100);
+
+    // Con caracteres que hay que escapar en JSON
+    private static final String NOMBRE = "Mi \"Funko\" <1>";
+
+    private String quoted(String escaped) {
+        return "\"" + escaped + "\"";
+    }
+
+    @Test
+    void escapedIsTheJsonOfTheFunko() {
+        Funko funko = funko(1, NOMBRE);
+
+        String content = gson.fromJson(quoted(cache.escaped(funko)), String.class);
+
+        assertEquals(gson.toJson(funko), content);
+    }
+
+    @Test
+    void escapedListIsTheJsonOfTheList() {
+        List<Funko> funkos = List.of(funko(1, NOMBRE), funko(2, NOMBRE), funko(3, NOMBRE));
+
+        String content = gson.fromJson(quoted(cache.escaped(funkos)), String.class);
+        List<Funko> decoded = gson.fromJson(content, new TypeToken<List<Funko>>() {}.getType());
+
+        assertAll(
+                () -> assertEquals(gson.toJson(funkos), content),
+                () -> assertEquals(3, decoded.size()),
+                () -> assertEquals(funkos.get(2).getCOD(), decoded.get(2).getCOD())
+        );
+    }
+
+    @Test
+    void hitWhileVersionDoesNotChange() {
+        Funko funko = funko(1, NOMBRE);
+
+        String first = cache.escaped(funko);
+        String second = cache.escaped(funko);
+
+        assertAll(
+                () -> assertSame(first, second),
+                () -> assertEquals(1, cache.stats().hits()),
+                () -> assertEquals(1, cache.stats().misses())
+        );
+    }
+
+    @Test
+    void newVersionIsEncodedAgain() {
+        Funko funko = funko(1, NOMBRE);
+        cache.escaped(funko);
+
+        funko.setPrecio(10.0);
+        funko.setUpdated_at(funko.getUpdated_at().plusSeconds(1));
+        String content = gson.fromJson(quoted(cache.escaped(funko)), String.class);
+
+        assertAll(
+                () -> assertEquals(10.0, gson.fromJson(content, Funko.class).getPrecio()),
+                () -> assertEquals(0, cache.stats().hits()),
+                () -> assertEquals(2, cache.stats().misses())
+        );
+    }
+
+    @Test
+    void withoutIdIsNotCached() {
+        // Sin updated_at no se puede ni serializar (los adaptadores de fechas no admiten null)
+        Funko funko = funko(1, NOMBRE);
+        funko.setId(null);
+
+        cache.escaped(funko);
+        cache.escaped(funko);
+
+        assertEquals(0, cache.stats().hits());
+    }
+}
@@ -15,17 +15,20 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.io.File;
 import java.nio.file.Path;
 import java.rmi.server.ExportException;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -99,6 +102,57 @@ public class FunkoServiceImplTest {
     }
 
 
+    @Test
+    void warmUpTest() throws Exception {
+        Funko funko = new Funko(1, UUID.randomUUID(), 1L,  "Mi Funko", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(repository.findAllByIds(List.of(1, 2))).thenReturn(Flux.just(funko));
+        when(repository.findAllByIds(List.of(3))).thenReturn(Flux.error(new RuntimeException("Error de conexión")));
+        when(cache.put(1, funko)).thenReturn(Mono.empty());
+
+        var res = service.warmUp(List.of(1, 2, 3), 2, Duration.ofSeconds(5)).block();
+
+        // Una consulta por lote; los que ya no existen o los lotes que fallan no impiden cargar el resto
+        assertEquals(1L, res);
+        verify(cache, times(1)).put(1, funko);
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void findAllByIdsTest() throws Exception {
+        Funko funko = new Funko(1, UUID.randomUUID(), 1L,  "Mi Funko", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko2 = new Funko(2, UUID.randomUUID(), 2L,  "Mi Funko 2", Modelo.MARVEL, 25.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(cache.get(1)).thenReturn(Mono.just(funko));
+        when(cache.get(2)).thenReturn(Mono.empty());
+        when(cache.get(3)).thenReturn(Mono.empty());
+        when(cache.isMissing(2)).thenReturn(false);
+        when(cache.isMissing(3)).thenReturn(true);
+        when(repository.findAllByIds(List.of(2))).thenReturn(Flux.just(funko2));
+        when(cache.put(2, funko2)).thenReturn(Mono.empty());
+
+        var res = service.findAllByIds(List.of(2, 1, 3, 2)).collectList().block();
+
+        // En el orden pedido; solo el fallo de caché va a la base de datos y el 3 ya se sabe que no existe
+        assertEquals(List.of(funko2, funko, funko2), res);
+        verify(repository, times(1)).findAllByIds(List.of(2));
+        verify(cache, never()).putMissing(3);
+    }
+
+    @Test
+    void findAllByCodsRemembersMissing() throws Exception {
+        UUID cod = UUID.randomUUID();
+
+        when(cache.getByCod(cod)).thenReturn(Mono.empty());
+        when(cache.isMissingByCod(cod)).thenReturn(false);
+        when(repository.findAllByCods(List.of(cod))).thenReturn(Flux.empty());
+
+        var res = service.findAllByCods(List.of(cod)).collectList().block();
+
+        assertTrue(res.isEmpty());
+        verify(cache, times(1)).putMissingByCod(cod);
+    }
+
     @Test
     void updateNotExist() throws SQLException {
         Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
@@ -129,11 +183,13 @@ public class FunkoServiceImplTest {
         );
 
         verify(repository, times(1)).findById(2);
+        verify(cache, times(1)).recordLoadSuccess(anyLong());
     }
 
     @Test
     void findByCod() throws Exception {
         Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        when(cache.getByCod(funko.getCOD())).thenReturn(Mono.empty());
         when(repository.findByCod(funko.getCOD())).thenReturn(Mono.just(funko));
         when(cache.put(any(), any())).thenReturn(Mono.empty());
 
@@ -148,6 +204,17 @@ public class FunkoServiceImplTest {
 
     }
 
+    @Test
+    void findByCodFromCache() throws Exception {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        when(cache.getByCod(funko.getCOD())).thenReturn(Mono.just(funko));
+
+        var res = service.findByCod(funko.getCOD()).block();
+
+        assertEquals(funko.getNombre(), res.getNombre());
+        verify(repository, never()).findByCod(any());
+    }
+
 
     @Test
     void findByIdNotExists() throws SQLException, ExecutionException, InterruptedException {
@@ -160,6 +227,30 @@ public class FunkoServiceImplTest {
         );
 
         verify(repository, times(1)).findById(2);
+        verify(cache, times(1)).putMissing(2);
+        verify(cache, times(1)).recordLoadFailure(anyLong());
+    }
+
+    @Test
+    void findByCodKnownMissing() throws Exception {
+        UUID cod = UUID.randomUUID();
+        when(cache.getByCod(cod)).thenReturn(Mono.empty());
+        when(cache.isMissingByCod(cod)).thenReturn(true);
+
+        assertThrowsExactly(FunkoNoEncontradoException.class, () -> service.findByCod(cod).block());
+
+        verify(repository, never()).findByCod(any());
+    }
+
+    @Test
+    void saveInvalidatesMissing() throws Exception {
+        Funko funko = new Funko(1, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(repository.save(funko)).thenReturn(Mono.just(funko));
+
+        service.save(funko).block();
+
+        verify(cache, times(1)).invalidateMissing(funko);
     }
 
 
@@ -167,26 +258,56 @@ public class FunkoServiceImplTest {
     void deleteById() throws SQLException, ExecutionException, InterruptedException {
         Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
 
-        when(repository.findById(2)).thenReturn(Mono.just(funko));
-        when(repository.deleteById(2)).thenReturn(Mono.just(true));
+        when(repository.deleteByIdReturning(2)).thenReturn(Mono.just(funko));
         when(cache.delete(2)).thenReturn(Mono.empty());
 
         var res = service.deleteById(2).block();
 
         assertTrue(res);
 
-        verify(repository, times(1)).deleteById(2);
+        // Una sola consulta: sin buscarlo antes
+        verify(repository, times(1)).deleteByIdReturning(2);
+        verify(repository, never()).findById(2);
     }
 
 
     @Test
     void deleteByIdNotExist() throws SQLException, ExecutionException, InterruptedException {
 
-        when(repository.findById(2)).thenReturn(Mono.empty());
+        when(repository.deleteByIdReturning(2)).thenReturn(Mono.empty());
 
         assertThrowsExactly(FunkoNoEncontradoException.class, () -> service.deleteById(2).block());
 
-        verify(repository, times(1)).findById(2);
+        verify(repository, times(1)).deleteByIdReturning(2);
+        verify(cache, never()).delete(2);
+    }
+
+    @Test
+    void deleteByIdsTest() throws SQLException {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko2 = new Funko(3, UUID.randomUUID(), 1L,  "Mi Funko 3", Modelo.MARVEL, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(repository.deleteByIds(List.of(2, 3, 4))).thenReturn(Flux.just(funko, funko2));
+        when(cache.delete(2)).thenReturn(Mono.empty());
+        when(cache.delete(3)).thenReturn(Mono.empty());
+
+        var res = service.deleteByIds(List.of(2, 3, 4)).collectList().block();
+
+        assertEquals(List.of(funko, funko2), res);
+        verify(cache, times(1)).delete(2);
+        verify(cache, times(1)).delete(3);
+    }
+
+    @Test
+    void deleteByIdsRolledBackKeepsCache() throws SQLException {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        // El primer tramo se borra pero falla otro: la transacción se deshace
+        when(repository.deleteByIds(List.of(2, 3))).thenReturn(Flux.concat(Flux.just(funko), Flux.error(new SQLException("fallo"))));
+
+        var error = assertThrows(RuntimeException.class, () -> service.deleteByIds(List.of(2, 3)).collectList().block());
+        assertInstanceOf(SQLException.class, error.getCause());
+        verify(cache, never()).delete(any());
     }
 
 
@@ -195,9 +316,10 @@ public class FunkoServiceImplTest {
     void deleteAllTest() throws SQLException, ExecutionException, InterruptedException {
         when(repository.deleteAll()).thenReturn(Mono.empty());
 
-        service.deleteAll();
+        service.deleteAll().block();
 
         verify(repository, times(1)).deleteAll();
+        verify(cache, times(1)).clear();
     }
 
 
@@ -215,6 +337,157 @@ public class FunkoServiceImplTest {
         );
     }
 
+    @Test
+    void findByModeloTest() throws SQLException {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(repository.findByModelo(Modelo.ANIME)).thenReturn(Flux.just(funko));
+
+        var res = service.findByModelo(Modelo.ANIME).collectList().block();
+
+        assertAll(
+                () -> assertTrue(res.size() == 1),
+                () -> assertEquals(Modelo.ANIME, res.get(0).getModelo())
+        );
+        verify(repository, times(1)).findByModelo(Modelo.ANIME);
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void findByReleaseYearTest() throws SQLException {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.of(2023, 5, 1),  LocalDateTime.now(), LocalDateTime.now());
+
+        when(repository.findByReleaseYear(2023)).thenReturn(Flux.just(funko));
+
+        var res = service.findByReleaseYear(2023).collectList().block();
+
+        assertAll(
+                () -> assertTrue(res.size() == 1),
+                () -> assertEquals(2023, res.get(0).getFecha().getYear())
+        );
+        verify(repository, times(1)).findByReleaseYear(2023);
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void saveAllInvalidatesAfterCommit() throws Exception {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        AtomicInteger queries = new AtomicInteger();
+        Sinks.Many<Funko> saved = Sinks.many().unicast().onBackpressureBuffer();
+
+        when(repository.findByModelo(Modelo.ANIME)).thenReturn(Flux.defer(() -> {
+            queries.incrementAndGet();
+            return Flux.just(funko);
+        }));
+        when(repository.saveAll(any())).thenReturn(saved.asFlux());
+
+        service.findByModelo(Modelo.ANIME).collectList().block();
+        var result = service.saveAllWithoutNotify(Flux.just(funko)).collectList().toFuture();
+
+        // Guardado pero sin confirmar: la lista sigue siendo la de antes
+        saved.tryEmitNext(funko);
+        service.findByModelo(Modelo.ANIME).collectList().block();
+        assertEquals(1, queries.get());
+
+        saved.tryEmitComplete();
+        service.findByModelo(Modelo.ANIME).collectList().block();
+        assertAll(
+                () -> assertEquals(List.of(funko), result.get()),
+                () -> assertEquals(2, queries.get())
+        );
+    }
+
+    @Test
+    void findByModeloCachedUntilWrite() throws Exception {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        Funko other = new Funko(3, UUID.randomUUID(), 2L,  "Mi Funko 3", Modelo.MARVEL, 25.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now());
+        AtomicInteger animeQueries = new AtomicInteger();
+        AtomicInteger marvelQueries = new AtomicInteger();
+
+        when(repository.findByModelo(Modelo.ANIME)).thenReturn(Flux.defer(() -> {
+            animeQueries.incrementAndGet();
+            return Flux.just(funko);
+        }));
+        when(repository.findByModelo(Modelo.MARVEL)).thenReturn(Flux.defer(() -> {
+            marvelQueries.incrementAndGet();
+            return Flux.just(other);
+        }));
+        when(repository.save(funko)).thenReturn(Mono.just(funko));
+
+        service.findByModelo(Modelo.ANIME).collectList().block();
+        service.findByModelo(Modelo.MARVEL).collectList().block();
+        var cached = service.findByModelo(Modelo.ANIME).collectList().block();
+
+        assertAll(
+                () -> assertEquals(List.of(funko), cached),
+                () -> assertEquals(1, animeQueries.get())
+        );
+
+        // Guardar un funko de ANIME solo invalida la lista de ANIME
+        service.save(funko).block();
+        service.findByModelo(Modelo.ANIME).collectList().block();
+        service.findByModelo(Modelo.MARVEL).collectList().block();
+
+        assertAll(
+                () -> assertEquals(2, animeQueries.get()),
+                () -> assertEquals(1, marvelQueries.get())
+        );
+    }
+
+    @Test
+    void findByReleaseYearInvalidatedOnDelete() throws Exception {
+        Funko funko = new Funko(2, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.of(2023, 5, 1),  LocalDateTime.now(), LocalDateTime.now());
+        AtomicInteger queries = new AtomicInteger();
+
+        when(repository.findByReleaseYear(2023)).thenReturn(Flux.defer(() -> {
+            queries.incrementAndGet();
+            return Flux.just(funko);
+        }));
+        when(repository.deleteByIdReturning(2)).thenReturn(Mono.just(funko));
+        when(cache.delete(2)).thenReturn(Mono.empty());
+
+        service.findByReleaseYear(2023).collectList().block();
+        service.findByReleaseYear(2023).collectList().block();
+        service.deleteById(2).block();
+        service.findByReleaseYear(2023).collectList().block();
+
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void findAllPageTest() throws SQLException {
+        List<Funko> funkos = new ArrayList<>();
+        funkos.add(new Funko(4, UUID.randomUUID(), 1L,  "Mi Funko 2", Modelo.ANIME, 55.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now()));
+        funkos.add(new Funko(7, UUID.randomUUID(), 12L,  "Mi Funko prueba", Modelo.MARVEL, 25.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now()));
+        funkos.add(new Funko(9, UUID.randomUUID(), 13L,  "Mi Funko 3", Modelo.MARVEL, 25.0, LocalDate.now(),  LocalDateTime.now(), LocalDateTime.now()));
+
+        when(repository.findAll(3, 3)).thenReturn(Flux.fromIterable(funkos));
+        when(repository.findAll(7, 3)).thenReturn(Flux.just(funkos.get(2)));
+
+        var page = service.findAll(3, 2).block();
+        var lastPage = service.findAll(page.nextCursor(), 2).block();
+
+        assertAll(
+                () -> assertEquals(2, page.items().size()),
+                () -> assertEquals(7, page.nextCursor()),
+                () -> assertEquals(1, lastPage.items().size()),
+                () -> assertNull(lastPage.nextCursor())
+        );
+    }
+
+    @Test
+    void findAllPageLimitTest() throws SQLException {
+        when(repository.findAll(null, FunkoServiceImpl.MAX_PAGE_SIZE + 1)).thenReturn(Flux.empty());
+
+        var page = service.findAll(null, 100000).block();
+
+        assertAll(
+                () -> assertTrue(page.items().isEmpty()),
+                () -> assertNull(page.nextCursor())
+        );
+        verify(repository, times(1)).findAll(null, FunkoServiceImpl.MAX_PAGE_SIZE + 1);
+    }
+
     @Test
     void backupTest() throws ExecutionException, InterruptedException, SQLException, ExportException, ExportException {
         List<Funko> funkos = new ArrayList<>();
@@ -243,8 +516,7 @@ public class FunkoServiceImplTest {
         String path_directory = path.toAbsolutePath().toString() + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "data" + File.separator;
         String file = path_directory + "funkos.csv";
         when(storageFunko.importFromCsvAsync(file)).thenReturn(Flux.fromIterable(funkos));
-        when(repository.save(funko)).thenReturn(Mono.just(funko));
-        when(repository.save(funko2)).thenReturn(Mono.just(funko2));
+        when(repository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
         var res = service.importCsv();
         var funkosRes = res.collectList().block();
@@ -254,7 +526,8 @@ public class FunkoServiceImplTest {
                 () -> assertEquals(funko.getNombre(), funkosRes.get(0).getNombre()),
                 () -> assertEquals(funko2.getNombre(), funkosRes.get(1).getNombre())
         );
-
+        verify(repository, times(1)).saveAll(any());
+        verify(repository, never()).save(any());
     }
 
 
@@ -0,0 +1,166 @@
+package services;
+
+import org.docker.common.models.Funko;
+import org.docker.server.repositories.funko.FunkoRepositoryImpl;
+import org.docker.server.services.funkos.FunkoWriteBehind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static services.TestFunkos.funko;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FunkoWriteBehindTest {
+
+    @Mock
+    FunkoRepositoryImpl repository;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescesUpdatesPerId() throws Exception {
+        when(repository.updateAll(anyList())).thenReturn(Mono.just(2L));
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMinutes(1));
+
+        writeBehind.enqueue(funko(1, 10.0), funko(1, 11.0));
+        writeBehind.enqueue(funko(1, 11.0), funko(1, 12.0));
+        writeBehind.enqueue(funko(1, 12.0), funko(1, 13.0));
+        writeBehind.enqueue(funko(2, 20.0), funko(2, 21.0));
+
+        assertAll(
+                () -> assertEquals(2, writeBehind.size()),
+                () -> assertEquals(13.0, writeBehind.get(1).getPrecio()),
+                () -> assertNull(writeBehind.get(3))
+        );
+
+        writeBehind.close();
+
+        ArgumentCaptor<List<Funko>> batch = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(1)).updateAll(batch.capture());
+        assertAll(
+                () -> assertEquals(2, batch.getValue().size()),
+                () -> assertTrue(batch.getValue().stream().anyMatch(funko -> funko.getId() == 1 && funko.getPrecio() == 13.0)),
+                () -> assertEquals(0, writeBehind.size()),
+                () -> assertNull(writeBehind.get(1))
+        );
+    }
+
+    @Test
+    void flushesWhenBatchIsFull() throws Exception {
+        when(repository.updateAll(anyList())).thenReturn(Mono.just(2L));
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 2, Duration.ofMinutes(1));
+
+        writeBehind.enqueue(funko(1, 10.0), funko(1, 11.0));
+        writeBehind.enqueue(funko(2, 20.0), funko(2, 21.0));
+
+        verify(repository, timeout(2000).times(1)).updateAll(anyList());
+        writeBehind.close();
+    }
+
+    @Test
+    void notifiesPreviousAndLatestOnFlush() throws Exception {
+        when(repository.updateAll(anyList())).thenReturn(Mono.just(1L));
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMinutes(1));
+        List<Funko> flushed = new ArrayList<>();
+        writeBehind.onFlushed((previous, latest) -> {
+            flushed.add(previous);
+            flushed.add(latest);
+        });
+
+        Funko original = funko(1, 10.0);
+        writeBehind.enqueue(original, funko(1, 11.0));
+        writeBehind.enqueue(funko(1, 11.0), funko(1, 12.0));
+        writeBehind.close();
+
+        assertAll(
+                () -> assertEquals(2, flushed.size()),
+                () -> assertSame(original, flushed.get(0)),
+                () -> assertEquals(12.0, flushed.get(1).getPrecio())
+        );
+    }
+
+    @Test
+    void failedFlushIsRetriedWithTheLatestUpdate() throws Exception {
+        when(repository.updateAll(anyList()))
+                .thenReturn(Mono.error(new SQLException("Base de datos no disponible")))
+                .thenReturn(Mono.just(1L));
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMillis(50));
+
+        writeBehind.enqueue(funko(1, 10.0), funko(1, 11.0));
+
+        verify(repository, timeout(2000).times(2)).updateAll(anyList());
+        writeBehind.close();
+
+        assertAll(
+                () -> assertEquals(0, writeBehind.size()),
+                () -> assertNull(writeBehind.get(1))
+        );
+    }
+
+    @Test
+    void failingRowIsIsolatedAndDropped() throws Exception {
+        when(repository.updateAll(anyList())).thenAnswer(invocation -> {
+            List<Funko> batch = invocation.getArgument(0);
+            return batch.stream().anyMatch(funko -> funko.getId() == 2)
+                    ? Mono.error(new SQLException("Fila no válida"))
+                    : Mono.just((long) batch.size());
+        });
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMillis(20));
+        List<Integer> flushed = new CopyOnWriteArrayList<>();
+        List<Integer> dropped = new CopyOnWriteArrayList<>();
+        writeBehind.onFlushed((previous, latest) -> flushed.add(latest.getId()));
+        writeBehind.onDropped((previous, latest) -> dropped.add(latest.getId()));
+
+        writeBehind.enqueue(funko(1, 10.0), funko(1, 11.0));
+        writeBehind.enqueue(funko(2, 20.0), funko(2, 21.0));
+        writeBehind.enqueue(funko(3, 30.0), funko(3, 31.0));
+
+        // El 2 falla siempre: los demás se guardan y él se descarta tras MAX_ATTEMPTS intentos
+        for (int i = 0; i < 250 && writeBehind.size() > 0; i++) {
+            Thread.sleep(20);
+        }
+        writeBehind.close();
+
+        assertAll(
+                () -> assertEquals(0, writeBehind.size()),
+                () -> assertTrue(flushed.containsAll(List.of(1, 3))),
+                () -> assertEquals(List.of(2), dropped)
+        );
+    }
+
+    @Test
+    void enqueueAfterCloseIsRejected() throws Exception {
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMinutes(1));
+        writeBehind.close();
+
+        assertThrowsExactly(IllegalStateException.class, () -> writeBehind.enqueue(funko(1, 10.0), funko(1, 11.0)));
+        verify(repository, never()).updateAll(anyList());
+    }
+
+    @Test
+    void discardTest() throws Exception {
+        FunkoWriteBehind writeBehind = new FunkoWriteBehind(repository, 100, Duration.ofMinutes(1));
+        Funko original = funko(1, 10.0);
+
+        writeBehind.enqueue(original, funko(1, 11.0));
+
+        assertAll(
+                () -> assertSame(original, writeBehind.discard(1)),
+                () -> assertNull(writeBehind.discard(1)),
+                () -> assertNull(writeBehind.get(1))
+        );
+
+        writeBehind.close();
+        verify(repository, never()).updateAll(anyList());
+    }
+}
@@ -0,0 +1,230 @@
+package services;
+
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.server.exceptions.cache.CachePutNullKeyException;
+import org.docker.server.exceptions.cache.CachePutNullValueException;
+import org.docker.server.services.funkos.ConcurrentFunkoCache;
+import org.docker.server.services.funkos.OffHeapFunkoCache;
+import org.docker.server.services.funkos.TieredFunkoCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static services.TestFunkos.funko;
+
+public class OffHeapFunkoCacheTest {
+
+    private OffHeapFunkoCache cache;
+
+    @BeforeEach
+    void setUp(){
+        cache = new OffHeapFunkoCache(100, OffHeapFunkoCache.DEFAULT_SLOT_BYTES, 4);
+    }
+
+    private void assertSameFunko(Funko expected, Funko actual) {
+        assertAll(
+                () -> assertEquals(expected.getId(), actual.getId()),
+                () -> assertEquals(expected.getCOD(), actual.getCOD()),
+                () -> assertEquals(expected.getMyId(), actual.getMyId()),
+                () -> assertEquals(expected.getNombre(), actual.getNombre()),
+                () -> assertEquals(expected.getModelo(), actual.getModelo()),
+                () -> assertEquals(expected.getPrecio(), actual.getPrecio()),
+                () -> assertEquals(expected.getFecha(), actual.getFecha()),
+                () -> assertEquals(expected.getCreated_at(), actual.getCreated_at()),
+                () -> assertEquals(expected.getUpdated_at(), actual.getUpdated_at())
+        );
+    }
+
+    @Test
+    void getTest(){
+        Funko funko = new Funko(1, UUID.randomUUID(), 123456L,  "Ñandú", Modelo.ANIME, 19.95, LocalDate.of(2020, 1, 2),
+                LocalDateTime.of(2021, 3, 4, 5, 6, 7, 123456000), LocalDateTime.now());
+
+        cache.put(funko.getId(), funko).block();
+
+        assertAll(
+                () -> assertSameFunko(funko, cache.get(funko.getId()).block()),
+                () -> assertNull(cache.get(20).block()),
+                () -> assertEquals(1, cache.stats().hitCount()),
+                () -> assertEquals(1, cache.stats().missCount())
+        );
+    }
+
+    @Test
+    void nullFieldsTest(){
+        Funko funko = new Funko(2, null, null, null, null, 1.0, null, null, null);
+
+        cache.put(funko.getId(), funko).block();
+
+        assertSameFunko(funko, cache.get(funko.getId()).block());
+    }
+
+    @Test
+    void putTest(){
+        Funko funko = funko(1);
+
+        assertAll(
+                () -> assertThrowsExactly(CachePutNullKeyException.class, () -> cache.put(null, funko).block()),
+                () -> assertThrowsExactly(CachePutNullValueException.class, () -> cache.put(4, null).block())
+        );
+    }
+
+    @Test
+    void tooLongIsNotStored(){
+        Funko funko = funko(3);
+        cache.put(funko.getId(), funko).block();
+        Funko renamed = new Funko(3, funko.getCOD(), 3L, "Funko".repeat(30), Modelo.MARVEL, 50.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now());
+
+        cache.put(renamed.getId(), renamed).block();
+
+        // No se queda con la versión anterior
+        assertNull(cache.get(3).block());
+    }
+
+    @Test
+    void deleteTest(){
+        Funko funko = funko(2);
+        Funko funko2 = funko(10);
+        cache.put(funko.getId(), funko).block();
+        cache.put(funko2.getId(), funko2).block();
+
+        assertAll(
+                () -> assertSameFunko(funko, cache.delete(funko.getId()).block()),
+                () -> assertNull(cache.get(funko.getId()).block()),
+                () -> assertSameFunko(funko2, cache.get(funko2.getId()).block()),
+                () -> assertNull(cache.delete(4).block())
+        );
+    }
+
+    @Test
+    void evictionKeepsReadFunkos(){
+        cache = new OffHeapFunkoCache(100, OffHeapFunkoCache.DEFAULT_SLOT_BYTES, 1);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, funko(i)).block();
+            cache.get(0).block();
+        }
+
+        assertAll(
+                () -> assertEquals(100, cache.size()),
+                () -> assertEquals(900, cache.stats().evictionCount()),
+                () -> assertNotNull(cache.get(0).block())
+        );
+    }
+
+    @Test
+    void neverExceedsMaxSize(){
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, funko(i)).block();
+            if (i % 3 == 0) {
+                cache.delete(i / 2).block();
+            }
+        }
+
+        assertAll(
+                () -> assertEquals(100, cache.size()),
+                () -> assertEquals(100L * OffHeapFunkoCache.DEFAULT_SLOT_BYTES, cache.offHeapBytes())
+        );
+    }
+
+    @Test
+    void expireAfterWriteTest(){
+        AtomicLong now = new AtomicLong();
+        cache = new OffHeapFunkoCache(100, OffHeapFunkoCache.DEFAULT_SLOT_BYTES, 1, Duration.ofSeconds(10), now::get);
+        cache.put(1, funko(1)).block();
+
+        now.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertNotNull(cache.get(1).block());
+
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertAll(
+                () -> assertNull(cache.get(1).block()),
+                () -> assertEquals(0, cache.size()),
+                () -> assertEquals(1, cache.stats().expirationCount())
+        );
+    }
+
+    @Test
+    void clearTest(){
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, funko(i)).block();
+        }
+        cache.clear();
+
+        assertAll(
+                () -> assertEquals(0, cache.size()),
+                () -> assertNull(cache.get(1).block())
+        );
+    }
+
+    @Test
+    void tieredPromotesFromSecondLevel() throws Exception {
+        ConcurrentFunkoCache l1 = new ConcurrentFunkoCache(2, 1, 1, 1, TimeUnit.MINUTES);
+        TieredFunkoCache tiered = new TieredFunkoCache(l1, cache);
+        for (int i = 1; i <= 10; i++) {
+            tiered.put(i, funko(i)).block();
+        }
+
+        // El 1 ya no está en l1, pero sí en l2: se sube a l1
+        assertNull(l1.get(1).block());
+        assertEquals(1, tiered.get(1).block().getId());
+        assertAll(
+                () -> assertEquals(1, l1.get(1).block().getId()),
+                () -> assertEquals(10, cache.size())
+        );
+        tiered.shutdown();
+    }
+
+    @Test
+    void tieredPromotionDoesNotOverwriteConcurrentUpdate() throws Exception {
+        ConcurrentFunkoCache l1 = new ConcurrentFunkoCache(10, 1, 1, 1, TimeUnit.MINUTES);
+        Funko stale = funko(1);
+        Funko updated = funko(1);
+        AtomicReference<TieredFunkoCache> tiered = new AtomicReference<>();
+        // Un UPDATE del mismo id entre la lectura de l2 y la subida a l1
+        OffHeapFunkoCache l2 = new OffHeapFunkoCache(100, OffHeapFunkoCache.DEFAULT_SLOT_BYTES, 1) {
+            @Override
+            public Mono<Funko> get(Integer key) {
+                return super.get(key).flatMap(funko -> {
+                    try {
+                        return tiered.get().put(key, updated).thenReturn(funko);
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                });
+            }
+        };
+        l2.put(1, stale).block();
+        tiered.set(new TieredFunkoCache(l1, l2));
+
+        tiered.get().get(1).block();
+
+        Funko inL1 = l1.get(1).block();
+        assertTrue(inL1 == null || inL1 == updated);
+        tiered.get().shutdown();
+    }
+
+    @Test
+    void tieredDeleteRemovesFromBothLevels() throws Exception {
+        ConcurrentFunkoCache l1 = new ConcurrentFunkoCache(10, 1, 1, 1, TimeUnit.MINUTES);
+        TieredFunkoCache tiered = new TieredFunkoCache(l1, cache);
+        Funko funko = funko(1);
+        tiered.put(funko.getId(), funko).block();
+
+        assertSame(funko, tiered.delete(funko.getId()).block());
+        assertAll(
+                () -> assertNull(tiered.get(funko.getId()).block()),
+                () -> assertNull(cache.get(funko.getId()).block())
+        );
+        tiered.shutdown();
+    }
+}
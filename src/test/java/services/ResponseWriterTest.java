@@ -0,0 +1,93 @@
+package services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+import org.docker.common.models.Request;
+import org.docker.common.models.Response;
+import org.docker.common.utils.adapters.LocalDateAdapter;
+import org.docker.common.utils.adapters.LocalDateTimeAdapter;
+import org.docker.server.ResponseWriter;
+import org.docker.server.services.funkos.FunkoJsonCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static services.TestFunkos.funko;
+
+public class ResponseWriterTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter()).create();
+
+    private final StringWriter out = new StringWriter();
+
+    private final Request request = new Request(Request.Type.GETALL, null, "token", LocalDateTime.now().toString()).withRequestId("42");
+
+    private String lineOf(Runnable send) {
+        send.run();
+        return out.toString().lines().reduce((first, second) -> second).orElseThrow();
+    }
+
+    @Test
+    void envelopeOfFunkoMatchesGson() {
+        ResponseWriter writer = new ResponseWriter(new PrintWriter(out, true), gson, new FunkoJsonCache(100));
+        Funko funko = new Funko(1, UUID.randomUUID(), 1L, "Mi \"Funko\" <1> ñ\n\\", Modelo.MARVEL, 50.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now());
+
+        String line = lineOf(() -> writer.sendFunko(request, Response.Status.OK, funko));
+
+        // createdAt lo pone el writer: se toma de la línea para componer la esperada
+        Response sent = gson.fromJson(line, Response.class);
+        assertEquals(gson.toJson(new Response(Response.Status.OK, gson.toJson(funko), sent.createdAt(), "42")), line);
+    }
+
+    @Test
+    void envelopeOfListWithCursorMatchesGson() {
+        ResponseWriter writer = new ResponseWriter(new PrintWriter(out, true), gson, new FunkoJsonCache(100));
+        Request withoutId = new Request(Request.Type.GETALL, null, "token", LocalDateTime.now().toString());
+        List<Funko> funkos = List.of(
+                new Funko(1, UUID.randomUUID(), 1L, "Mi Funko", Modelo.ANIME, 10.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now()),
+                new Funko(2, UUID.randomUUID(), 2L, "Otro \"Funko\"", Modelo.DISNEY, 20.0, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now())
+        );
+
+        String page = lineOf(() -> writer.sendFunkos(withoutId, Response.Status.OK, funkos, "2"));
+        String empty = lineOf(() -> writer.sendFunkos(request, Response.Status.CHUNK, List.of()));
+
+        Response sentPage = gson.fromJson(page, Response.class);
+        Response sentEmpty = gson.fromJson(empty, Response.class);
+        assertAll(
+                () -> assertEquals(gson.toJson(new Response(Response.Status.OK, gson.toJson(funkos), sentPage.createdAt(), null, "2")), page),
+                () -> assertEquals(gson.toJson(new Response(Response.Status.CHUNK, gson.toJson(List.of()), sentEmpty.createdAt(), "42")), empty)
+        );
+    }
+
+    @Test
+    void tooLargeResponseIsReplacedByError() {
+        ResponseWriter writer = new ResponseWriter(new PrintWriter(out, true), gson, new FunkoJsonCache(100), 1024);
+        List<Funko> funkos = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            funkos.add(funko(i));
+        }
+
+        writer.sendFunkos(request, funkos);
+        writer.sendFunkos(request, funkos.subList(0, 1));
+
+        List<Response> responses = out.toString().lines().map(line -> gson.fromJson(line, Response.class)).toList();
+        assertAll(
+                () -> assertEquals(2, responses.size()),
+                () -> assertEquals(Response.Status.ERROR, responses.get(0).status()),
+                () -> assertEquals("42", responses.get(0).requestId()),
+                () -> assertTrue(responses.get(0).content().contains("chunkSize")),
+                () -> assertEquals(Response.Status.OK, responses.get(1).status())
+        );
+    }
+}
@@ -0,0 +1,80 @@
+package services;
+
+import org.docker.server.services.cache.SingleFlight;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<Integer, String> flight = new SingleFlight<>();
+
+    @Test
+    void concurrentLoadsShareOneQuery() {
+        AtomicInteger queries = new AtomicInteger();
+        Mono<String> query = Mono.defer(() -> {
+            queries.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(300)).thenReturn("Mi Funko");
+        });
+
+        List<String> results = Flux.range(0, 50)
+                .flatMap(i -> flight.load(1, () -> query).subscribeOn(Schedulers.parallel()))
+                .collectList()
+                .block();
+
+        assertAll(
+                () -> assertEquals(50, results.size()),
+                () -> assertTrue(results.stream().allMatch("Mi Funko"::equals)),
+                () -> assertEquals(1, queries.get()),
+                () -> assertEquals(0, flight.inFlight())
+        );
+    }
+
+    @Test
+    void differentKeysLoadSeparately() {
+        AtomicInteger queries = new AtomicInteger();
+
+        assertAll(
+                () -> assertEquals("uno", flight.load(1, () -> Mono.fromCallable(() -> { queries.incrementAndGet(); return "uno"; })).block()),
+                () -> assertEquals("dos", flight.load(2, () -> Mono.fromCallable(() -> { queries.incrementAndGet(); return "dos"; })).block()),
+                () -> assertEquals(2, queries.get())
+        );
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        AtomicInteger queries = new AtomicInteger();
+        Mono<String> query = Mono.fromCallable(() -> {
+            if (queries.incrementAndGet() == 1) {
+                throw new IllegalStateException("Fallo de la base de datos");
+            }
+            return "Mi Funko";
+        });
+
+        assertAll(
+                () -> assertThrows(IllegalStateException.class, () -> flight.load(1, () -> query).block()),
+                () -> assertEquals("Mi Funko", flight.load(1, () -> query).block()),
+                () -> assertEquals(2, queries.get()),
+                () -> assertEquals(0, flight.inFlight())
+        );
+    }
+
+    @Test
+    void emptyResultsAreNotCached() {
+        AtomicInteger queries = new AtomicInteger();
+        Mono<String> query = Mono.fromCallable(() -> queries.incrementAndGet() == 1 ? null : "Mi Funko");
+
+        assertAll(
+                () -> assertNull(flight.load(1, () -> query).block()),
+                () -> assertEquals("Mi Funko", flight.load(1, () -> query).block()),
+                () -> assertEquals(2, queries.get())
+        );
+    }
+}
@@ -0,0 +1,33 @@
+package services;
+
+import org.docker.common.enums.Modelo;
+import org.docker.common.models.Funko;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Funkos de prueba para los tests que necesitan muchos funkos distintos por id
+ */
+final class TestFunkos {
+
+    private TestFunkos() {
+    }
+
+    static Funko funko(int id) {
+        return funko(id, "Mi Funko " + id, 50.0);
+    }
+
+    static Funko funko(int id, double precio) {
+        return funko(id, "Mi Funko " + id, precio);
+    }
+
+    static Funko funko(int id, String nombre) {
+        return funko(id, nombre, 50.0);
+    }
+
+    private static Funko funko(int id, String nombre, double precio) {
+        return new Funko(id, UUID.randomUUID(), (long) id, nombre, Modelo.MARVEL, precio, LocalDate.now(), LocalDateTime.now(), LocalDateTime.now());
+    }
+}